@@ -0,0 +1,160 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+
+package com.ibm.minerva.analyzer.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.ibm.minerva.analyzer.AnalysisCache;
+import com.ibm.minerva.analyzer.AnalysisCheckpoint;
+import com.ibm.minerva.analyzer.AnalysisMetrics;
+import com.ibm.minerva.analyzer.AnalysisProgress;
+import com.ibm.minerva.analyzer.ApplicationProcessor;
+import com.ibm.minerva.analyzer.ArchiveProcessor;
+import com.ibm.minerva.analyzer.CallGraphBuilder;
+import com.ibm.minerva.analyzer.ClassProcessor;
+import com.ibm.minerva.analyzer.ClassSummary;
+
+/**
+ * Measures the reading of archive entries and the parsing of the class files
+ * by the {@link ArchiveProcessor}, without building any tables.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ArchiveScanBenchmark {
+
+    @Param({"500", "2000"})
+    private int classCount;
+
+    @Param({"jar", "war"})
+    private String archiveType;
+
+    private File workDir;
+    private File archive;
+
+    /**
+     * An application processor which only counts the classes it receives.
+     */
+    static final class CountingProcessor implements ApplicationProcessor {
+
+        private int classes;
+        private long bytes;
+
+        @Override
+        public void process(ClassProcessor cp, byte[] bytes) {
+            ++classes;
+            this.bytes += bytes.length;
+        }
+
+        @Override
+        public boolean processCached(ClassSummary summary, byte[] bytes) {
+            return false;
+        }
+
+        @Override
+        public void processExtraLibs(File[] extraLibs) {}
+
+        @Override
+        public void setCallGraphBuilder(CallGraphBuilder cgb) {}
+
+        @Override
+        public void setPackageRestrictions(Set<String> packages, boolean isPackageIncludeList) {}
+
+        @Override
+        public void setAllowAnyLegalClasses(boolean allowAnyLegalClasses) {}
+
+        @Override
+        public void setAgentOutputStream(boolean useSystemOut) {}
+
+        @Override
+        public void setAnalysisProgress(AnalysisProgress progress) {}
+
+        @Override
+        public void setAnalysisMetrics(AnalysisMetrics metrics) {}
+
+        @Override
+        public void setAnalysisCache(AnalysisCache cache) {}
+
+        @Override
+        public void setAnalysisCheckpoint(AnalysisCheckpoint checkpoint) {}
+
+        @Override
+        public void setSpillThreshold(double threshold) {}
+
+        @Override
+        public void setConcurrentWrites(boolean concurrentWrites) {}
+
+        @Override
+        public void write() {}
+
+        @Override
+        public void writeTables() {}
+
+        @Override
+        public void writeCallGraph() {}
+
+        @Override
+        public void clean() {}
+    }
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        BenchmarkSupport.quietLogging();
+        workDir = BenchmarkSupport.createWorkDir();
+        final SyntheticApplication application = new SyntheticApplication().setClassCount(classCount);
+        archive = "war".equals(archiveType) ? 
+                application.writeWar(new File(workDir, "synthetic.war")) : 
+                application.writeJar(new File(workDir, "synthetic.jar"));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchmarkSupport.delete(workDir);
+    }
+
+    @Benchmark
+    public long scan() throws IOException {
+        final CountingProcessor processor = new CountingProcessor();
+        new ArchiveProcessor(processor).processBinaryFile(archive);
+        if (processor.classes != classCount) {
+            throw new IllegalStateException("Expected " + classCount + " classes but scanned " + processor.classes);
+        }
+        return processor.bytes;
+    }
+}
@@ -0,0 +1,123 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+
+package com.ibm.minerva.analyzer.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+
+import com.ibm.minerva.analyzer.Analyzer;
+import com.ibm.minerva.analyzer.ClassProcessor;
+
+import javassist.ClassPool;
+
+/**
+ * Utilities shared by the benchmarks.
+ */
+public final class BenchmarkSupport {
+
+    /**
+     * A parsed class file and the bytes it was parsed from.
+     */
+    public static final class ParsedClass {
+
+        private final ClassProcessor classProcessor;
+        private final byte[] bytes;
+
+        ParsedClass(ClassProcessor classProcessor, byte[] bytes) {
+            this.classProcessor = classProcessor;
+            this.bytes = bytes;
+        }
+
+        public ClassProcessor getClassProcessor() {
+            return classProcessor;
+        }
+
+        public byte[] getBytes() {
+            return bytes;
+        }
+    }
+
+    private BenchmarkSupport() {}
+
+    /**
+     * Reduces the logging of the analyzer so that it does not dominate the measurements.
+     */
+    public static void quietLogging() {
+        Analyzer.setLoggingLevel(Level.WARNING);
+    }
+
+    public static File createWorkDir() throws IOException {
+        return Files.createTempDirectory("minerva-benchmarks").toFile();
+    }
+
+    public static void delete(File file) {
+        if (file != null) {
+            final File[] children = file.listFiles();
+            if (children != null) {
+                for (File child : children) {
+                    delete(child);
+                }
+            }
+            file.delete();
+        }
+    }
+
+    /**
+     * Parses command line arguments of the form --name=value (or --name, meaning true)
+     * into a map. Other arguments are added to the given list.
+     */
+    public static Map<String, String> parseOptions(String[] args, List<String> positional) {
+        final Map<String, String> options = new LinkedHashMap<>();
+        for (String arg : args) {
+            if (arg.startsWith("--")) {
+                final int index = arg.indexOf('=');
+                if (index >= 0) {
+                    options.put(arg.substring(2, index), arg.substring(index + 1));
+                }
+                else {
+                    options.put(arg.substring(2), "true");
+                }
+            }
+            else {
+                positional.add(arg);
+            }
+        }
+        return options;
+    }
+
+    /**
+     * Parses the given class files with a class pool which is independent of the
+     * benchmark's class loader.
+     */
+    public static List<ParsedClass> parse(Map<String, byte[]> classFiles) throws IOException {
+        final ClassPool classPool = new ClassPool(true);
+        final List<ParsedClass> classes = new ArrayList<>(classFiles.size());
+        for (byte[] bytes : classFiles.values()) {
+            classes.add(new ParsedClass(new ClassProcessor(classPool.makeClass(new ByteArrayInputStream(bytes))), bytes));
+        }
+        return classes;
+    }
+}
@@ -0,0 +1,114 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+
+package com.ibm.minerva.analyzer.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.ibm.minerva.analyzer.CallGraphBuilder;
+import com.ibm.minerva.analyzer.CallGraphBuilderType;
+import com.ibm.minerva.dgi.utils.SDGGraph2JSON;
+import com.ibm.wala.ipa.callgraph.propagation.InstanceKey;
+import com.ibm.wala.ipa.modref.ModRef;
+import com.ibm.wala.ipa.slicer.SDG;
+import com.ibm.wala.ipa.slicer.Slicer;
+
+/**
+ * Measures the export of the class level and method level call graphs. The call graph 
+ * is built once per trial with {@link CallGraphBuilder#buildCallGraph()}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class GraphExportBenchmark {
+
+    @Param({"200", "1000"})
+    private int classCount;
+
+    @Param({"ZERO_ONE_CFA"})
+    private String callGraphBuilderType;
+
+    private File workDir;
+    private CallGraphBuilder callGraphBuilder;
+    private CallGraphBuilder.CallGraphResult callGraph;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        BenchmarkSupport.quietLogging();
+        workDir = BenchmarkSupport.createWorkDir();
+        callGraphBuilder = new CallGraphBuilder(CallGraphBuilderType.valueOf(callGraphBuilderType));
+        callGraphBuilder.setRestrictJdkScope(true);
+        for (BenchmarkSupport.ParsedClass c : BenchmarkSupport.parse(new SyntheticApplication().setClassCount(classCount).generate())) {
+            callGraphBuilder.addToScope(c.getClassProcessor(), c.getBytes());
+        }
+        callGraph = callGraphBuilder.buildCallGraph();
+        if (callGraph == null) {
+            throw new IllegalStateException("No call graph was built for the synthetic application");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        callGraphBuilder.clean();
+        BenchmarkSupport.delete(workDir);
+    }
+
+    @Benchmark
+    public File classGraph() throws IOException {
+        final File file = new File(workDir, "callGraph.json");
+        callGraphBuilder.writeClassGraph(callGraph, file);
+        return file;
+    }
+
+    @Benchmark
+    public int methodGraphCallEdges() throws IOException {
+        return SDGGraph2JSON.convertAndSave(callGraph.getCallGraph(), new File(workDir, "callGraphMethods.json")).getEdgeCount();
+    }
+
+    @Benchmark
+    public int methodGraphDataDependence() throws IOException {
+        // A new SDG is created for every invocation since its dependence graphs are
+        // computed lazily during the export and cached afterwards.
+        final SDG<? extends InstanceKey> sdg = new SDG<>(
+                callGraph.getCallGraph(),
+                callGraph.getPointerAnalysis(),
+                new ModRef<>(),
+                Slicer.DataDependenceOptions.NO_HEAP_NO_EXCEPTIONS,
+                Slicer.ControlDependenceOptions.NO_EXCEPTIONAL_EDGES);
+        return SDGGraph2JSON.convertAndSave(sdg, new File(workDir, "callGraphMethods.json")).getEdgeCount();
+    }
+}
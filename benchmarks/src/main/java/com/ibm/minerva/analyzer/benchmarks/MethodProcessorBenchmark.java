@@ -0,0 +1,79 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+
+package com.ibm.minerva.analyzer.benchmarks;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.ibm.minerva.analyzer.MethodProcessor;
+
+/**
+ * Measures the signature handling of {@link MethodProcessor}, which is invoked
+ * several times for every method added to the symbol table.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class MethodProcessorBenchmark {
+
+    private List<MethodProcessor> methods;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        BenchmarkSupport.quietLogging();
+        methods = new ArrayList<>();
+        for (BenchmarkSupport.ParsedClass c : BenchmarkSupport.parse(new SyntheticApplication().setClassCount(200).generate())) {
+            methods.addAll(c.getClassProcessor().getMethods());
+        }
+    }
+
+    @Benchmark
+    public void methodSignature(Blackhole blackhole) {
+        for (MethodProcessor mp : methods) {
+            blackhole.consume(mp.getMethodSignature());
+        }
+    }
+
+    @Benchmark
+    public void signatureTypes(Blackhole blackhole) {
+        for (MethodProcessor mp : methods) {
+            blackhole.consume(mp.getParameterTypes());
+            blackhole.consume(mp.getReturnType());
+            blackhole.consume(mp.getExceptionTypes());
+        }
+    }
+}
@@ -0,0 +1,153 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+
+package com.ibm.minerva.analyzer.benchmarks;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.ibm.minerva.analyzer.AnalysisMetrics;
+import com.ibm.minerva.analyzer.Analyzer;
+
+/**
+ * Runs the {@link Analyzer} end to end on synthetic archives of increasing size and records
+ * the time of {@code Analyzer.run} and the peak heap usage for each size, so that the scaling
+ * curves of different analyzer builds can be compared. Each size is analyzed in a new JVM 
+ * so that the peak heap usage of one run does not affect the next; the measurements are taken
+ * from the analysis-metrics.json file written by the analyzer.
+ * <p>
+ * Usage: [--sizes=1000,10000,100000] [--heap=8g] [--callgraph=false|true|RTA|ZERO_CFA|ZERO_ONE_CFA]
+ * [--work=dir] [--results=file] [--keep] [generator options], where the generator options are 
+ * those of {@link SyntheticArchiveGenerator#main}.
+ */
+public final class ScaleTestRunner {
+
+    public static final String DEFAULT_RESULTS_FILE = "minerva-scale-results.json";
+
+    private ScaleTestRunner() {}
+
+    public static void main(String[] args) throws Exception {
+        final Map<String, String> options = BenchmarkSupport.parseOptions(args, new ArrayList<>());
+        final String[] sizes = options.getOrDefault("sizes", "1000,10000,100000").split(",");
+        final String heap = options.getOrDefault("heap", "8g");
+        final String callGraph = options.getOrDefault("callgraph", "false");
+        final File workDir = options.containsKey("work") ? new File(options.get("work")) : BenchmarkSupport.createWorkDir();
+        final File resultsFile = new File(options.getOrDefault("results", DEFAULT_RESULTS_FILE));
+        final boolean keep = Boolean.parseBoolean(options.getOrDefault("keep", "false"));
+
+        final JsonObject results = new JsonObject();
+        results.addProperty("startTime", new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ssZ").format(new Date()));
+        results.addProperty("javaVersion", System.getProperty("java.version"));
+        results.addProperty("heap", heap);
+        results.addProperty("callGraph", callGraph);
+        final JsonObject optionValues = new JsonObject();
+        options.forEach(optionValues::addProperty);
+        results.add("options", optionValues);
+        final JsonArray runs = new JsonArray();
+        results.add("runs", runs);
+
+        System.out.println(String.format("%10s %12s %12s %12s %16s %6s", 
+                "classes", "archiveKB", "runMs", "processMs", "peakHeapMB", "exit"));
+        for (String size : sizes) {
+            options.put("classes", size.trim());
+            final File sizeDir = new File(workDir, "size-" + size.trim());
+            final File outputDir = new File(sizeDir, "output");
+            outputDir.mkdirs();
+            final File archive = SyntheticArchiveGenerator.fromOptions(options).write(sizeDir, "synthetic");
+
+            final JsonObject run = runAnalyzer(archive, outputDir, heap, callGraph, new File(sizeDir, "analyzer.log"));
+            run.addProperty("classes", Integer.parseInt(size.trim()));
+            run.addProperty("archiveBytes", archive.length());
+            runs.add(run);
+            System.out.println(String.format("%10s %12d %12d %12d %16d %6d", size.trim(), archive.length() / 1024, 
+                    getLong(run, "runTimeMs"), getLong(run, "processTimeMs"), 
+                    getLong(run, "peakHeapBytes") / (1024 * 1024), getLong(run, "exitCode")));
+            if (!keep) {
+                BenchmarkSupport.delete(sizeDir);
+            }
+        }
+
+        final Gson gson = new GsonBuilder().setPrettyPrinting().create();
+        try (Writer w = new OutputStreamWriter(new FileOutputStream(resultsFile), StandardCharsets.UTF_8)) {
+            gson.toJson(results, w);
+        }
+        System.out.println("Results written to " + resultsFile.getAbsolutePath());
+        if (!keep && !options.containsKey("work")) {
+            BenchmarkSupport.delete(workDir);
+        }
+    }
+
+    private static JsonObject runAnalyzer(File archive, File outputDir, String heap, String callGraph, File log) 
+            throws IOException, InterruptedException {
+        final List<String> command = new ArrayList<>();
+        command.add(new File(new File(System.getProperty("java.home"), "bin"), "java").getPath());
+        command.add("-Xmx" + heap);
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(Analyzer.class.getName());
+        command.add(archive.getAbsolutePath());
+        command.add(outputDir.getAbsolutePath());
+        // No extra libraries and no package exclusions.
+        command.add("");
+        command.add("");
+        command.add(callGraph);
+
+        final long start = System.nanoTime();
+        final Process process = new ProcessBuilder(command).redirectErrorStream(true).redirectOutput(log).start();
+        final int exitCode = process.waitFor();
+        final long processTime = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        final JsonObject run = new JsonObject();
+        run.addProperty("exitCode", exitCode);
+        run.addProperty("processTimeMs", processTime);
+        final File metricsFile = new File(outputDir, AnalysisMetrics.METRICS_FILE_NAME);
+        if (metricsFile.isFile()) {
+            try (Reader r = new FileReader(metricsFile)) {
+                final JsonObject metrics = JsonParser.parseReader(r).getAsJsonObject();
+                run.add("runTimeMs", metrics.get("wallTimeMs"));
+                // Each size runs in a new JVM, so the peak of the JVM is that of the analysis.
+                run.add("peakHeapBytes", metrics.getAsJsonObject("memory").get("jvmPeakHeapBytes"));
+                run.add("metrics", metrics);
+            }
+        }
+        return run;
+    }
+
+    private static long getLong(JsonObject o, String name) {
+        final JsonElement e = o.get(name);
+        return (e != null && !e.isJsonNull()) ? e.getAsLong() : -1L;
+    }
+}
@@ -0,0 +1,308 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+
+package com.ibm.minerva.analyzer.benchmarks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import javassist.CannotCompileException;
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtField;
+import javassist.CtMethod;
+import javassist.CtNewConstructor;
+import javassist.CtNewMethod;
+import javassist.NotFoundException;
+
+/**
+ * Generates a synthetic application for the benchmarks. Each class has a few fields
+ * and methods which call methods of classes generated before it, so that the call
+ * graph is connected. Optionally, the classes implement generic interfaces through 
+ * which some of the calls are made and have nested and anonymous classes. The same 
+ * parameters always produce the same class files.
+ */
+public final class SyntheticApplication {
+
+    public static final String BASE_PACKAGE = "com.example.synthetic";
+    public static final String API_PACKAGE = BASE_PACKAGE + ".api";
+
+    private int classCount = 500;
+    private int packageCount = 10;
+    private int methodsPerClass = 8;
+    private int callsPerMethod = 2;
+    private int interfaceCount;
+    private int interfaceCallPercent = 50;
+    private int nestingDepth;
+    private boolean anonymousClasses;
+    private long seed = 42L;
+
+    public SyntheticApplication setClassCount(int classCount) {
+        this.classCount = Math.max(1, classCount);
+        return this;
+    }
+
+    public SyntheticApplication setPackageCount(int packageCount) {
+        this.packageCount = Math.max(1, packageCount);
+        return this;
+    }
+
+    public SyntheticApplication setMethodsPerClass(int methodsPerClass) {
+        this.methodsPerClass = Math.max(1, methodsPerClass);
+        return this;
+    }
+
+    /**
+     * Sets the number of calls each method makes to methods of other classes.
+     */
+    public SyntheticApplication setCallsPerMethod(int callsPerMethod) {
+        this.callsPerMethod = Math.max(0, callsPerMethod);
+        return this;
+    }
+
+    /**
+     * Sets the number of generic interfaces implemented by the classes. If zero,
+     * the classes do not implement any interfaces.
+     */
+    public SyntheticApplication setInterfaceCount(int interfaceCount) {
+        this.interfaceCount = Math.max(0, interfaceCount);
+        return this;
+    }
+
+    /**
+     * Sets the percentage of the calls to other classes which are made through an interface.
+     */
+    public SyntheticApplication setInterfaceCallPercent(int interfaceCallPercent) {
+        this.interfaceCallPercent = Math.min(100, Math.max(0, interfaceCallPercent));
+        return this;
+    }
+
+    /**
+     * Sets the depth of the chain of static nested classes generated for each class.
+     */
+    public SyntheticApplication setNestingDepth(int nestingDepth) {
+        this.nestingDepth = Math.max(0, nestingDepth);
+        return this;
+    }
+
+    /**
+     * If true, an anonymous class implementing Runnable is generated for each class.
+     */
+    public SyntheticApplication setAnonymousClasses(boolean anonymousClasses) {
+        this.anonymousClasses = anonymousClasses;
+        return this;
+    }
+
+    public SyntheticApplication setSeed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    /**
+     * Returns the class files of the application keyed by their entry name in an archive.
+     * The interfaces come first, then each class followed by its nested and anonymous classes.
+     */
+    public Map<String, byte[]> generate() throws IOException {
+        final Map<String, byte[]> classFiles = new LinkedHashMap<>();
+        final ClassPool pool = new ClassPool(true);
+        final Random random = new Random(seed);
+        final String[] classNames = new String[classCount];
+        final String[] interfaceNames = new String[interfaceCount];
+        try {
+            for (int i = 0; i < interfaceCount; ++i) {
+                interfaceNames[i] = API_PACKAGE + ".Service" + i;
+                classFiles.put(toEntryName(interfaceNames[i]), createInterface(pool, interfaceNames[i]).toBytecode());
+            }
+            for (int i = 0; i < classCount; ++i) {
+                classNames[i] = BASE_PACKAGE + ".p" + (i % packageCount) + ".Component" + i;
+                final CtClass ctClass = pool.makeClass(classNames[i]);
+                ctClass.addField(CtField.make("private int state;", ctClass));
+                ctClass.addField(CtField.make("private java.lang.String name;", ctClass));
+                ctClass.addField(CtField.make("public static int instances;", ctClass));
+                ctClass.addConstructor(CtNewConstructor.defaultConstructor(ctClass));
+
+                // Nested and anonymous classes are created before the methods of 
+                // their outer class so that these methods can refer to them.
+                final List<CtClass> innerClasses = new ArrayList<>();
+                String innermost = null;
+                CtClass outer = ctClass;
+                for (int d = 1; d <= nestingDepth; ++d) {
+                    final CtClass nested = outer.makeNestedClass("Level" + d, true);
+                    nested.addConstructor(CtNewConstructor.defaultConstructor(nested));
+                    nested.addMethod(CtNewMethod.make("public int op(int x) { return x * " + (d + 1) + "; }", nested));
+                    innerClasses.add(nested);
+                    innermost = nested.getName();
+                    outer = nested;
+                }
+                String anonymous = null;
+                if (anonymousClasses) {
+                    final CtClass anon = pool.makeClass(classNames[i] + "$1");
+                    anon.addInterface(pool.get("java.lang.Runnable"));
+                    anon.addConstructor(CtNewConstructor.defaultConstructor(anon));
+                    anon.addMethod(CtNewMethod.make("public void run() { " + classNames[i] + ".instances++; }", anon));
+                    innerClasses.add(anon);
+                    anonymous = anon.getName();
+                }
+
+                for (int m = 0; m < methodsPerClass; ++m) {
+                    ctClass.addMethod(CtNewMethod.make(createMethodBody(classNames, interfaceNames, i, m, random), ctClass));
+                }
+                // A method with a generic signature, as produced by javac for List<String>.
+                final CtMethod names = CtNewMethod.make("public java.util.List names(java.util.List in) "
+                        + "{ in.add(name); return in; }", ctClass);
+                names.setGenericSignature("(Ljava/util/List<Ljava/lang/String;>;)Ljava/util/List<Ljava/lang/String;>;");
+                ctClass.addMethod(names);
+                if (innermost != null) {
+                    ctClass.addMethod(CtNewMethod.make("public int nested(int x) { return new " 
+                            + innermost + "().op(x); }", ctClass));
+                }
+                if (anonymous != null) {
+                    ctClass.addMethod(CtNewMethod.make("public java.lang.Runnable task() { return new " 
+                            + anonymous + "(); }", ctClass));
+                }
+                if (interfaceCount > 0) {
+                    implementInterface(pool, ctClass, interfaceNames[i % interfaceCount]);
+                }
+                classFiles.put(toEntryName(classNames[i]), ctClass.toBytecode());
+                // A nested class is modified when a class is nested in it, so the
+                // inner classes are only written once the whole chain exists.
+                for (CtClass inner : innerClasses) {
+                    classFiles.put(toEntryName(inner.getName()), inner.toBytecode());
+                }
+            }
+        }
+        catch (CannotCompileException | NotFoundException e) {
+            throw new IOException(e);
+        }
+        return classFiles;
+    }
+
+    /**
+     * Writes the application as a jar file.
+     */
+    public File writeJar(File jarFile) throws IOException {
+        try (OutputStream os = new FileOutputStream(jarFile)) {
+            writeJar(generate(), os);
+        }
+        return jarFile;
+    }
+
+    /**
+     * Writes the application as a war file. Half of the classes are placed
+     * in WEB-INF/classes and the other half in a jar in WEB-INF/lib.
+     */
+    public File writeWar(File warFile) throws IOException {
+        final Map<String, byte[]> classFiles = generate();
+        final Map<String, byte[]> warEntries = new LinkedHashMap<>();
+        final Map<String, byte[]> libEntries = new LinkedHashMap<>();
+        int index = 0;
+        for (Map.Entry<String, byte[]> e : classFiles.entrySet()) {
+            if (index++ % 2 == 0) {
+                warEntries.put("WEB-INF/classes/" + e.getKey(), e.getValue());
+            }
+            else {
+                libEntries.put(e.getKey(), e.getValue());
+            }
+        }
+        warEntries.put("WEB-INF/lib/synthetic-lib.jar", toJar(libEntries));
+        try (OutputStream os = new FileOutputStream(warFile)) {
+            writeJar(warEntries, os);
+        }
+        return warFile;
+    }
+
+    /**
+     * Returns the contents of a jar file with the given entries.
+     */
+    static byte[] toJar(Map<String, byte[]> entries) throws IOException {
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        writeJar(entries, baos);
+        return baos.toByteArray();
+    }
+
+    static void writeJar(Map<String, byte[]> entries, OutputStream os) throws IOException {
+        final JarOutputStream jos = new JarOutputStream(os);
+        for (Map.Entry<String, byte[]> e : entries.entrySet()) {
+            jos.putNextEntry(new JarEntry(e.getKey()));
+            jos.write(e.getValue());
+            jos.closeEntry();
+        }
+        jos.finish();
+    }
+
+    private CtClass createInterface(ClassPool pool, String name) throws CannotCompileException, NotFoundException {
+        final CtClass ctInterface = pool.makeInterface(name);
+        ctInterface.setGenericSignature("<T:Ljava/lang/Object;>Ljava/lang/Object;");
+        ctInterface.addMethod(CtNewMethod.abstractMethod(CtClass.intType, "serve", 
+                new CtClass[] {CtClass.intType}, null, ctInterface));
+        final CtMethod describe = CtNewMethod.make("public abstract java.lang.Object describe(java.lang.Object value);", ctInterface);
+        describe.setGenericSignature("(TT;)TT;");
+        ctInterface.addMethod(describe);
+        return ctInterface;
+    }
+
+    private void implementInterface(ClassPool pool, CtClass ctClass, String interfaceName) 
+            throws CannotCompileException, NotFoundException {
+        ctClass.addInterface(pool.get(interfaceName));
+        ctClass.setGenericSignature("Ljava/lang/Object;L" + interfaceName.replace('.', '/') + "<Ljava/lang/String;>;");
+        ctClass.addMethod(CtNewMethod.make("public int serve(int x) { return op0(x); }", ctClass));
+        ctClass.addMethod(CtNewMethod.make("public java.lang.Object describe(java.lang.Object value) "
+                + "{ name = (java.lang.String) value; return value; }", ctClass));
+    }
+
+    private String createMethodBody(String[] classNames, String[] interfaceNames, int classIndex, int methodIndex, Random random) {
+        final StringBuilder sb = new StringBuilder();
+        sb.append("public int op").append(methodIndex).append("(int x) {\n");
+        sb.append("    int r = x + state;\n");
+        // Calls are only made to classes which have already been generated
+        // so that the javassist compiler can resolve the target methods.
+        for (int c = 0; c < callsPerMethod && classIndex > 0; ++c) {
+            final int target = random.nextInt(classIndex);
+            final int method = random.nextInt(methodsPerClass);
+            if (interfaceCount > 0 && random.nextInt(100) < interfaceCallPercent) {
+                sb.append("    r += ((").append(interfaceNames[target % interfaceCount]).append(") new ")
+                    .append(classNames[target]).append("()).serve(r);\n");
+            }
+            else {
+                sb.append("    r += new ").append(classNames[target]).append("().op").append(method).append("(r);\n");
+            }
+        }
+        // Calls within the class, to methods which have already been added.
+        if (methodIndex > 0) {
+            sb.append("    r += op").append(random.nextInt(methodIndex)).append("(r - 1);\n");
+        }
+        sb.append("    state = r;\n");
+        sb.append("    return r;\n");
+        sb.append("}");
+        return sb.toString();
+    }
+
+    private static String toEntryName(String className) {
+        return className.replace('.', '/') + ".class";
+    }
+}
@@ -0,0 +1,205 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+
+package com.ibm.minerva.analyzer.benchmarks;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Packages a {@link SyntheticApplication} as a jar, war or ear file. In a war, the classes 
+ * are split between WEB-INF/classes and a module jar in WEB-INF/lib. In an ear, the classes
+ * are split between several wars. In both cases a percentage of the classes is placed in 
+ * a common jar which is duplicated in the WEB-INF/lib directory of every war.
+ */
+public final class SyntheticArchiveGenerator {
+
+    public enum Layout {
+        JAR, WAR, EAR;
+
+        public String getExtension() {
+            return "." + name().toLowerCase(Locale.ENGLISH);
+        }
+    }
+
+    private final SyntheticApplication application;
+    private Layout layout = Layout.EAR;
+    private int warCount = 4;
+    private int sharedPercent = 10;
+
+    public SyntheticArchiveGenerator(SyntheticApplication application) {
+        this.application = application;
+    }
+
+    public SyntheticArchiveGenerator setLayout(Layout layout) {
+        this.layout = (layout != null) ? layout : Layout.EAR;
+        return this;
+    }
+
+    /**
+     * Sets the number of wars in an ear.
+     */
+    public SyntheticArchiveGenerator setWarCount(int warCount) {
+        this.warCount = Math.max(1, warCount);
+        return this;
+    }
+
+    /**
+     * Sets the percentage of the classes placed in the common jar duplicated in every war.
+     */
+    public SyntheticArchiveGenerator setSharedPercent(int sharedPercent) {
+        this.sharedPercent = Math.min(100, Math.max(0, sharedPercent));
+        return this;
+    }
+
+    /**
+     * Writes the archive to the given directory and returns it. The extension
+     * of the file name is determined by the layout.
+     */
+    public File write(File dir, String baseName) throws IOException {
+        final File archive = new File(dir, baseName + layout.getExtension());
+        final Map<String, byte[]> classFiles = application.generate();
+        final Map<String, byte[]> entries;
+        switch (layout) {
+        case WAR:
+            entries = createWarEntries(split(classFiles, 1).get(0), createCommonJar(classFiles), 0);
+            break;
+        case EAR:
+            entries = new LinkedHashMap<>();
+            final byte[] commonJar = createCommonJar(classFiles);
+            final List<List<Map<String, byte[]>>> modules = split(classFiles, warCount);
+            for (int i = 0; i < modules.size(); ++i) {
+                entries.put("module" + i + ".war", 
+                        SyntheticApplication.toJar(createWarEntries(modules.get(i), commonJar, i)));
+            }
+            break;
+        default:
+            entries = classFiles;
+        }
+        try (OutputStream os = new FileOutputStream(archive)) {
+            SyntheticApplication.writeJar(entries, os);
+        }
+        return archive;
+    }
+
+    private Map<String, byte[]> createWarEntries(List<Map<String, byte[]>> units, byte[] commonJar, int index) throws IOException {
+        final Map<String, byte[]> warEntries = new LinkedHashMap<>();
+        final Map<String, byte[]> libEntries = new LinkedHashMap<>();
+        for (int i = 0; i < units.size(); ++i) {
+            if (i % 2 == 0) {
+                units.get(i).forEach((name, bytes) -> warEntries.put("WEB-INF/classes/" + name, bytes));
+            }
+            else {
+                libEntries.putAll(units.get(i));
+            }
+        }
+        if (!libEntries.isEmpty()) {
+            warEntries.put("WEB-INF/lib/module" + index + ".jar", SyntheticApplication.toJar(libEntries));
+        }
+        if (commonJar != null) {
+            warEntries.put("WEB-INF/lib/common.jar", commonJar);
+        }
+        return warEntries;
+    }
+
+    private byte[] createCommonJar(Map<String, byte[]> classFiles) throws IOException {
+        final List<Map<String, byte[]>> units = toUnits(classFiles);
+        final int sharedUnits = units.size() * sharedPercent / 100;
+        if (sharedUnits == 0) {
+            return null;
+        }
+        final Map<String, byte[]> entries = new LinkedHashMap<>();
+        units.subList(0, sharedUnits).forEach(entries::putAll);
+        return SyntheticApplication.toJar(entries);
+    }
+
+    /**
+     * Splits the classes which are not in the common jar into contiguous groups of units.
+     */
+    private List<List<Map<String, byte[]>>> split(Map<String, byte[]> classFiles, int groups) {
+        final List<Map<String, byte[]>> units = toUnits(classFiles);
+        final int sharedUnits = units.size() * sharedPercent / 100;
+        final List<Map<String, byte[]>> remaining = units.subList(sharedUnits, units.size());
+        final List<List<Map<String, byte[]>>> result = new ArrayList<>(groups);
+        for (int i = 0; i < groups; ++i) {
+            final int from = (int) ((long) remaining.size() * i / groups);
+            final int to = (int) ((long) remaining.size() * (i + 1) / groups);
+            result.add(remaining.subList(from, to));
+        }
+        return result;
+    }
+
+    /**
+     * Groups each top level class with its nested and anonymous classes, which
+     * must be placed in the same archive.
+     */
+    private static List<Map<String, byte[]>> toUnits(Map<String, byte[]> classFiles) {
+        final List<Map<String, byte[]>> units = new ArrayList<>();
+        Map<String, byte[]> unit = null;
+        for (Map.Entry<String, byte[]> e : classFiles.entrySet()) {
+            if (unit == null || e.getKey().indexOf('$') < 0) {
+                unit = new LinkedHashMap<>();
+                units.add(unit);
+            }
+            unit.put(e.getKey(), e.getValue());
+        }
+        return units;
+    }
+
+    /**
+     * Generates an archive. Usage: [options] output-dir, where the options are
+     * --classes, --packages, --methods, --calls, --interfaces, --interface-calls,
+     * --nesting, --anonymous, --seed, --layout (jar, war or ear), --wars and --shared.
+     */
+    public static void main(String[] args) throws IOException {
+        final List<String> positional = new ArrayList<>();
+        final Map<String, String> options = BenchmarkSupport.parseOptions(args, positional);
+        if (positional.isEmpty()) {
+            System.err.println("Usage: SyntheticArchiveGenerator [--option=value ...] output-dir");
+            return;
+        }
+        final File dir = new File(positional.get(0));
+        dir.mkdirs();
+        final File archive = fromOptions(options).write(dir, "synthetic");
+        System.out.println(archive.getAbsolutePath());
+    }
+
+    static SyntheticArchiveGenerator fromOptions(Map<String, String> options) {
+        final SyntheticApplication application = new SyntheticApplication()
+                .setClassCount(Integer.parseInt(options.getOrDefault("classes", "1000")))
+                .setPackageCount(Integer.parseInt(options.getOrDefault("packages", "20")))
+                .setMethodsPerClass(Integer.parseInt(options.getOrDefault("methods", "8")))
+                .setCallsPerMethod(Integer.parseInt(options.getOrDefault("calls", "2")))
+                .setInterfaceCount(Integer.parseInt(options.getOrDefault("interfaces", "10")))
+                .setInterfaceCallPercent(Integer.parseInt(options.getOrDefault("interface-calls", "50")))
+                .setNestingDepth(Integer.parseInt(options.getOrDefault("nesting", "1")))
+                .setAnonymousClasses(Boolean.parseBoolean(options.getOrDefault("anonymous", "true")))
+                .setSeed(Long.parseLong(options.getOrDefault("seed", "42")));
+        return new SyntheticArchiveGenerator(application)
+                .setLayout(Layout.valueOf(options.getOrDefault("layout", "ear").toUpperCase(Locale.ENGLISH)))
+                .setWarCount(Integer.parseInt(options.getOrDefault("wars", "4")))
+                .setSharedPercent(Integer.parseInt(options.getOrDefault("shared", "10")));
+    }
+}
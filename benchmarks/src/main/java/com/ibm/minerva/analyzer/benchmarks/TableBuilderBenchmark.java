@@ -0,0 +1,88 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+
+package com.ibm.minerva.analyzer.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.ibm.minerva.analyzer.TableBuilder;
+import com.ibm.minerva.analyzer.TableBuilderConfiguration;
+
+/**
+ * Measures building the symbol and reference tables from parsed classes
+ * with {@link TableBuilder#process}, with and without writing them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class TableBuilderBenchmark {
+
+    @Param({"500", "2000"})
+    private int classCount;
+
+    private File workDir;
+    private List<BenchmarkSupport.ParsedClass> classes;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        BenchmarkSupport.quietLogging();
+        workDir = BenchmarkSupport.createWorkDir();
+        classes = BenchmarkSupport.parse(new SyntheticApplication().setClassCount(classCount).generate());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchmarkSupport.delete(workDir);
+    }
+
+    @Benchmark
+    public TableBuilder process() {
+        final TableBuilder tableBuilder = new TableBuilder(workDir, TableBuilderConfiguration.ALL);
+        for (BenchmarkSupport.ParsedClass c : classes) {
+            tableBuilder.process(c.getClassProcessor(), c.getBytes());
+        }
+        return tableBuilder;
+    }
+
+    @Benchmark
+    public TableBuilder processAndWrite() throws IOException {
+        final TableBuilder tableBuilder = process();
+        tableBuilder.write();
+        return tableBuilder;
+    }
+}
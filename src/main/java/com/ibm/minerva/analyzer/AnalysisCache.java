@@ -0,0 +1,348 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+
+package com.ibm.minerva.analyzer;
+
+import static com.ibm.minerva.analyzer.MessageFormatter.formatMessage;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.logging.Logger;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+
+/**
+ * An on-disk cache of analysis results which is reused by later runs. It holds a
+ * {@link ClassSummary} for each class, keyed by a hash of the class file, and for each
+ * archive (including nested JARs) the hashes of the classes found in it, keyed by a 
+ * hash of the archive. An unchanged class is therefore not parsed again and an unchanged
+ * archive is not even read. When the cache grows beyond its size limit, the least 
+ * recently used records are evicted.
+ * 
+ * The records do not depend on the options of the analysis, so one cache directory 
+ * may be shared by analyses with different options (but not by concurrent analyses).
+ */
+public final class AnalysisCache {
+
+    private static final Logger logger = LoggingUtil.getLogger(AnalysisCache.class);
+
+    // Incremented whenever the format of the records or the content of the tables changes.
+    private static final String CACHE_VERSION = "1";
+
+    public static final long DEFAULT_MAX_SIZE = 512L * 1024 * 1024;
+
+    private static final String CLASSES_DIR = "classes";
+    private static final String ARCHIVES_DIR = "archives";
+    private static final String RECORD_EXTENSION = ".json";
+
+    private final File cacheDir;
+    private final File versionDir;
+    private final long maxSize;
+    private final Gson gson = new GsonBuilder().serializeNulls().create();
+
+    private long classHits;
+    private long classMisses;
+    private long archiveHits;
+    private long archiveMisses;
+    private long recordsWritten;
+    private long recordsEvicted;
+    private long size = -1L;
+
+    // The last array hashed, since the same class file is usually hashed
+    // by the archive processor and then by the application processor.
+    private byte[] lastHashed;
+    private String lastHash;
+
+    public AnalysisCache(File cacheDir, long maxSize) {
+        this.cacheDir = cacheDir;
+        this.versionDir = new File(cacheDir, "v" + CACHE_VERSION);
+        this.maxSize = (maxSize > 0) ? maxSize : DEFAULT_MAX_SIZE;
+    }
+
+    public File getCacheDir() {
+        return cacheDir;
+    }
+
+    /**
+     * Returns the hash of the given bytes used as the key of the records.
+     */
+    public String hash(byte[] bytes) {
+        if (bytes != lastHashed) {
+            lastHash = digest(bytes);
+            lastHashed = bytes;
+        }
+        return lastHash;
+    }
+
+    /**
+     * Returns the SHA-256 hash of the given bytes as a hexadecimal string.
+     */
+    static String digest(byte[] bytes) {
+        return toHex(createDigest().digest(bytes));
+    }
+
+    /**
+     * Returns the hash of the contents of the given file.
+     */
+    public String hash(File file) throws IOException {
+        try (InputStream is = new FileInputStream(file)) {
+            final MessageDigest md = createDigest();
+            final byte[] buffer = new byte[8192];
+            int len;
+            while ((len = is.read(buffer)) != -1) {
+                md.update(buffer, 0, len);
+            }
+            return toHex(md.digest());
+        }
+    }
+
+    /**
+     * Returns the summary of the class with the given hash, or null if it is not in the cache.
+     */
+    ClassSummary getClass(String hash) {
+        final JsonElement e = read(getClassFile(hash));
+        if (e != null && e.isJsonObject()) {
+            try {
+                final ClassSummary summary = ClassSummary.fromJson(e.getAsJsonObject());
+                ++classHits;
+                return summary;
+            }
+            catch (RuntimeException ex) {
+                logger.finest(() -> formatMessage("AnalysisCacheReadError", hash, ex.getMessage()));
+            }
+        }
+        ++classMisses;
+        return null;
+    }
+
+    /**
+     * Returns the summaries of the classes with the given hashes, or null if any is not in the cache.
+     */
+    List<ClassSummary> getClasses(List<String> hashes) {
+        final List<ClassSummary> summaries = new ArrayList<>(hashes.size());
+        for (String hash : hashes) {
+            final ClassSummary summary = getClass(hash);
+            if (summary == null) {
+                return null;
+            }
+            summaries.add(summary);
+        }
+        return summaries;
+    }
+
+    void putClass(String hash, ClassSummary summary) {
+        write(getClassFile(hash), summary.toJson());
+    }
+
+    /**
+     * Returns the hashes of the classes found in the archive with the given 
+     * hash, or null if the archive is not in the cache.
+     */
+    List<String> getArchive(String hash) {
+        final JsonElement e = read(new File(new File(versionDir, ARCHIVES_DIR), hash + RECORD_EXTENSION));
+        if (e != null && e.isJsonArray()) {
+            final List<String> hashes = new ArrayList<>();
+            e.getAsJsonArray().forEach(x -> hashes.add(x.getAsString()));
+            ++archiveHits;
+            return hashes;
+        }
+        ++archiveMisses;
+        return null;
+    }
+
+    void putArchive(String hash, List<String> classHashes) {
+        final JsonArray array = new JsonArray();
+        classHashes.forEach(array::add);
+        write(new File(new File(versionDir, ARCHIVES_DIR), hash + RECORD_EXTENSION), array);
+    }
+
+    /**
+     * Deletes the records of other cache versions and then the least recently 
+     * used records until the size of the cache is within its limit.
+     */
+    public void evict() {
+        final File[] versions = cacheDir.listFiles();
+        if (versions != null) {
+            for (File version : versions) {
+                if (version.isDirectory() && version.getName().matches("v\\d+") && !version.equals(versionDir)) {
+                    recordsEvicted += delete(version);
+                }
+            }
+        }
+        final List<File> records = new ArrayList<>();
+        listRecords(versionDir, records);
+        size = 0L;
+        for (File record : records) {
+            size += record.length();
+        }
+        if (size > maxSize) {
+            // The last modified time of a record is updated when it is read.
+            Collections.sort(records, Comparator.comparingLong(File::lastModified));
+            for (File record : records) {
+                if (size <= maxSize) {
+                    break;
+                }
+                final long length = record.length();
+                if (record.delete()) {
+                    size -= length;
+                    ++recordsEvicted;
+                }
+            }
+        }
+    }
+
+    public void logStatistics() {
+        logger.info(() -> formatMessage("AnalysisCacheStatistics", classHits, classMisses, 
+                archiveHits, archiveMisses, recordsWritten, recordsEvicted, 
+                (size >= 0) ? size : "?", cacheDir));
+    }
+
+    public long getClassHits() {
+        return classHits;
+    }
+
+    public long getClassMisses() {
+        return classMisses;
+    }
+
+    public long getArchiveHits() {
+        return archiveHits;
+    }
+
+    public long getArchiveMisses() {
+        return archiveMisses;
+    }
+
+    /**
+     * Returns the size of the records left by the last eviction, or -1 if there has been none.
+     */
+    long getSize() {
+        return size;
+    }
+
+    private File getClassFile(String hash) {
+        // Spread the class records over subdirectories to keep the directories small.
+        return new File(new File(new File(versionDir, CLASSES_DIR), hash.substring(0, 2)), hash + RECORD_EXTENSION);
+    }
+
+    private JsonElement read(File record) {
+        if (record.isFile()) {
+            try (Reader r = new InputStreamReader(new FileInputStream(record), StandardCharsets.UTF_8)) {
+                final JsonElement e = JsonParser.parseReader(r);
+                // Mark the record as recently used.
+                record.setLastModified(System.currentTimeMillis());
+                return e;
+            }
+            catch (Exception e) {
+                logger.finest(() -> formatMessage("AnalysisCacheReadError", record, e.getMessage()));
+            }
+        }
+        return null;
+    }
+
+    private void write(File record, JsonElement contents) {
+        final File dir = record.getParentFile();
+        dir.mkdirs();
+        try {
+            // Write to a temporary file first so that an interrupted write 
+            // never leaves an incomplete record in the cache.
+            final File temp = File.createTempFile(record.getName(), null, dir);
+            try {
+                try (Writer w = new OutputStreamWriter(new FileOutputStream(temp), StandardCharsets.UTF_8)) {
+                    gson.toJson(contents, w);
+                }
+                if (!temp.renameTo(record) && !record.isFile()) {
+                    throw new IOException(record.getAbsolutePath());
+                }
+                ++recordsWritten;
+            }
+            finally {
+                temp.delete();
+            }
+        }
+        catch (IOException e) {
+            logger.warning(() -> formatMessage("AnalysisCacheWriteError", record, e.getMessage()));
+        }
+    }
+
+    private static void listRecords(File dir, List<File> records) {
+        final File[] files = dir.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                if (f.isDirectory()) {
+                    listRecords(f, records);
+                }
+                else {
+                    records.add(f);
+                }
+            }
+        }
+    }
+
+    private static int delete(File file) {
+        int count = 0;
+        final File[] files = file.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                count += delete(f);
+            }
+        }
+        final boolean isFile = file.isFile();
+        if (file.delete() && isFile) {
+            ++count;
+        }
+        return count;
+    }
+
+    private static MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        }
+        catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-256.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] digest) {
+        final StringBuilder sb = new StringBuilder(digest.length * 2);
+        for (byte b : digest) {
+            sb.append(Character.forDigit((b >> 4) & 0xf, 16));
+            sb.append(Character.forDigit(b & 0xf, 16));
+        }
+        return sb.toString();
+    }
+}
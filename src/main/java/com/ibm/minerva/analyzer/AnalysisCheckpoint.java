@@ -0,0 +1,359 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+
+package com.ibm.minerva.analyzer;
+
+import static com.ibm.minerva.analyzer.MessageFormatter.formatMessage;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.logging.Logger;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+/**
+ * A checkpoint of an analysis written once the archives have been scanned. It holds the
+ * {@link ClassSummary} and the class file of every class found, in the order in which
+ * they were found, along with the archives which were scanned and a copy of the additional
+ * libraries. An analysis resumed from a checkpoint replays its classes instead of scanning
+ * the archives, which rebuilds the same symbol and reference tables and call graph scope
+ * without parsing any class. It may therefore use other call graph options, run with more
+ * memory or run on another machine than the analysis which wrote the checkpoint.
+ */
+public final class AnalysisCheckpoint {
+
+    private static final Logger logger = LoggingUtil.getLogger(AnalysisCheckpoint.class);
+
+    // Incremented whenever the format of the checkpoint changes.
+    private static final String CHECKPOINT_VERSION = "1";
+
+    public static final String CHECKPOINT_FILE_NAME = "checkpoint.json";
+    private static final String CLASSES_FILE_NAME = "classes.zip";
+    private static final String LIBRARIES_DIR = "libraries";
+    private static final String SUMMARY_EXTENSION = ".json";
+    private static final String CLASS_EXTENSION = ".class";
+
+    private final File dir;
+    private final Gson gson = new GsonBuilder().serializeNulls().create();
+
+    private ZipOutputStream classes;
+    private int classCount;
+    private IOException error;
+
+    public AnalysisCheckpoint(File dir) {
+        this.dir = dir;
+    }
+
+    public File getDirectory() {
+        return dir;
+    }
+
+    /**
+     * Returns true if the directory contains a complete checkpoint.
+     */
+    public boolean exists() {
+        return new File(dir, CHECKPOINT_FILE_NAME).isFile() && new File(dir, CLASSES_FILE_NAME).isFile();
+    }
+
+    /**
+     * Returns true if the directory contains a complete checkpoint of the 
+     * given archives and none of the archives has changed since it was written.
+     */
+    public boolean matches(File[] archives) {
+        if (!exists()) {
+            return false;
+        }
+        try {
+            final JsonArray recorded = readCheckpoint().getAsJsonArray("archives");
+            if (recorded.size() != archives.length) {
+                return false;
+            }
+            for (int i = 0; i < archives.length; ++i) {
+                if (!toJson(archives[i]).equals(recorded.get(i))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        catch (IOException | RuntimeException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Returns the archives which were scanned to write the checkpoint. 
+     * They need not be available to resume from the checkpoint.
+     */
+    public File[] getArchives() throws IOException {
+        final List<File> archives = new ArrayList<>();
+        readCheckpoint().getAsJsonArray("archives").forEach(e -> archives.add(new File(e.getAsJsonObject().get("path").getAsString())));
+        return archives.toArray(new File[archives.size()]);
+    }
+
+    /**
+     * Returns the copies of the additional libraries stored in the checkpoint.
+     */
+    public File[] getLibraries() throws IOException {
+        final List<File> libraries = new ArrayList<>();
+        readCheckpoint().getAsJsonArray("libraries").forEach(e -> libraries.add(new File(dir, e.getAsString())));
+        return libraries.toArray(new File[libraries.size()]);
+    }
+
+    /**
+     * Starts writing a new checkpoint, replacing any previous one. Returns false
+     * (having logged the reason) if the checkpoint cannot be written.
+     */
+    boolean begin() {
+        try {
+            // The checkpoint is incomplete until its checkpoint file is written.
+            Files.deleteIfExists(new File(dir, CHECKPOINT_FILE_NAME).toPath());
+            if (!dir.isDirectory() && !dir.mkdirs()) {
+                throw new FileNotFoundException(dir.getAbsolutePath());
+            }
+            classes = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(new File(dir, CLASSES_FILE_NAME))));
+            // Class files are written much more often than read. Favor speed over size.
+            classes.setLevel(Deflater.BEST_SPEED);
+            classCount = 0;
+            error = null;
+            return true;
+        }
+        catch (IOException e) {
+            logger.warning(() -> formatMessage("AnalysisCheckpointWriteError", dir, e.getMessage()));
+            return false;
+        }
+    }
+
+    /**
+     * Adds a class to the checkpoint. The summary must hold the symbol table object of the class.
+     */
+    void addClass(ClassSummary summary, byte[] bytes) {
+        if (classes != null && error == null) {
+            addEntries(gson.toJson(summary.toJson()).getBytes(StandardCharsets.UTF_8), bytes);
+        }
+    }
+
+    private void addEntries(byte[] summary, byte[] bytes) {
+        try {
+            final String name = String.format("%08d", classCount);
+            classes.putNextEntry(new ZipEntry(name + SUMMARY_EXTENSION));
+            classes.write(summary);
+            classes.closeEntry();
+            classes.putNextEntry(new ZipEntry(name + CLASS_EXTENSION));
+            classes.write(bytes);
+            classes.closeEntry();
+            ++classCount;
+        }
+        catch (IOException e) {
+            // Stop writing the checkpoint. The analysis itself is not affected.
+            error = e;
+            logger.warning(() -> formatMessage("AnalysisCheckpointWriteError", dir, e.getMessage()));
+        }
+    }
+
+    /**
+     * Appends the classes of another (complete) checkpoint to the checkpoint being written.
+     */
+    void addClasses(AnalysisCheckpoint other) throws IOException {
+        if (classes == null || error != null) {
+            throw new IOException(formatMessage("AnalysisCheckpointWriteError", dir, (error != null) ? error.getMessage() : ""));
+        }
+        try (ZipInputStream zis = new ZipInputStream(new BufferedInputStream(new FileInputStream(new File(other.dir, CLASSES_FILE_NAME))))) {
+            byte[] summary = null;
+            ZipEntry entry;
+            while ((entry = zis.getNextEntry()) != null) {
+                final byte[] bytes = readFully(zis);
+                if (entry.getName().endsWith(SUMMARY_EXTENSION)) {
+                    summary = bytes;
+                }
+                else if (summary != null && entry.getName().endsWith(CLASS_EXTENSION)) {
+                    addEntries(summary, bytes);
+                    summary = null;
+                }
+            }
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    /**
+     * Completes the checkpoint of the given archives, copying the given libraries 
+     * into it. Returns false (having logged the reason) if it could not be written.
+     */
+    boolean complete(File[] archives, List<File> libraries) {
+        if (classes == null) {
+            return false;
+        }
+        try {
+            classes.close();
+            classes = null;
+            if (error != null) {
+                return false;
+            }
+            final JsonObject checkpoint = new JsonObject();
+            checkpoint.addProperty("version", CHECKPOINT_VERSION);
+            checkpoint.addProperty("classes", classCount);
+            final JsonArray archiveArray = new JsonArray();
+            for (File archive : archives) {
+                archiveArray.add(toJson(archive));
+            }
+            checkpoint.add("archives", archiveArray);
+            final JsonArray libraryArray = new JsonArray();
+            final File librariesDir = new File(dir, LIBRARIES_DIR);
+            for (int i = 0; i < libraries.size(); ++i) {
+                final File library = libraries.get(i);
+                if (library.isFile()) {
+                    // Libraries with the same name may be found in different directories.
+                    final String path = LIBRARIES_DIR + "/" + i + "-" + library.getName();
+                    librariesDir.mkdirs();
+                    Files.copy(library.toPath(), new File(dir, path).toPath(), StandardCopyOption.REPLACE_EXISTING);
+                    libraryArray.add(path);
+                }
+            }
+            checkpoint.add("libraries", libraryArray);
+            final File temp = File.createTempFile(CHECKPOINT_FILE_NAME, null, dir);
+            try {
+                try (Writer w = new OutputStreamWriter(new FileOutputStream(temp), StandardCharsets.UTF_8)) {
+                    new GsonBuilder().setPrettyPrinting().create().toJson(checkpoint, w);
+                }
+                if (!temp.renameTo(new File(dir, CHECKPOINT_FILE_NAME))) {
+                    throw new IOException(new File(dir, CHECKPOINT_FILE_NAME).getAbsolutePath());
+                }
+            }
+            finally {
+                temp.delete();
+            }
+            logger.info(() -> formatMessage("AnalysisCheckpointWritten", classCount, dir));
+            return true;
+        }
+        catch (IOException e) {
+            logger.warning(() -> formatMessage("AnalysisCheckpointWriteError", dir, e.getMessage()));
+            return false;
+        }
+    }
+
+    /**
+     * Abandons a checkpoint which is being written, e.g. because the scan failed.
+     */
+    void abort() {
+        if (classes != null) {
+            try {
+                classes.close();
+            }
+            catch (IOException e) {}
+            classes = null;
+        }
+    }
+
+    /**
+     * Passes the classes of the checkpoint to the application processor in 
+     * the order in which they were found and returns the number of classes.
+     */
+    int replay(ApplicationProcessor ap, AnalysisProgress progress) throws IOException {
+        logger.info(() -> formatMessage("AnalysisCheckpointResume", dir));
+        int count = 0;
+        try (ZipInputStream zis = new ZipInputStream(new BufferedInputStream(new FileInputStream(new File(dir, CLASSES_FILE_NAME))))) {
+            ClassSummary summary = null;
+            ZipEntry entry;
+            while ((entry = zis.getNextEntry()) != null) {
+                final byte[] bytes = readFully(zis);
+                if (entry.getName().endsWith(SUMMARY_EXTENSION)) {
+                    summary = ClassSummary.fromJson(JsonParser.parseString(new String(bytes, StandardCharsets.UTF_8)).getAsJsonObject());
+                }
+                else if (summary != null && entry.getName().endsWith(CLASS_EXTENSION)) {
+                    progress.checkCanceled();
+                    if (!ap.processCached(summary, bytes)) {
+                        throw new IOException(formatMessage("AnalysisCheckpointInvalid", dir));
+                    }
+                    summary = null;
+                    ++count;
+                    progress.classScanned();
+                }
+            }
+        }
+        catch (CancellationException e) {
+            throw e;
+        }
+        catch (RuntimeException e) {
+            throw new IOException(formatMessage("AnalysisCheckpointInvalid", dir), e);
+        }
+        return count;
+    }
+
+    private JsonObject readCheckpoint() throws IOException {
+        final File f = new File(dir, CHECKPOINT_FILE_NAME);
+        if (!f.isFile()) {
+            throw new FileNotFoundException(formatMessage("AnalysisCheckpointNotFound", dir));
+        }
+        try (Reader r = new InputStreamReader(new FileInputStream(f), StandardCharsets.UTF_8)) {
+            final JsonObject checkpoint = JsonParser.parseReader(r).getAsJsonObject();
+            final JsonElement version = checkpoint.get("version");
+            if (version == null || !CHECKPOINT_VERSION.equals(version.getAsString())) {
+                throw new IOException(formatMessage("AnalysisCheckpointInvalid", dir));
+            }
+            return checkpoint;
+        }
+        catch (RuntimeException e) {
+            throw new IOException(formatMessage("AnalysisCheckpointInvalid", dir), e);
+        }
+    }
+
+    private static JsonObject toJson(File archive) {
+        final JsonObject o = new JsonObject();
+        o.addProperty("path", archive.getAbsolutePath());
+        o.addProperty("length", archive.length());
+        o.addProperty("lastModified", archive.lastModified());
+        return o;
+    }
+
+    private static byte[] readFully(InputStream is) throws IOException {
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[8192];
+        int len;
+        while ((len = is.read(buffer)) != -1) {
+            baos.write(buffer, 0, len);
+        }
+        return baos.toByteArray();
+    }
+}
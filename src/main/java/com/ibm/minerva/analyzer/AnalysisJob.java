@@ -0,0 +1,204 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+
+package com.ibm.minerva.analyzer;
+
+import static com.ibm.minerva.analyzer.MessageFormatter.formatMessage;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+
+import com.google.gson.JsonObject;
+
+/**
+ * An analysis described by a JSON object, as found in the jobs of a batch manifest
+ * (see {@link BatchAnalyzer}) or in the requests of an {@link AnalysisServer}.
+ */
+final class AnalysisJob {
+
+    static final long DEFAULT_MEMORY_FACTOR = 10;
+
+    private static final long MB = 1024L * 1024;
+    private static final long MIN_JOB_MEMORY = 64;
+
+    private final int index;
+    private final String name;
+    private final JsonObject spec;
+    private final File baseDir;
+    private final List<File> archives = new ArrayList<>();
+    private final File outputDir;
+    private final long memory;
+    private final CallGraphBuilderType callGraphBuilder;
+    private final MethodGraphTier methodGraphTier;
+
+    /**
+     * Creates a job from the given JSON object, whose relative paths are resolved against 
+     * the given directory. The memory of the job, if not set, is estimated as the size of
+     * its archives (in megabytes) multiplied by the given factor.
+     */
+    AnalysisJob(int index, JsonObject spec, File baseDir, long memoryFactor) throws IOException {
+        this.index = index;
+        this.spec = spec;
+        this.baseDir = baseDir;
+        if (!spec.has("archives") || !spec.has("output")) {
+            throw new IOException(formatMessage("AnalysisJobInvalid", index));
+        }
+        spec.getAsJsonArray("archives").forEach(e -> archives.add(resolve(baseDir, e.getAsString())));
+        this.outputDir = resolve(baseDir, spec.get("output").getAsString());
+        this.name = spec.has("name") ? spec.get("name").getAsString() : outputDir.getName();
+        final long size = archives.stream().mapToLong(File::length).sum() / MB;
+        this.memory = spec.has("memory") ? spec.get("memory").getAsLong() : Math.max(MIN_JOB_MEMORY, size * memoryFactor);
+        this.callGraphBuilder = getCallGraphBuilder();
+        this.methodGraphTier = spec.has("methodGraphTier") ? find("methodGraphTier", MethodGraphTier::find) : null;
+    }
+
+    int getIndex() {
+        return index;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the estimated memory of the analysis in megabytes.
+     */
+    long getMemory() {
+        return memory;
+    }
+
+    Analyzer createAnalyzer() throws IOException {
+        final Analyzer analyzer = new Analyzer(archives.toArray(new File[archives.size()]), outputDir, 
+                getFiles("libraries").toArray(new File[0]));
+        if (spec.has("packages")) {
+            final Set<String> packages = new LinkedHashSet<>();
+            spec.getAsJsonArray("packages").forEach(e -> packages.add(e.getAsString()));
+            analyzer.setPackageRestrictions(packages, getBoolean("packageIncludeList"));
+        }
+        if (callGraphBuilder != null) {
+            analyzer.setCallGraphBuilder(callGraphBuilder);
+        }
+        analyzer.setCallGraphExclusions(getFile("callGraphExclusions"))
+            .setDeriveCallGraphExclusions(getBoolean("deriveCallGraphExclusions"))
+            .setRestrictJdkScope(getBoolean("restrictJdkScope"))
+            .setAnalysisCache(getFile("cache"), 0)
+            .setIncrementalCallGraph(getFile("incrementalCallGraph"))
+            .setCheckpoint(getFile("checkpoint"))
+            .setConcurrentWrites(getBoolean("concurrentWrites"))
+            .setAgentOutputStream(false);
+        if (spec.has("spillThreshold")) {
+            analyzer.setSpillThreshold(spec.get("spillThreshold").getAsDouble());
+        }
+        if (methodGraphTier != null) {
+            analyzer.setMethodGraphTier(methodGraphTier);
+        }
+        return analyzer;
+    }
+
+    private CallGraphBuilderType getCallGraphBuilder() throws IOException {
+        if (!spec.has("callGraphBuilder")) {
+            return null;
+        }
+        final String value = spec.get("callGraphBuilder").getAsString();
+        if (Boolean.parseBoolean(value)) {
+            return CallGraphBuilderType.ZERO_ONE_CFA;
+        }
+        return "false".equalsIgnoreCase(value) ? null : find("callGraphBuilder", CallGraphBuilderType::find);
+    }
+
+    /**
+     * Returns the constant named by the given property, or throws an exception if there is none.
+     */
+    private <T> T find(String name, Function<String,Optional<T>> finder) throws IOException {
+        final String value = spec.get(name).getAsString();
+        final Optional<T> constant = finder.apply(value);
+        if (!constant.isPresent()) {
+            throw new IOException(formatMessage("AnalysisJobInvalidValue", index, name, value));
+        }
+        return constant.get();
+    }
+
+    /**
+     * Returns true if the two jobs use the same cache, incremental state, checkpoint
+     * or output directory, which may not be used by concurrent analyses.
+     */
+    boolean sharesDirectoryWith(AnalysisJob other) {
+        for (String name : new String[] {"cache", "incrementalCallGraph", "checkpoint"}) {
+            final File dir = getFile(name);
+            if (dir != null && isSameFile(dir, other.getFile(name))) {
+                return true;
+            }
+        }
+        return isSameFile(outputDir, other.outputDir);
+    }
+
+    /**
+     * Throws an exception unless the output, cache, incremental state and checkpoint
+     * directories of the job are all in the given directory.
+     */
+    void checkWrittenDirectories(File root) throws IOException {
+        final File canonicalRoot = root.getCanonicalFile();
+        final List<File> dirs = new ArrayList<>();
+        dirs.add(outputDir);
+        for (String name : new String[] {"cache", "incrementalCallGraph", "checkpoint"}) {
+            final File dir = getFile(name);
+            if (dir != null) {
+                dirs.add(dir);
+            }
+        }
+        for (File dir : dirs) {
+            // The canonical path resolves ".." and symbolic links.
+            if (!dir.getCanonicalFile().toPath().startsWith(canonicalRoot.toPath())) {
+                throw new IOException(formatMessage("AnalysisJobDirectoryNotAllowed", dir, canonicalRoot));
+            }
+        }
+    }
+
+    private static boolean isSameFile(File file, File other) {
+        return other != null && file.getAbsoluteFile().equals(other.getAbsoluteFile());
+    }
+
+    private boolean getBoolean(String name) {
+        return spec.has(name) && spec.get(name).getAsBoolean();
+    }
+
+    private File getFile(String name) {
+        return spec.has(name) ? resolve(baseDir, spec.get(name).getAsString()) : null;
+    }
+
+    static File resolve(File baseDir, String path) {
+        final File file = new File(path);
+        return file.isAbsolute() ? file : new File(baseDir, path);
+    }
+
+    private List<File> getFiles(String name) {
+        if (!spec.has(name)) {
+            return Collections.emptyList();
+        }
+        final List<File> files = new ArrayList<>();
+        spec.getAsJsonArray(name).forEach(e -> files.add(resolve(baseDir, e.getAsString())));
+        return files;
+    }
+}
@@ -0,0 +1,286 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+
+package com.ibm.minerva.analyzer;
+
+import static com.ibm.minerva.analyzer.MessageFormatter.formatMessage;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.lang.management.ThreadMXBean;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+/**
+ * Collects the wall and CPU time of each phase of an analysis, along with
+ * counters, graph sizes and memory and garbage collection statistics from 
+ * the platform MXBeans. These are written to a JSON document alongside the 
+ * other outputs of the analysis.
+ * 
+ * CPU times are those of the thread which ran the phase. Work done by other
+ * threads (e.g. a parallel method graph export) is not included.
+ * 
+ * Memory and garbage collection statistics are those of the whole JVM, which
+ * may run other analyses at the same time. The peak heap usage is the peak
+ * since the JVM started (or since some other code reset it) and the garbage 
+ * collections are those that ran while the analysis did. Both are marked with 
+ * a "jvm" scope in the JSON document.
+ */
+public final class AnalysisMetrics {
+    
+    private static final Logger logger = LoggingUtil.getLogger(AnalysisMetrics.class);
+    
+    public static final String METRICS_FILE_NAME = "analysis-metrics.json";
+    
+    // Phase names
+    public static final String ARCHIVE_SCAN = "archiveScan";
+    public static final String CHECKPOINT_RESTORE = "checkpointRestore";
+    public static final String TABLE_BUILD = "symRefTableBuild";
+    public static final String TABLE_WRITE = "tableWrite";
+    // The tables written in the background with concurrent writes, each timed on its own thread.
+    public static final String TABLE_WRITE_BACKGROUND = "tableWriteBackground";
+    public static final String CLASS_HIERARCHY = "classHierarchy";
+    public static final String ENTRYPOINTS = "entrypoints";
+    public static final String CALL_GRAPH = "callGraph";
+    public static final String CLASS_GRAPH_EXPORT = "classGraphExport";
+    // The class graph written in the background with concurrent writes.
+    public static final String CLASS_GRAPH_WRITE_BACKGROUND = "classGraphWriteBackground";
+    public static final String SDG = "sdg";
+    public static final String METHOD_GRAPH_EXPORT = "methodGraphExport";
+    public static final String GRAPH_SPLICE = "graphSplice";
+    
+    // Counter names
+    public static final String BYTES_INFLATED = "bytesInflated";
+    public static final String CLASSES_PARSED = "classesParsed";
+    public static final String CLASSES_CACHED = "classesCached";
+    public static final String CLASSES_RESTORED = "classesRestored";
+    public static final String CLASSES_ANALYZED = "classesAnalyzed";
+    public static final String CLASSES_SKIPPED = "classesSkipped";
+    public static final String CLASSES_DUPLICATED = "classesDuplicated";
+    public static final String CLASS_HIERARCHY_CLASSES = "classHierarchyClasses";
+    public static final String ENTRYPOINT_COUNT = "entrypoints";
+    public static final String CALL_GRAPH_NODES = "callGraphNodes";
+    public static final String CLASS_GRAPH_NODES = "classGraphNodes";
+    public static final String CLASS_GRAPH_EDGES = "classGraphEdges";
+    public static final String METHOD_GRAPH_NODES = "methodGraphNodes";
+    public static final String METHOD_GRAPH_EDGES = "methodGraphEdges";
+    public static final String SDG_STATEMENTS = "sdgStatements";
+    public static final String INCREMENTAL_CHANGED_CLASSES = "incrementalChangedClasses";
+    public static final String INCREMENTAL_AFFECTED_CLASSES = "incrementalAffectedClasses";
+    public static final String SYM_TABLE_ENTRIES_SPILLED = "symTableEntriesSpilled";
+    
+    // The scope of the memory and garbage collection statistics.
+    private static final String JVM_SCOPE = "jvm";
+    
+    private final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+    private final boolean cpuTimeSupported;
+    
+    private final Map<String, PhaseTime> phases = new LinkedHashMap<>();
+    private final Map<String, Long> counters = new LinkedHashMap<>();
+    private final Map<String, long[]> gcStart = new LinkedHashMap<>();
+    private final long startTime;
+    private final long startNanos;
+    
+    public AnalysisMetrics() {
+        boolean supported = false;
+        try {
+            supported = threadBean.isCurrentThreadCpuTimeSupported() && threadBean.isThreadCpuTimeEnabled();
+        }
+        catch (UnsupportedOperationException e) {}
+        this.cpuTimeSupported = supported;
+        
+        // Record garbage collection from this point on. The peak heap usage is not reset 
+        // as the pools are shared with any other analyses running in this JVM.
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            gcStart.put(gc.getName(), new long[] {gc.getCollectionCount(), gc.getCollectionTime()});
+        }
+        this.startTime = System.currentTimeMillis();
+        this.startNanos = System.nanoTime();
+    }
+    
+    /**
+     * Starts timing a phase on the current thread. The time is added to the phase
+     * when the returned timer is closed, so a phase may be timed several times.
+     */
+    public Timer startPhase(String phase) {
+        return new Timer(phase);
+    }
+    
+    public synchronized void increment(String counter) {
+        add(counter, 1);
+    }
+    
+    public synchronized void add(String counter, long value) {
+        counters.merge(counter, value, Long::sum);
+    }
+    
+    public synchronized void set(String counter, long value) {
+        counters.put(counter, value);
+    }
+    
+    public synchronized long getCounter(String counter) {
+        final Long value = counters.get(counter);
+        return (value != null) ? value : 0L;
+    }
+    
+    /**
+     * Returns the wall time of the phase in nanoseconds or -1 if it has not run.
+     */
+    public synchronized long getWallTime(String phase) {
+        final PhaseTime p = phases.get(phase);
+        return (p != null) ? p.wallNanos : -1L;
+    }
+    
+    private synchronized void record(String phase, long wallNanos, long cpuNanos) {
+        final PhaseTime p = phases.computeIfAbsent(phase, x -> new PhaseTime());
+        p.wallNanos += wallNanos;
+        p.cpuNanos += cpuNanos;
+        ++p.count;
+    }
+    
+    private long currentThreadCpuTime() {
+        return cpuTimeSupported ? threadBean.getCurrentThreadCpuTime() : 0L;
+    }
+    
+    public synchronized JsonObject toJson() {
+        final JsonObject metrics = new JsonObject();
+        metrics.addProperty("startTime", startTime);
+        metrics.addProperty("wallTimeMs", toMillis(System.nanoTime() - startNanos));
+        
+        final JsonArray phaseArray = new JsonArray();
+        phases.forEach((name, p) -> {
+            final JsonObject phase = new JsonObject();
+            phase.addProperty("name", name);
+            phase.addProperty("wallTimeMs", toMillis(p.wallNanos));
+            if (cpuTimeSupported) {
+                phase.addProperty("cpuTimeMs", toMillis(p.cpuNanos));
+            }
+            phase.addProperty("count", p.count);
+            phaseArray.add(phase);
+        });
+        metrics.add("phases", phaseArray);
+        
+        final JsonObject counterObject = new JsonObject();
+        counters.forEach(counterObject::addProperty);
+        metrics.add("counters", counterObject);
+        
+        final JsonObject memory = new JsonObject();
+        memory.addProperty("scope", JVM_SCOPE);
+        long peakHeap = 0;
+        final JsonObject pools = new JsonObject();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.isValid()) {
+                final MemoryUsage peak = pool.getPeakUsage();
+                if (peak != null) {
+                    peakHeap += peak.getUsed();
+                    pools.addProperty(pool.getName(), peak.getUsed());
+                }
+            }
+        }
+        // The sum of the peaks of the heap pools, which is an upper bound of the peak heap usage of the JVM.
+        memory.addProperty("jvmPeakHeapBytes", peakHeap);
+        memory.add("jvmPeakHeapPoolBytes", pools);
+        memory.addProperty("maxHeapBytes", Runtime.getRuntime().maxMemory());
+        metrics.add("memory", memory);
+        
+        final JsonObject gc = new JsonObject();
+        gc.addProperty("scope", JVM_SCOPE);
+        long gcCount = 0;
+        long gcTime = 0;
+        final JsonObject collectors = new JsonObject();
+        final List<GarbageCollectorMXBean> gcBeans = ManagementFactory.getGarbageCollectorMXBeans();
+        for (GarbageCollectorMXBean bean : gcBeans) {
+            final long[] start = gcStart.getOrDefault(bean.getName(), new long[2]);
+            final long count = Math.max(0, bean.getCollectionCount() - start[0]);
+            final long time = Math.max(0, bean.getCollectionTime() - start[1]);
+            gcCount += count;
+            gcTime += time;
+            final JsonObject collector = new JsonObject();
+            collector.addProperty("collectionCount", count);
+            collector.addProperty("collectionTimeMs", time);
+            collectors.add(bean.getName(), collector);
+        }
+        gc.addProperty("collectionCount", gcCount);
+        gc.addProperty("collectionTimeMs", gcTime);
+        gc.add("collectors", collectors);
+        metrics.add("gc", gc);
+        return metrics;
+    }
+    
+    /**
+     * Writes the metrics as JSON to the {@link #METRICS_FILE_NAME} file in the given directory.
+     */
+    public void write(File dir) throws IOException {
+        final File f = new File(dir, METRICS_FILE_NAME);
+        logger.info(() -> formatMessage("WritingFile", f));
+        final Gson gson = new GsonBuilder().serializeNulls().setPrettyPrinting().create();
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(f), "UTF-8")) {
+            gson.toJson(toJson(), writer);
+        }
+    }
+    
+    private static long toMillis(long nanos) {
+        return nanos / 1_000_000L;
+    }
+    
+    private static final class PhaseTime {
+        private long wallNanos;
+        private long cpuNanos;
+        private int count;
+    }
+    
+    /**
+     * Times one execution of a phase.
+     */
+    public final class Timer implements AutoCloseable {
+        
+        private final String phase;
+        private final long startWall;
+        private final long startCpu;
+        private boolean closed;
+        
+        private Timer(String phase) {
+            this.phase = phase;
+            this.startCpu = currentThreadCpuTime();
+            this.startWall = System.nanoTime();
+        }
+        
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                record(phase, System.nanoTime() - startWall, currentThreadCpuTime() - startCpu);
+            }
+        }
+    }
+}
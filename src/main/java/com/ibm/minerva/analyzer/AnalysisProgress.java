@@ -0,0 +1,220 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+
+package com.ibm.minerva.analyzer;
+
+import static com.ibm.minerva.analyzer.MessageFormatter.formatMessage;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.gson.JsonObject;
+import com.ibm.wala.util.MonitorUtil.IProgressMonitor;
+import com.ibm.wala.util.NullProgressMonitor;
+
+/**
+ * Tracks the progress of an analysis and whether it has been canceled.
+ * The counters may be read from any thread while the analysis is running.
+ */
+public final class AnalysisProgress {
+    
+    public enum Phase {
+        NOT_STARTED,
+        SCANNING,
+        CLASS_HIERARCHY,
+        CALL_GRAPH,
+        METHOD_GRAPH,
+        WRITING,
+        DONE
+    }
+    
+    @FunctionalInterface
+    public interface Listener {
+        public void progressChanged(AnalysisProgress progress);
+    }
+    
+    // Minimum interval between notifications of counter updates.
+    private static final long NOTIFY_INTERVAL_NANOS = 500_000_000L;
+    
+    private final AtomicLong archivesScanned = new AtomicLong();
+    private final AtomicLong entriesScanned = new AtomicLong();
+    private final AtomicLong classesScanned = new AtomicLong();
+    private final AtomicLong chaClassesLoaded = new AtomicLong();
+    private final AtomicLong pointerAnalysisWork = new AtomicLong();
+    private final AtomicLong sdgStatementsProcessed = new AtomicLong();
+    private final AtomicLong lastNotified = new AtomicLong(System.nanoTime());
+    
+    private volatile Phase phase = Phase.NOT_STARTED;
+    private volatile boolean canceled;
+    private volatile Listener listener;
+    
+    public Phase getPhase() {
+        return phase;
+    }
+    
+    public long getArchivesScanned() {
+        return archivesScanned.get();
+    }
+    
+    public long getEntriesScanned() {
+        return entriesScanned.get();
+    }
+    
+    public long getClassesScanned() {
+        return classesScanned.get();
+    }
+    
+    public long getClassHierarchyClassesLoaded() {
+        return chaClassesLoaded.get();
+    }
+    
+    /**
+     * Returns the units of work reported by WALA while building the call graph. 
+     * These are typically iterations of the pointer analysis solver.
+     */
+    public long getPointerAnalysisWork() {
+        return pointerAnalysisWork.get();
+    }
+    
+    public long getSdgStatementsProcessed() {
+        return sdgStatementsProcessed.get();
+    }
+    
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+    
+    /**
+     * Requests cancellation. The analysis stops at the next point where it can
+     * safely do so and throws a {@link CancellationException}. The request 
+     * cannot be withdrawn.
+     */
+    public void cancel() {
+        canceled = true;
+    }
+    
+    public boolean isCanceled() {
+        return canceled;
+    }
+    
+    /**
+     * Throws a {@link CancellationException} if cancellation has been requested.
+     */
+    public void checkCanceled() {
+        if (canceled) {
+            throw new CancellationException(formatMessage("AnalysisCanceled"));
+        }
+    }
+    
+    void setPhase(Phase phase) {
+        this.phase = phase;
+        final Listener l = listener;
+        if (l != null) {
+            lastNotified.set(System.nanoTime());
+            l.progressChanged(this);
+        }
+    }
+    
+    void archiveScanned() {
+        archivesScanned.incrementAndGet();
+        updated();
+    }
+    
+    void entryScanned() {
+        entriesScanned.incrementAndGet();
+        updated();
+    }
+    
+    void classScanned() {
+        classesScanned.incrementAndGet();
+        updated();
+    }
+    
+    void setClassHierarchyClassesLoaded(long count) {
+        chaClassesLoaded.set(count);
+        updated();
+    }
+    
+    /**
+     * Returns a WALA progress monitor which reports its work as pointer analysis work
+     * and cancels the call graph construction when this analysis is canceled.
+     */
+    IProgressMonitor getPointerAnalysisMonitor() {
+        return new Monitor(pointerAnalysisWork);
+    }
+    
+    /**
+     * Returns a WALA progress monitor which reports its work as SDG statements
+     * processed and cancels the export of the SDG when this analysis is canceled.
+     */
+    IProgressMonitor getSdgMonitor() {
+        return new Monitor(sdgStatementsProcessed);
+    }
+    
+    // Notifies the listener if it has not been notified recently.
+    private void updated() {
+        final Listener l = listener;
+        if (l != null) {
+            final long now = System.nanoTime();
+            final long last = lastNotified.get();
+            if (now - last >= NOTIFY_INTERVAL_NANOS && lastNotified.compareAndSet(last, now)) {
+                l.progressChanged(this);
+            }
+        }
+    }
+    
+    public JsonObject toJson() {
+        final JsonObject o = new JsonObject();
+        o.addProperty("phase", phase.name());
+        o.addProperty("archivesScanned", getArchivesScanned());
+        o.addProperty("entriesScanned", getEntriesScanned());
+        o.addProperty("classesScanned", getClassesScanned());
+        o.addProperty("classHierarchyClassesLoaded", getClassHierarchyClassesLoaded());
+        o.addProperty("pointerAnalysisWork", getPointerAnalysisWork());
+        o.addProperty("sdgStatementsProcessed", getSdgStatementsProcessed());
+        o.addProperty("canceled", canceled);
+        return o;
+    }
+    
+    @Override
+    public String toString() {
+        return formatMessage("AnalysisProgress", phase, getArchivesScanned(), 
+                getEntriesScanned(), getClassesScanned(), getClassHierarchyClassesLoaded(), 
+                getPointerAnalysisWork(), getSdgStatementsProcessed());
+    }
+    
+    private final class Monitor extends NullProgressMonitor {
+        
+        private final AtomicLong work;
+        
+        Monitor(AtomicLong work) {
+            this.work = work;
+        }
+        
+        @Override
+        public boolean isCanceled() {
+            return canceled;
+        }
+        
+        @Override
+        public void worked(int units) {
+            work.addAndGet(units);
+            updated();
+        }
+    }
+}
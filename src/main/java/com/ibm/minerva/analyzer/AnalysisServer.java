@@ -0,0 +1,662 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+
+package com.ibm.minerva.analyzer;
+
+import static com.ibm.minerva.analyzer.MessageFormatter.formatMessage;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * A long-running analysis server, which accepts requests on an HTTP port of the local
+ * host only. Analyses run in one warm JVM, so the standard libraries, the library JARs
+ * and the JIT compiled code are reused by later requests instead of being loaded again.
+ * The shared state is released when the heap left in use by the last collection grows
+ * beyond a fraction of the maximum heap size, or on request.
+ * <p>
+ * The requests are:
+ * <ul>
+ * <li>POST /analyses with an analysis as in the jobs of a {@link BatchAnalyzer} manifest
+ * (relative paths are resolved against the working directory of the server). It is 
+ * queued and its status returned, including its id.</li>
+ * <li>GET /analyses returns the status of the queued, running and recent analyses.</li>
+ * <li>GET /analyses/{id} returns the status and progress of an analysis, and its 
+ * metrics once done.</li>
+ * <li>GET /analyses/{id}/events streams the status of an analysis, one JSON object 
+ * per line, each time its progress changes and until it is done.</li>
+ * <li>DELETE /analyses/{id} cancels an analysis.</li>
+ * <li>DELETE /caches releases the state shared by the analyses.</li>
+ * </ul>
+ * Each time the server starts, it creates a random access token and writes it to a file 
+ * which only the user running the server can read (by default analysis-server-{port}.token
+ * in the .minerva directory of the user's home directory). Requests must carry the token in 
+ * an "Authorization: Bearer {token}" header, and POST and DELETE requests must have the 
+ * content type application/json. Requests whose Host header is not the local host and port
+ * (e.g. sent through DNS rebinding) and requests with an Origin header (i.e. sent by a web
+ * page) are rejected. The output, cache, checkpoint and incremental call graph directories 
+ * of the analyses can also be restricted to a directory with {@link #setJobRoot(File)}.
+ */
+public final class AnalysisServer {
+
+    private static final Logger logger = LoggingUtil.getLogger(AnalysisServer.class);
+
+    public static final int DEFAULT_PORT = 9480;
+
+    private static final String JSON_CONTENT_TYPE = "application/json; charset=utf-8";
+    private static final String EVENTS_CONTENT_TYPE = "application/x-ndjson; charset=utf-8";
+    private static final String JSON_MEDIA_TYPE = "application/json";
+    private static final String[] LOCAL_HOST_NAMES = {"localhost", "127.0.0.1", "[::1]"};
+    private static final String TOKEN_DIR = ".minerva";
+    private static final int TOKEN_LENGTH = 32;
+
+    // The number of finished analyses whose status is kept.
+    private static final int MAX_FINISHED_ANALYSES = 100;
+    // The interval at which the status is sent to an event stream if it has not changed.
+    private static final long EVENT_HEARTBEAT_MILLIS = 10_000L;
+    private static final double DEFAULT_EVICTION_THRESHOLD = 0.7;
+
+    public enum Status {
+        QUEUED,
+        RUNNING,
+        SUCCEEDED,
+        FAILED,
+        CANCELED
+    }
+
+    private final HttpServer server;
+    private final ThreadPoolExecutor workers;
+    private final ExecutorService exchanges = Executors.newCachedThreadPool();
+    private final JobAdmission admission = new JobAdmission(JobAdmission.getDefaultMemoryLimit());
+    private final File baseDir = new File("").getAbsoluteFile();
+    private final AtomicInteger nextId = new AtomicInteger();
+    // The analyses by id, in the order they were submitted. Guarded by this.
+    private final Map<String,Submission> submissions = new LinkedHashMap<>();
+    private volatile double evictionThreshold = DEFAULT_EVICTION_THRESHOLD;
+    private final String token = createToken();
+    private File tokenFile;
+    private volatile File jobRoot;
+
+    /**
+     * Creates a server which listens on the given port of the loopback address (or on 
+     * an ephemeral port if 0) and runs up to the given number of analyses at the same
+     * time, which is further limited by their estimated memory. At most the given 
+     * number of analyses wait in the queue. Others are rejected.
+     */
+    public AnalysisServer(int port, int workerCount, int maxQueuedAnalyses) throws IOException {
+        final int n = Math.max(1, workerCount);
+        this.workers = new ThreadPoolExecutor(n, n, 0L, TimeUnit.MILLISECONDS, 
+                new ArrayBlockingQueue<>(Math.max(1, maxQueuedAnalyses)));
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        this.server.createContext("/analyses", this::handleAnalyses);
+        this.server.createContext("/caches", this::handleCaches);
+        // Event streams hold their thread until the analysis is done.
+        this.server.setExecutor(exchanges);
+    }
+
+    /**
+     * Sets the fraction of the maximum heap size which, once exceeded by the heap left
+     * in use after an analysis, releases the state shared by the analyses.
+     */
+    public AnalysisServer setEvictionThreshold(double evictionThreshold) {
+        this.evictionThreshold = evictionThreshold;
+        return this;
+    }
+
+    /**
+     * Sets the file to which the access token is written when the server starts.
+     */
+    public AnalysisServer setTokenFile(File tokenFile) {
+        this.tokenFile = tokenFile;
+        return this;
+    }
+
+    /**
+     * Restricts the output, cache, checkpoint and incremental call graph directories
+     * of the analyses to the given directory. Other analyses are rejected. If null
+     * (the default), the analyses may write to any directory.
+     */
+    public AnalysisServer setJobRoot(File jobRoot) {
+        this.jobRoot = jobRoot;
+        return this;
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Returns the access token which the requests must carry.
+     */
+    public String getToken() {
+        return token;
+    }
+
+    /**
+     * Returns the file to which the access token is written.
+     */
+    public File getTokenFile() {
+        if (tokenFile == null) {
+            tokenFile = new File(new File(System.getProperty("user.home"), TOKEN_DIR), "analysis-server-" + getPort() + ".token");
+        }
+        return tokenFile;
+    }
+
+    /**
+     * Writes the access token and starts accepting requests.
+     */
+    public void start() throws IOException {
+        writeToken(getTokenFile());
+        server.start();
+        logger.info(() -> formatMessage("AnalysisServerStarted", getPort(), workers.getMaximumPoolSize()));
+        logger.info(() -> formatMessage("AnalysisServerTokenWritten", getTokenFile()));
+    }
+
+    /**
+     * Stops accepting requests and cancels the queued and running analyses.
+     */
+    public void stop() {
+        server.stop(0);
+        synchronized (this) {
+            submissions.values().forEach(Submission::cancel);
+        }
+        workers.shutdownNow();
+        exchanges.shutdownNow();
+        getTokenFile().delete();
+        logger.info(() -> formatMessage("AnalysisServerStopped"));
+    }
+
+    /**
+     * Releases the state shared by the analyses. It is loaded again by the next analysis.
+     */
+    public void evictCaches() {
+        StandardLibraries.release();
+        LibraryModules.clear();
+        logger.info(() -> formatMessage("AnalysisServerCachesEvicted"));
+    }
+
+    private void handleAnalyses(HttpExchange exchange) throws IOException {
+        try {
+            if (!authorize(exchange)) {
+                return;
+            }
+            final String method = exchange.getRequestMethod();
+            final String[] path = exchange.getRequestURI().getPath().split("/");
+            // The path is /analyses[/{id}[/events]].
+            if (path.length == 2) {
+                if ("POST".equals(method)) {
+                    submit(exchange);
+                }
+                else if ("GET".equals(method)) {
+                    final JsonArray array = new JsonArray();
+                    synchronized (this) {
+                        submissions.values().forEach(s -> array.add(s.toJson()));
+                    }
+                    final JsonObject o = new JsonObject();
+                    o.add("analyses", array);
+                    send(exchange, 200, o);
+                }
+                else {
+                    sendError(exchange, 405, method);
+                }
+                return;
+            }
+            final Submission submission;
+            synchronized (this) {
+                submission = (path.length == 3 || path.length == 4) ? submissions.get(path[2]) : null;
+            }
+            if (submission == null || (path.length == 4 && !"events".equals(path[3]))) {
+                sendError(exchange, 404, exchange.getRequestURI().getPath());
+            }
+            else if (path.length == 4 && "GET".equals(method)) {
+                streamEvents(exchange, submission);
+            }
+            else if (path.length == 3 && "GET".equals(method)) {
+                send(exchange, 200, submission.toJson());
+            }
+            else if (path.length == 3 && "DELETE".equals(method)) {
+                submission.cancel();
+                send(exchange, 200, submission.toJson());
+            }
+            else {
+                sendError(exchange, 405, method);
+            }
+        }
+        catch (IOException e) {
+            // The client has gone away.
+            logger.finest(() -> formatMessage("AnalysisServerRequestError", e.getMessage()));
+        }
+        finally {
+            exchange.close();
+        }
+    }
+
+    private void handleCaches(HttpExchange exchange) throws IOException {
+        try {
+            if (!authorize(exchange)) {
+                return;
+            }
+            if ("DELETE".equals(exchange.getRequestMethod())) {
+                evictCaches();
+                send(exchange, 200, new JsonObject());
+            }
+            else {
+                sendError(exchange, 405, exchange.getRequestMethod());
+            }
+        }
+        finally {
+            exchange.close();
+        }
+    }
+
+    private void submit(HttpExchange exchange) throws IOException {
+        final String id = Integer.toString(nextId.incrementAndGet());
+        final Submission submission;
+        try (Reader r = new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8)) {
+            final JsonObject spec = JsonParser.parseReader(r).getAsJsonObject();
+            final AnalysisJob job = new AnalysisJob(Integer.parseInt(id), spec, baseDir, AnalysisJob.DEFAULT_MEMORY_FACTOR);
+            final File root = jobRoot;
+            if (root != null) {
+                job.checkWrittenDirectories(root);
+            }
+            submission = new Submission(id, job, job.createAnalyzer());
+        }
+        catch (IOException | RuntimeException e) {
+            sendError(exchange, 400, e.getMessage());
+            return;
+        }
+        synchronized (this) {
+            submissions.put(id, submission);
+        }
+        try {
+            workers.execute(submission);
+        }
+        catch (RejectedExecutionException e) {
+            synchronized (this) {
+                submissions.remove(id);
+            }
+            sendError(exchange, 503, formatMessage("AnalysisServerQueueFull"));
+            return;
+        }
+        logger.info(() -> formatMessage("AnalysisServerQueued", submission.job.getName(), id));
+        send(exchange, 202, submission.toJson());
+    }
+
+    private void streamEvents(HttpExchange exchange, Submission submission) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", EVENTS_CONTENT_TYPE);
+        exchange.sendResponseHeaders(200, 0);
+        final OutputStream os = exchange.getResponseBody();
+        int version = -1;
+        while (true) {
+            final boolean done = submission.isDone();
+            os.write((submission.toJson().toString() + "\n").getBytes(StandardCharsets.UTF_8));
+            os.flush();
+            if (done) {
+                break;
+            }
+            try {
+                version = submission.awaitChange(version, EVENT_HEARTBEAT_MILLIS);
+            }
+            catch (InterruptedException e) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Returns true if the request may be handled. Otherwise, sends an error response and returns false.
+     */
+    private boolean authorize(HttpExchange exchange) throws IOException {
+        final Headers headers = exchange.getRequestHeaders();
+        final String host = headers.getFirst("Host");
+        if (host == null || !isLocalHost(host)) {
+            sendError(exchange, 403, formatMessage("AnalysisServerHostRejected", host));
+            return false;
+        }
+        final String origin = headers.getFirst("Origin");
+        if (origin != null) {
+            sendError(exchange, 403, formatMessage("AnalysisServerOriginRejected", origin));
+            return false;
+        }
+        final String authorization = headers.getFirst("Authorization");
+        if (authorization == null || !MessageDigest.isEqual(("Bearer " + token).getBytes(StandardCharsets.UTF_8), 
+                authorization.getBytes(StandardCharsets.UTF_8))) {
+            exchange.getResponseHeaders().set("WWW-Authenticate", "Bearer");
+            sendError(exchange, 401, formatMessage("AnalysisServerUnauthorized"));
+            return false;
+        }
+        final String method = exchange.getRequestMethod();
+        if ("POST".equals(method) || "DELETE".equals(method)) {
+            final String contentType = headers.getFirst("Content-Type");
+            final String mediaType = (contentType != null) ? contentType.split(";", 2)[0].trim() : null;
+            if (!JSON_MEDIA_TYPE.equalsIgnoreCase(mediaType)) {
+                sendError(exchange, 415, formatMessage("AnalysisServerContentTypeRejected", contentType));
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean isLocalHost(String host) {
+        final String port = ":" + getPort();
+        for (String name : LOCAL_HOST_NAMES) {
+            if (host.equalsIgnoreCase(name + port)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String createToken() {
+        final byte[] bytes = new byte[TOKEN_LENGTH];
+        new SecureRandom().nextBytes(bytes);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+
+    /**
+     * Writes the access token to a new file which only the owner can read and write.
+     */
+    private void writeToken(File file) throws IOException {
+        final Path path = file.getAbsoluteFile().toPath();
+        final boolean posix = FileSystems.getDefault().supportedFileAttributeViews().contains("posix");
+        if (!Files.isDirectory(path.getParent())) {
+            if (posix) {
+                Files.createDirectories(path.getParent(), PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+            }
+            else {
+                Files.createDirectories(path.getParent());
+            }
+        }
+        // A new file is created so that its permissions are set before the token is written.
+        Files.deleteIfExists(path);
+        if (posix) {
+            Files.createFile(path, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        }
+        else {
+            // Other file systems (e.g. on Windows) only support owner and everyone permissions.
+            Files.createFile(path);
+            final File f = path.toFile();
+            f.setReadable(false, false);
+            f.setReadable(true, true);
+            f.setWritable(false, false);
+            f.setWritable(true, true);
+        }
+        Files.write(path, token.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void send(HttpExchange exchange, int code, JsonObject o) throws IOException {
+        final byte[] bytes = o.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", JSON_CONTENT_TYPE);
+        exchange.sendResponseHeaders(code, bytes.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(bytes);
+        }
+    }
+
+    private static void sendError(HttpExchange exchange, int code, String message) throws IOException {
+        final JsonObject o = new JsonObject();
+        o.addProperty("error", message);
+        send(exchange, code, o);
+    }
+
+    /**
+     * Called once an analysis is done. Forgets the oldest finished analyses and releases
+     * the shared state if the heap left in use by the last collection is too large.
+     */
+    private void finished() {
+        synchronized (this) {
+            int finished = (int) submissions.values().stream().filter(Submission::isDone).count();
+            final Iterator<Submission> i = submissions.values().iterator();
+            while (finished > MAX_FINISHED_ANALYSES && i.hasNext()) {
+                if (i.next().isDone()) {
+                    i.remove();
+                    --finished;
+                }
+            }
+        }
+        long used = 0;
+        long max = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            final MemoryUsage usage = pool.getType() == MemoryType.HEAP ? pool.getCollectionUsage() : null;
+            if (usage != null && usage.getMax() > 0) {
+                used += usage.getUsed();
+                max += usage.getMax();
+            }
+        }
+        if (max > 0 && used > max * evictionThreshold) {
+            evictCaches();
+        }
+    }
+
+    private final class Submission implements Runnable {
+
+        private final String id;
+        private final AnalysisJob job;
+        // Guarded by this. Released once the analysis is done, so that finished submissions 
+        // only keep the final progress and metrics instead of the whole analysis state.
+        private Analyzer analyzer;
+        private JsonObject progress;
+        private JsonObject metrics;
+        private Status status = Status.QUEUED;
+        private String message;
+        private long startTime;
+        private long endTime;
+        private int version;
+
+        Submission(String id, AnalysisJob job, Analyzer analyzer) {
+            this.id = id;
+            this.job = job;
+            this.analyzer = analyzer;
+            analyzer.setProgressListener(p -> changed());
+        }
+
+        @Override
+        public void run() {
+            final Analyzer analyzer = getAnalyzer();
+            if (analyzer == null) {
+                return;
+            }
+            try {
+                admission.admit(job);
+            }
+            catch (InterruptedException e) {
+                setStatus(Status.CANCELED, null);
+                release();
+                return;
+            }
+            try {
+                if (!setStatus(Status.RUNNING, null)) {
+                    return;
+                }
+                logger.info(() -> formatMessage("AnalysisServerStarting", job.getName(), id));
+                analyzer.run();
+                setStatus(Status.SUCCEEDED, null);
+                logger.info(() -> formatMessage("AnalysisServerCompleted", job.getName(), id));
+            }
+            catch (CancellationException e) {
+                setStatus(Status.CANCELED, null);
+            }
+            catch (Throwable t) {
+                // Failures, including running out of memory, are isolated to the analysis.
+                final String error = (t.getMessage() != null) ? t.getMessage() : t.toString();
+                logger.severe(() -> formatMessage("AnalysisServerFailed", job.getName(), id, error));
+                setStatus(Status.FAILED, error);
+            }
+            finally {
+                admission.release(job);
+                release();
+                finished();
+            }
+        }
+
+        void cancel() {
+            if (workers.remove(this)) {
+                setStatus(Status.CANCELED, null);
+                release();
+            }
+            final Analyzer analyzer = getAnalyzer();
+            if (analyzer != null) {
+                analyzer.cancel();
+            }
+        }
+
+        synchronized Analyzer getAnalyzer() {
+            return analyzer;
+        }
+
+        /**
+         * Keeps the final progress and metrics and drops the reference to the analyzer.
+         */
+        synchronized void release() {
+            if (analyzer != null) {
+                progress = analyzer.getProgress().toJson();
+                final AnalysisMetrics m = analyzer.getMetrics();
+                metrics = (m != null) ? m.toJson() : null;
+                analyzer = null;
+                changed();
+            }
+        }
+
+        /**
+         * Moves to the given status unless the analysis is already done, 
+         * e.g. if it was canceled while it was queued.
+         */
+        synchronized boolean setStatus(Status status, String message) {
+            if (isDone()) {
+                return false;
+            }
+            if (status == Status.RUNNING) {
+                startTime = System.currentTimeMillis();
+            }
+            else if (status != Status.QUEUED) {
+                endTime = System.currentTimeMillis();
+            }
+            this.status = status;
+            this.message = message;
+            changed();
+            return true;
+        }
+
+        synchronized boolean isDone() {
+            return status != Status.QUEUED && status != Status.RUNNING;
+        }
+
+        synchronized void changed() {
+            ++version;
+            notifyAll();
+        }
+
+        /**
+         * Waits until the status or progress changes from the given version, 
+         * or for the given time, and returns the current version.
+         */
+        synchronized int awaitChange(int version, long timeout) throws InterruptedException {
+            if (this.version == version && !isDone()) {
+                wait(timeout);
+            }
+            return this.version;
+        }
+
+        synchronized JsonObject toJson() {
+            final JsonObject o = new JsonObject();
+            o.addProperty("id", id);
+            o.addProperty("name", job.getName());
+            o.addProperty("status", status.name());
+            if (message != null) {
+                o.addProperty("message", message);
+            }
+            if (startTime != 0) {
+                o.addProperty("startTime", startTime);
+            }
+            if (endTime != 0) {
+                o.addProperty("endTime", endTime);
+            }
+            if (analyzer != null) {
+                o.add("progress", analyzer.getProgress().toJson());
+                final AnalysisMetrics m = analyzer.getMetrics();
+                if (m != null && isDone()) {
+                    o.add("metrics", m.toJson());
+                }
+            }
+            else {
+                o.add("progress", progress);
+                if (metrics != null) {
+                    o.add("metrics", metrics);
+                }
+            }
+            return o;
+        }
+    }
+
+    // [0] : port (default 9480)
+    // [1] : number of analyses run at the same time (default 1)
+    // [2] : maximum number of queued analyses (default 100)
+    // [3] : directory to which the analyses are restricted (default none)
+    public static void main(String[] args) {
+        try {
+            final int port = (args.length > 0) ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+            final int workers = (args.length > 1) ? Integer.parseInt(args[1]) : 1;
+            final int queued = (args.length > 2) ? Integer.parseInt(args[2]) : 100;
+            final AnalysisServer server = new AnalysisServer(port, workers, queued);
+            if (args.length > 3) {
+                server.setJobRoot(new File(args[3]));
+            }
+            Runtime.getRuntime().addShutdownHook(new Thread(server::stop));
+            server.start();
+        }
+        catch (IOException | NumberFormatException e) {
+            e.printStackTrace();
+        }
+    }
+}
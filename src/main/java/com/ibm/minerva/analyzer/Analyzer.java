@@ -30,9 +30,12 @@ import java.util.Locale;
 import java.util.Optional;
 import java.util.Set;
 import java.util.StringTokenizer;
+import java.util.concurrent.CancellationException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import com.ibm.wala.ipa.slicer.Slicer;
+
 public class Analyzer {
 
     private static final Logger logger = LoggingUtil.getLogger(Analyzer.class);
@@ -42,11 +45,32 @@ public class Analyzer {
     private final File outputDir;
     private final TableBuilderConfiguration config;
     private final ApplicationProcessor ap;
+    private final AnalysisProgress progress = new AnalysisProgress();
+    private AnalysisMetrics metrics;
 
     private Set<String> packages;
     private boolean isPackageIncludeList;
     private boolean useSystemOut;
     private CallGraphBuilderType callGraphBuilderType;
+    private CallGraphBuilder callGraphBuilder;
+    private File callGraphExclusionsFile;
+    private boolean derivePackageExclusions;
+    private boolean restrictJdkScope;
+    private boolean useLibrarySummaries;
+    private File librarySummaryCacheDir;
+    private MethodGraphTier methodGraphTier;
+    private Slicer.DataDependenceOptions dataDependenceOptions;
+    private Slicer.ControlDependenceOptions controlDependenceOptions;
+    private int methodGraphParallelism = 1;
+    private File cacheDir;
+    private long cacheMaxSize = AnalysisCache.DEFAULT_MAX_SIZE;
+    private File incrementalStateDir;
+    private File checkpointDir;
+    private boolean resumeFromCheckpoint;
+    private double spillThreshold;
+    private boolean concurrentWrites;
+    private boolean started;
+    private boolean scanned;
 
     public Analyzer(File archive, File outputDir) {
         this(archive, outputDir, TableBuilderConfiguration.ALL);
@@ -76,6 +100,7 @@ public class Analyzer {
         this.outputDir = outputDir;
         this.config = (config != null) ? config : TableBuilderConfiguration.NONE;
         this.ap = new TableBuilder(outputDir, config);
+        this.ap.setAnalysisProgress(progress);
         this.additionalLibraries = new ArrayList<File>();
         
         if (additionalLibs != null) {
@@ -108,10 +133,191 @@ public class Analyzer {
     
     public Analyzer setCallGraphBuilder(CallGraphBuilderType type) throws IOException {
         this.callGraphBuilderType = type;
-        ap.setCallGraphBuilder(type != null ? new CallGraphBuilder(type) : null);
+        this.callGraphBuilder = (type != null) ? new CallGraphBuilder(type) : null;
+        ap.setCallGraphBuilder(callGraphBuilder);
+        return this;
+    }
+
+    /**
+     * Replaces the default call graph exclusions with the regular expressions
+     * contained in the given file (one per line). They never exclude classes of
+     * the application. The file is read immediately, so that a missing file is 
+     * reported before the archives are scanned.
+     */
+    public Analyzer setCallGraphExclusions(File exclusionsFile) throws IOException {
+        if (exclusionsFile != null) {
+            CallGraphBuilder.readExclusions(exclusionsFile);
+        }
+        this.callGraphExclusionsFile = exclusionsFile;
+        return this;
+    }
+
+    /**
+     * If true, the packages in the package exclusion list are also excluded from
+     * the call graph analysis scope, including those found in extra libraries.
+     */
+    public Analyzer setDeriveCallGraphExclusions(boolean derivePackageExclusions) {
+        this.derivePackageExclusions = derivePackageExclusions;
+        return this;
+    }
+
+    /**
+     * If true, only the JDK classes referenced by the application (and their
+     * super types) are included in the call graph analysis scope.
+     */
+    public Analyzer setRestrictJdkScope(boolean restrictJdkScope) {
+        this.restrictJdkScope = restrictJdkScope;
+        return this;
+    }
+
+    /**
+     * If true, the additional libraries are replaced in the call graph analysis scope
+     * by summaries without method bodies. Summaries are cached in the given directory
+     * (or a default temporary directory if null) and reused by later runs.
+     */
+    public Analyzer setUseLibrarySummaries(boolean useLibrarySummaries, File cacheDir) {
+        this.useLibrarySummaries = useLibrarySummaries;
+        this.librarySummaryCacheDir = cacheDir;
+        return this;
+    }
+
+    /**
+     * Sets the information included in the method level call graph. The 
+     * {@link MethodGraphTier#CALL_GRAPH} tier skips building the SDG, which
+     * is the most expensive part of the call graph analysis.
+     */
+    public Analyzer setMethodGraphTier(MethodGraphTier methodGraphTier) {
+        this.methodGraphTier = methodGraphTier;
+        return this;
+    }
+
+    /**
+     * Sets the data and control dependence options used to build the SDG.
+     * Null values keep the defaults.
+     */
+    public Analyzer setDependenceOptions(Slicer.DataDependenceOptions dataDependenceOptions, 
+            Slicer.ControlDependenceOptions controlDependenceOptions) {
+        this.dataDependenceOptions = dataDependenceOptions;
+        this.controlDependenceOptions = controlDependenceOptions;
+        return this;
+    }
+
+    /**
+     * Sets the number of threads used to compute the edges of the method level 
+     * call graph. The output is the same for any number of threads.
+     */
+    public Analyzer setMethodGraphParallelism(int methodGraphParallelism) {
+        this.methodGraphParallelism = methodGraphParallelism;
+        return this;
+    }
+    
+    /**
+     * Sets a directory in which the results for each class and archive are cached
+     * between runs, keyed by their contents, so that a rerun only parses the classes
+     * which have changed. The least recently used results are evicted when the size 
+     * of the cache exceeds the given number of bytes (or a default if not positive).
+     * A null directory disables the cache.
+     */
+    public Analyzer setAnalysisCache(File cacheDir, long maxSize) {
+        this.cacheDir = cacheDir;
+        this.cacheMaxSize = (maxSize > 0) ? maxSize : AnalysisCache.DEFAULT_MAX_SIZE;
+        return this;
+    }
+    
+    /**
+     * Sets a directory in which the class hashes and the call graphs of each run are 
+     * kept, so that the next run only recomputes the edges of the classes affected by
+     * the classes which have changed in the meantime. The graphs are built in full if
+     * there is no previous run, if the call graph options or libraries have changed,
+     * if too many classes are affected or periodically to limit the drift of the 
+     * incremental updates, which are an approximation of a full build. A null 
+     * directory disables the incremental mode.
+     */
+    public Analyzer setIncrementalCallGraph(File stateDir) {
+        this.incrementalStateDir = stateDir;
+        return this;
+    }
+    
+    /**
+     * Sets a directory in which a checkpoint is written once the archives have been
+     * scanned. If the directory already holds a checkpoint of the same (unchanged) 
+     * archives, the analysis resumes from it instead of scanning them again, e.g. to
+     * retry the call graph phase with another algorithm or with more memory. A null
+     * directory disables checkpoints.
+     */
+    public Analyzer setCheckpoint(File checkpointDir) {
+        this.checkpointDir = checkpointDir;
         return this;
     }
+
+    /**
+     * Sets the fraction of the maximum heap size which, once exceeded by the heap usage
+     * left after a garbage collection, spills the symbol table built so far to a temporary
+     * file, so that large applications can be analyzed with a fixed heap size. It is 
+     * streamed back when the tables are written. Zero (the default) disables spilling.
+     */
+    public Analyzer setSpillThreshold(double spillThreshold) {
+        this.spillThreshold = spillThreshold;
+        return this;
+    }
+
+    /**
+     * If true, the tables are written on background threads while the call graph is
+     * built, and the class level call graph is written while the method level call 
+     * graph is built. The output is the same, but the tables are held in memory until
+     * they are written rather than released before the call graph is built.
+     */
+    public Analyzer setConcurrentWrites(boolean concurrentWrites) {
+        this.concurrentWrites = concurrentWrites;
+        return this;
+    }
+
+    /**
+     * Creates an analyzer which resumes from the checkpoint in the given directory. 
+     * The archives recorded in the checkpoint need not be available, and the copies
+     * of the additional libraries stored in it are used, so the checkpoint may be 
+     * written by a scan on one machine and resumed on another.
+     */
+    public static Analyzer resume(File checkpointDir, File outputDir) throws IOException {
+        return resume(checkpointDir, outputDir, TableBuilderConfiguration.ALL);
+    }
+
+    public static Analyzer resume(File checkpointDir, File outputDir, TableBuilderConfiguration config) throws IOException {
+        final AnalysisCheckpoint checkpoint = new AnalysisCheckpoint(checkpointDir);
+        final Analyzer analyzer = new Analyzer(checkpoint.getArchives(), outputDir, config, checkpoint.getLibraries());
+        analyzer.checkpointDir = checkpointDir;
+        analyzer.resumeFromCheckpoint = true;
+        return analyzer;
+    }
     
+    /**
+     * Returns the progress of the analysis. It may be read from any thread.
+     */
+    public AnalysisProgress getProgress() {
+        return progress;
+    }
+
+    /**
+     * Sets a listener which is notified when the analysis moves to a new phase
+     * and periodically while its progress counters are updated.
+     */
+    public Analyzer setProgressListener(AnalysisProgress.Listener listener) {
+        progress.setListener(listener);
+        return this;
+    }
+
+    /**
+     * Requests cancellation of a running analysis. It may be called from any thread.
+     * The analysis stops at the next point where it can safely do so and the running
+     * method ({@link #run()}, {@link #scan()} or {@link #buildCallGraph()}) throws a 
+     * {@link CancellationException} once it has deleted the temporary files of the 
+     * analysis. If it is called before the analysis starts, the analysis throws the 
+     * exception as soon as it is run.
+     */
+    public void cancel() {
+        progress.cancel();
+    }
+
     public void addExtraLibrary(File extraLib) {
     	if (extraLib != null) {
     		final String name = extraLib.getName().toLowerCase(Locale.ENGLISH);
@@ -144,7 +350,30 @@ public class Analyzer {
     }
 
     public void run() throws IOException {
+        scan();
+        buildCallGraph();
+    }
+
+    /**
+     * Runs the first phase of the analysis, which scans the archives (or restores them
+     * from the checkpoint) and writes the tables. The memory held for the tables is 
+     * released before it returns, so the call graph is built in a heap which no longer 
+     * holds them. It must be followed by {@link #buildCallGraph()}, which also removes
+     * the temporary files of the analysis. An analyzer runs once, so it may only be 
+     * called once (including through {@link #run()}), even if the analysis fails.
+     */
+    public void scan() throws IOException {
+        if (started) {
+            throw new IllegalStateException(formatMessage("AnalysisAlreadyRun"));
+        }
+        started = true;
+        metrics = new AnalysisMetrics();
+        scanned = false;
+        ap.setAnalysisMetrics(metrics);
+        ap.setSpillThreshold(spillThreshold);
+        ap.setConcurrentWrites(concurrentWrites);
         try {
+            progress.checkCanceled();
             logger.info(() -> formatMessage("StartingAnalyzer"));
             logger.config(() -> formatMessage("OutputDirectory", outputDir));
             if (packages != null) {
@@ -156,29 +385,133 @@ public class Analyzer {
             if (callGraphBuilderType != null) {
                 logger.config(() -> formatMessage("CallGraphAlgorithm",
                         callGraphBuilderType));
+                configureCallGraphBuilder();
             }
             // Skips archive processing if there are no consumers (e.g. if only
             // the "instrumenter-config.json" is being generated).
             if (config.generateSymRefTables() || callGraphBuilderType != null) {
-                final ArchiveProcessor archiveProcessor = new ArchiveProcessor(ap);
-                for (File archive : archives) {
-                    logger.info(() -> formatMessage("AnalyzingArchive", archive));
-                    archiveProcessor.processBinaryFile(archive);
+                progress.setPhase(AnalysisProgress.Phase.SCANNING);
+                final AnalysisCheckpoint checkpoint = (checkpointDir != null) ? new AnalysisCheckpoint(checkpointDir) : null;
+                if (checkpoint != null && (resumeFromCheckpoint || checkpoint.matches(archives))) {
+                    final AnalysisMetrics.Timer timer = metrics.startPhase(AnalysisMetrics.CHECKPOINT_RESTORE);
+                    metrics.set(AnalysisMetrics.CLASSES_RESTORED, checkpoint.replay(ap, progress));
+                    timer.close();
+                }
+                else {
+                    scanArchives(checkpoint);
                 }
                 
                 // Add extra libraries, if is there any
                 if (additionalLibraries != null && additionalLibraries.size() > 0) {
-                	archiveProcessor.processExtraLibs(additionalLibraries.toArray(new File[additionalLibraries.size()]));
+                	ap.processExtraLibs(additionalLibraries.toArray(new File[additionalLibraries.size()]));
                 }
             }
-            ap.write();
+            ap.writeTables();
+            scanned = true;
+        }
+        catch (CancellationException e) {
+            logger.warning(() -> formatMessage("AnalysisCanceled"));
+            throw e;
+        }
+        finally {
+            if (!scanned) {
+                // Delete any temporary files created during the process.
+                ap.clean();
+            }
+        }
+    }
+
+    /**
+     * Runs the second phase of the analysis after {@link #scan()}, which builds and
+     * writes the call graph (if one was requested) and the metrics of the analysis.
+     */
+    public void buildCallGraph() throws IOException {
+        if (!scanned) {
+            throw new IllegalStateException(formatMessage("AnalysisNotScanned"));
+        }
+        scanned = false;
+        try {
+            ap.writeCallGraph();
+            progress.setPhase(AnalysisProgress.Phase.DONE);
+            logger.info(() -> progress.toString());
+            writeMetrics();
+        }
+        catch (CancellationException e) {
+            logger.warning(() -> formatMessage("AnalysisCanceled"));
+            throw e;
         }
         finally {
-            // Schedule any temporary files created during the process for deletion.
+            // Delete any temporary files created during the process.
             ap.clean();
         }
     }
 
+    private void scanArchives(AnalysisCheckpoint checkpoint) throws IOException {
+        final AnalysisCache cache = (cacheDir != null) ? new AnalysisCache(cacheDir, cacheMaxSize) : null;
+        ap.setAnalysisCache(cache);
+        final boolean writeCheckpoint = checkpoint != null && checkpoint.begin();
+        if (writeCheckpoint) {
+            ap.setAnalysisCheckpoint(checkpoint);
+        }
+        final ArchiveProcessor archiveProcessor = new ArchiveProcessor(ap, progress, metrics, cache);
+        final AnalysisMetrics.Timer timer = metrics.startPhase(AnalysisMetrics.ARCHIVE_SCAN);
+        boolean scanned = false;
+        try {
+            for (File archive : archives) {
+                logger.info(() -> formatMessage("AnalyzingArchive", archive));
+                archiveProcessor.processBinaryFile(archive);
+            }
+            scanned = true;
+        }
+        finally {
+            timer.close();
+            if (writeCheckpoint) {
+                ap.setAnalysisCheckpoint(null);
+                if (scanned) {
+                    checkpoint.complete(archives, additionalLibraries);
+                }
+                else {
+                    checkpoint.abort();
+                }
+            }
+        }
+        if (cache != null) {
+            cache.evict();
+            cache.logStatistics();
+        }
+    }
+
+    /**
+     * Returns the metrics of the last run of the analysis, or null if it has not been run.
+     */
+    public AnalysisMetrics getMetrics() {
+        return metrics;
+    }
+
+    private void writeMetrics() {
+        try {
+            metrics.write(outputDir);
+        }
+        catch (IOException e) {
+            logger.warning(() -> formatMessage("MetricsWriteError", e.getMessage()));
+        }
+    }
+
+    private void configureCallGraphBuilder() throws IOException {
+        callGraphBuilder.setExclusionsFile(callGraphExclusionsFile);
+        callGraphBuilder.setPackageExclusions(derivePackageExclusions 
+                && packages != null && !isPackageIncludeList ? packages : null);
+        callGraphBuilder.setRestrictJdkScope(restrictJdkScope);
+        callGraphBuilder.setUseLibrarySummaries(useLibrarySummaries, librarySummaryCacheDir);
+        callGraphBuilder.setMethodGraphTier(methodGraphTier);
+        callGraphBuilder.setDependenceOptions(dataDependenceOptions, controlDependenceOptions);
+        callGraphBuilder.setMethodGraphParallelism(methodGraphParallelism);
+        callGraphBuilder.setConcurrentWrites(concurrentWrites);
+        callGraphBuilder.setIncrementalStateDir(incrementalStateDir);
+        callGraphBuilder.setAnalysisProgress(progress);
+        callGraphBuilder.setAnalysisMetrics(metrics);
+    }
+
     public static void setLoggingLevel(Level level) {
         LoggingUtil.setLoggingLevel(level);
     }
@@ -25,12 +25,21 @@ import java.util.Set;
 public interface ApplicationProcessor {
 
     public void process(ClassProcessor cp, byte[] bytes);
+    public boolean processCached(ClassSummary summary, byte[] bytes);
     public void processExtraLibs(File[] extraLibs);
     public void setCallGraphBuilder(CallGraphBuilder cgb);
     public void setPackageRestrictions(Set<String> packages, boolean isPackageIncludeList);
     public void setAllowAnyLegalClasses(boolean allowAnyLegalClasses);
     public void setAgentOutputStream(boolean useSystemOut);
+    public void setAnalysisProgress(AnalysisProgress progress);
+    public void setAnalysisMetrics(AnalysisMetrics metrics);
+    public void setAnalysisCache(AnalysisCache cache);
+    public void setAnalysisCheckpoint(AnalysisCheckpoint checkpoint);
+    public void setSpillThreshold(double threshold);
+    public void setConcurrentWrites(boolean concurrentWrites);
     public void write() throws IOException;
+    public void writeTables() throws IOException;
+    public void writeCallGraph() throws IOException;
     public void clean();
 
 }
@@ -26,8 +26,13 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
 import java.util.Enumeration;
+import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.CancellationException;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 import java.util.jar.JarInputStream;
@@ -35,6 +40,9 @@ import java.util.logging.Logger;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
+import com.ibm.minerva.analyzer.jfr.AnalyzerEvents;
+import com.ibm.minerva.analyzer.jfr.EventScope;
+
 import javassist.ClassPool;
 import javassist.CtClass;
 import javassist.runtime.Desc;
@@ -46,15 +54,62 @@ public final class ArchiveProcessor {
     private static final Logger logger = LoggingUtil.getLogger(ArchiveProcessor.class);
 
     private final ApplicationProcessor ap;
+    private final AnalysisProgress progress;
+    private final AnalysisMetrics metrics;
+    private final AnalysisCache cache;
+    // The hashes of the classes found in each archive being scanned, innermost last.
+    private final Deque<List<String>> archiveRecords = new ArrayDeque<>();
+    // The range of the entries of the archive being processed which are processed.
+    private int fromEntry = 0;
+    private int toEntry = Integer.MAX_VALUE;
+
+    @FunctionalInterface
+    private interface ArchiveScan {
+        public void scan() throws IOException;
+    }
 
     public ArchiveProcessor(ApplicationProcessor ap) {
+        this(ap, new AnalysisProgress(), new AnalysisMetrics());
+    }
+    
+    public ArchiveProcessor(ApplicationProcessor ap, AnalysisProgress progress, AnalysisMetrics metrics) {
+        this(ap, progress, metrics, null);
+    }
+
+    /**
+     * Creates an archive processor which reuses the classes and archives found in the 
+     * given cache (if not null) instead of parsing and reading them again.
+     */
+    public ArchiveProcessor(ApplicationProcessor ap, AnalysisProgress progress, AnalysisMetrics metrics, AnalysisCache cache) {
         this.ap = ap;
+        this.progress = progress;
+        this.metrics = metrics;
+        this.cache = cache;
     }
     
     public void processExtraLibs(File[] extraLibs) {
     	ap.processExtraLibs(extraLibs);
     }
 
+    /**
+     * Processes the entries of a JAR (or WAR, EAR, etc.) or ZIP archive whose index, in the
+     * order in which they are stored in the archive, is at least fromEntry and less than 
+     * toEntry. The entries of nested archives are all processed. Other files are processed
+     * in full. Processing consecutive ranges of the entries of an archive processes the
+     * same classes in the same order as processing the whole archive.
+     */
+    public void processBinaryFile(File thisBinaryFile, int fromEntry, int toEntry) throws IOException {
+        this.fromEntry = fromEntry;
+        this.toEntry = toEntry;
+        try {
+            processBinaryFile(thisBinaryFile);
+        }
+        finally {
+            this.fromEntry = 0;
+            this.toEntry = Integer.MAX_VALUE;
+        }
+    }
+
     public void processBinaryFile(File thisBinaryFile) throws IOException {
         if (!thisBinaryFile.exists()) {
             // Warning message for non-existent file.
@@ -66,6 +121,7 @@ public final class ArchiveProcessor {
             logger.warning(() -> formatMessage("ArchiveEmpty", thisBinaryFile));
             return;
         }
+        progress.checkCanceled();
         final String name = thisBinaryFile.getName().toLowerCase(Locale.ENGLISH);
         final BinaryType bt = BinaryType.getBinaryType(name);
         switch (bt) {
@@ -75,7 +131,16 @@ public final class ArchiveProcessor {
         case RAR:
         case EBA:
         case CBA:
-            processJarFile(thisBinaryFile, bt);
+            // Only whole archives are cached.
+            if (cache != null && fromEntry == 0 && toEntry == Integer.MAX_VALUE) {
+                final String hash = cache.hash(thisBinaryFile);
+                if (!processCachedArchive(hash)) {
+                    recordArchive(hash, () -> processJarFile(thisBinaryFile, bt));
+                }
+            }
+            else {
+                processJarFile(thisBinaryFile, bt);
+            }
             break;
         case ZIP:
             processZipFile(thisBinaryFile);
@@ -86,6 +151,7 @@ public final class ArchiveProcessor {
         case UNKNOWN:
             break;
         }
+        progress.archiveScanned();
     }
 
     private void processJarFile(File thisBinaryFile, BinaryType jarType) throws IOException {
@@ -94,11 +160,18 @@ public final class ArchiveProcessor {
         final JarFile fileToProcess = new JarFile(thisBinaryFile.getAbsoluteFile(), false);
         try {
             final Enumeration<JarEntry> entries = fileToProcess.entries();
-            while (entries.hasMoreElements()) {
+            int index = 0;
+            while (entries.hasMoreElements() && index < toEntry) {
                 final JarEntry entry = entries.nextElement();
-                processJarEntry(fileToProcess, entry, jarType);
+                if (index++ >= fromEntry) {
+                    entryScanned();
+                    processJarEntry(fileToProcess, entry, jarType);
+                }
             }
         }
+        catch (CancellationException e) {
+            throw e;
+        }
         catch (Exception e) {
             logger.severe(() -> formatMessage("ArchiveReadError", jarType.getExtension(), e.getMessage()));
         } 
@@ -122,24 +195,27 @@ public final class ArchiveProcessor {
                 if (bt.isJarEntryType()) {
                     if (!isEmpty(entry)) {
                         logger.finest(() -> formatMessage("ArchiveReadFile", entryName));
-                        is = fileToProcess.getInputStream(entry);
-                        switch (bt) {
-                        case CLASS:
-                            processClassFile(is);
-                            break;
-                        case WAR:
-                            processWarFile(is);
-                            break;
-                        case JAR:
-                            processJarFile(is);
-                            break;
-                        case CBA:
-                            processCbaFile(is);
-                            break;
-                        case RAR:
-                            processRarFile(is);
-                            break;
-                        default:
+                        try (EventScope event = AnalyzerEvents.archiveEntryRead(fileToProcess.getName(), entryName)
+                                .setBytes(entry.getSize())) {
+                            is = fileToProcess.getInputStream(entry);
+                            switch (bt) {
+                            case CLASS:
+                                processClassFile(is);
+                                break;
+                            case WAR:
+                                processWarFile(is);
+                                break;
+                            case JAR:
+                                processJarFile(is);
+                                break;
+                            case CBA:
+                                processCbaFile(is);
+                                break;
+                            case RAR:
+                                processRarFile(is);
+                                break;
+                            default:
+                            }
                         }
                     }
                 }
@@ -151,6 +227,20 @@ public final class ArchiveProcessor {
     }
 
     private void processJarFile(InputStream is) throws IOException {
+        if (cache != null) {
+            // Nested JARs are cached as a whole, keyed by their contents.
+            final byte[] bytes = readFully(is);
+            final String hash = cache.hash(bytes);
+            if (!processCachedArchive(hash)) {
+                recordArchive(hash, () -> scanJarFile(new ByteArrayInputStream(bytes)));
+            }
+        }
+        else {
+            scanJarFile(is);
+        }
+    }
+
+    private void scanJarFile(InputStream is) throws IOException {
         InputStream jeis = null;
         try {
             // Need to use the JarInputStream constructor that takes a boolean to turn off signature verification. Otherwise, jar files that contain invalid
@@ -158,6 +248,7 @@ public final class ArchiveProcessor {
             final JarInputStream jis = new JarInputStream(is, false);
             JarEntry je = null;
             while ((je = jis.getNextJarEntry()) != null) {
+                entryScanned();
                 final String entryName = je.getName();
                 final String lowerEntryName = entryName.toLowerCase(Locale.ENGLISH);
                 if (!je.isDirectory()) {
@@ -203,11 +294,18 @@ public final class ArchiveProcessor {
         final ZipFile fileToProcess = new ZipFile(thisBinaryFile.getAbsoluteFile());
         try {
             final Enumeration<? extends ZipEntry> entries = fileToProcess.entries();
-            while (entries.hasMoreElements()) {
+            int index = 0;
+            while (entries.hasMoreElements() && index < toEntry) {
                 final ZipEntry entry = entries.nextElement();
-                processZipEntry(fileToProcess, entry);
+                if (index++ >= fromEntry) {
+                    entryScanned();
+                    processZipEntry(fileToProcess, entry);
+                }
             }
         }
+        catch (CancellationException e) {
+            throw e;
+        }
         catch (Exception e) {
             logger.severe(() -> formatMessage("ArchiveReadError", BinaryType.ZIP.getExtension(), e.getMessage()));
         } 
@@ -231,27 +329,30 @@ public final class ArchiveProcessor {
                 if (bt.isZipEntryType()) {
                     if (!isEmpty(entry)) {
                         logger.finest(() -> formatMessage("ArchiveReadFile", entryName));
-                        is = fileToProcess.getInputStream(entry);
-                        switch (bt) {
-                        case CLASS:
-                            processClassFile(is);
-                            break;
-                        case WAR:
-                            processWarFile(is);
-                            break;
-                        case JAR:
-                            processJarFile(is);
-                            break;
-                        case EAR:
-                            processEarFile(is);
-                            break;
-                        case EBA:
-                            processEbaFile(is);
-                            break;
-                        case RAR:
-                            processRarFile(is);
-                            break;
-                        default:
+                        try (EventScope event = AnalyzerEvents.archiveEntryRead(fileToProcess.getName(), entryName)
+                                .setBytes(entry.getSize())) {
+                            is = fileToProcess.getInputStream(entry);
+                            switch (bt) {
+                            case CLASS:
+                                processClassFile(is);
+                                break;
+                            case WAR:
+                                processWarFile(is);
+                                break;
+                            case JAR:
+                                processJarFile(is);
+                                break;
+                            case EAR:
+                                processEarFile(is);
+                                break;
+                            case EBA:
+                                processEbaFile(is);
+                                break;
+                            case RAR:
+                                processRarFile(is);
+                                break;
+                            default:
+                            }
                         }
                     }
                 }
@@ -270,6 +371,7 @@ public final class ArchiveProcessor {
             final JarInputStream jis = new JarInputStream(is, false);
             JarEntry je = null;
             while ((je = jis.getNextJarEntry()) != null) {
+                entryScanned();
                 final String entryName = je.getName();
                 final String lowerEntryName = entryName.toLowerCase(Locale.ENGLISH);
                 if (!je.isDirectory()) {
@@ -319,6 +421,7 @@ public final class ArchiveProcessor {
             final JarInputStream jis = new JarInputStream(is, false);
             JarEntry je = null;
             while ((je = jis.getNextJarEntry()) != null) {
+                entryScanned();
                 final String entryName = je.getName();
                 final String lowerEntryName = entryName.toLowerCase(Locale.ENGLISH);
                 if (!je.isDirectory()) {
@@ -371,6 +474,7 @@ public final class ArchiveProcessor {
             final JarInputStream jis = new JarInputStream(is, false);
             JarEntry je = null;
             while ((je = jis.getNextJarEntry()) != null) {
+                entryScanned();
                 final String entryName = je.getName();
                 final String lowerEntryName = entryName.toLowerCase(Locale.ENGLISH);
                 if (!je.isDirectory()) {
@@ -417,6 +521,7 @@ public final class ArchiveProcessor {
             final JarInputStream jis = new JarInputStream(is, false);
             JarEntry je = null;
             while ((je = jis.getNextJarEntry()) != null) {
+                entryScanned();
                 final String entryName = je.getName();
                 final String lowerEntryName = entryName.toLowerCase(Locale.ENGLISH);
                 if (!je.isDirectory()) {
@@ -469,6 +574,7 @@ public final class ArchiveProcessor {
             final JarInputStream jis = new JarInputStream(is, false);
             JarEntry je = null;
             while ((je = jis.getNextJarEntry()) != null) {
+                entryScanned();
                 final String entryName = je.getName();
                 final String lowerEntryName = entryName.toLowerCase(Locale.ENGLISH);
                 if (!je.isDirectory()) {
@@ -532,10 +638,92 @@ public final class ArchiveProcessor {
     }
 
     private void processClassFile(InputStream fileToProcessStream) throws IOException {
-        final byte[] bytes = toByteArray(fileToProcessStream);
-        final CtClass ctClass = toCtClass(bytes);
+        final byte[] bytes;
+        final CtClass ctClass;
+        try (EventScope event = AnalyzerEvents.classParse()) {
+            bytes = toByteArray(fileToProcessStream);
+            if (processCachedClass(bytes)) {
+                return;
+            }
+            ctClass = toCtClass(bytes);
+            event.setName(ctClass.getName()).setBytes(bytes.length);
+        }
+        metrics.increment(AnalysisMetrics.CLASSES_PARSED);
         final ClassProcessor cp = new ClassProcessor(ctClass);
         ap.process(cp, bytes);
+        recordClass(bytes);
+        progress.classScanned();
+    }
+
+    private boolean processCachedClass(byte[] bytes) {
+        if (cache != null && bytes != null) {
+            final ClassSummary summary = cache.getClass(cache.hash(bytes));
+            if (summary != null && ap.processCached(summary, bytes)) {
+                metrics.increment(AnalysisMetrics.CLASSES_CACHED);
+                recordClass(bytes);
+                progress.classScanned();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean processCachedArchive(String hash) {
+        final List<String> classHashes = cache.getArchive(hash);
+        if (classHashes != null) {
+            final List<ClassSummary> summaries = cache.getClasses(classHashes);
+            // The class files are not available here. The application processor either 
+            // needs them for every class (and declines the first one) or for none.
+            if (summaries != null && (summaries.isEmpty() || ap.processCached(summaries.get(0), null))) {
+                progress.classScanned();
+                for (int i = 1; i < summaries.size(); ++i) {
+                    progress.checkCanceled();
+                    ap.processCached(summaries.get(i), null);
+                    progress.classScanned();
+                }
+                metrics.add(AnalysisMetrics.CLASSES_CACHED, summaries.size());
+                recordClasses(classHashes);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void recordArchive(String hash, ArchiveScan scan) throws IOException {
+        final List<String> classHashes = new ArrayList<>();
+        archiveRecords.push(classHashes);
+        boolean scanned = false;
+        try {
+            scan.scan();
+            scanned = true;
+        }
+        finally {
+            archiveRecords.pop();
+        }
+        if (scanned) {
+            cache.putArchive(hash, classHashes);
+            recordClasses(classHashes);
+        }
+    }
+
+    private void recordClass(byte[] bytes) {
+        final List<String> classHashes = archiveRecords.peek();
+        if (classHashes != null) {
+            classHashes.add(cache.hash(bytes));
+        }
+    }
+
+    private void recordClasses(List<String> hashes) {
+        // The classes of a nested archive are also part of the enclosing archive.
+        final List<String> classHashes = archiveRecords.peek();
+        if (classHashes != null) {
+            classHashes.addAll(hashes);
+        }
+    }
+
+    private void entryScanned() {
+        progress.checkCanceled();
+        progress.entryScanned();
     }
 
     private boolean isEmpty(ZipEntry entry) {
@@ -554,6 +742,16 @@ public final class ArchiveProcessor {
         return null;
     }
 
+    private byte[] readFully(InputStream is) throws IOException {
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[8192];
+        int len;
+        while ((len = is.read(buffer)) != -1) {
+            baos.write(buffer, 0, len);
+        }
+        return baos.toByteArray();
+    }
+
     private CtClass toCtClass(byte[] bytes) throws IOException {
         Desc.useContextClassLoader = true;
         final ClassPool classPool = new ScopedClassPoolFactoryImpl().create(Analyzer.class.getClassLoader(),
@@ -573,6 +771,7 @@ public final class ArchiveProcessor {
                 baos.write(nextByte);
             }
             contents = baos.toByteArray();
+            metrics.add(AnalysisMetrics.BYTES_INFLATED, contents.length);
             if (contents.length != 0) {
                 return contents;
             }
@@ -0,0 +1,274 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+
+package com.ibm.minerva.analyzer;
+
+import static com.ibm.minerva.analyzer.MessageFormatter.formatMessage;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+/**
+ * Runs the analyses listed in a manifest in one JVM, so that JVM startup, JIT warmup
+ * and the loading of the standard libraries are paid once for the whole batch rather
+ * than once per application. A failed analysis is logged and recorded in the summary
+ * without stopping the others. Several analyses may run at the same time. An analysis
+ * is only started while the memory estimated for the running analyses fits in the 
+ * memory limit of the batch, and never while another analysis uses the same cache.
+ * <p>
+ * The manifest is a JSON file such as:
+ * <pre>
+ * {
+ *   "concurrency": 2,
+ *   "memoryLimit": 6144,
+ *   "summary": "batch-summary.json",
+ *   "defaults": { "callGraphBuilder": "RTA", "restrictJdkScope": true, "cache": "cache" },
+ *   "jobs": [
+ *     { "name": "daytrader", "archives": [ "daytrader.ear" ], "output": "out/daytrader", 
+ *       "libraries": [ "lib" ], "packages": [ "javax", "org.apache" ] },
+ *     { "archives": [ "petstore.war" ], "output": "out/petstore", "callGraphBuilder": false }
+ *   ]
+ * }
+ * </pre>
+ * The job properties are "name", "archives", "output", "libraries", "packages" and
+ * "packageIncludeList" (see {@link Analyzer#setPackageRestrictions(Set, boolean)}),
+ * "callGraphBuilder" (true, false or the name of a {@link CallGraphBuilderType}), 
+ * "callGraphExclusions", "deriveCallGraphExclusions", "restrictJdkScope", 
+ * "methodGraphTier", "spillThreshold", "concurrentWrites", "cache", 
+ * "incrementalCallGraph", "checkpoint" and "memory", the estimated memory of the
+ * analysis in megabytes, which otherwise is the size of its archives multiplied by
+ * the "memoryFactor" of the batch. Properties which are not set by a job are taken
+ * from the "defaults". Relative paths are resolved against the directory of the 
+ * manifest. The memory limit (in megabytes) defaults to three quarters of the 
+ * maximum heap size.
+ */
+public final class BatchAnalyzer {
+
+    private static final Logger logger = LoggingUtil.getLogger(BatchAnalyzer.class);
+
+    private final List<AnalysisJob> jobs = new ArrayList<>();
+    private final int concurrency;
+    private final long memoryLimit;
+    private final File summaryFile;
+    private final JobAdmission admission;
+
+    public BatchAnalyzer(File manifest) throws IOException {
+        final JsonObject o;
+        try (Reader r = new InputStreamReader(new FileInputStream(manifest), StandardCharsets.UTF_8)) {
+            o = JsonParser.parseReader(r).getAsJsonObject();
+        }
+        catch (RuntimeException e) {
+            throw new IOException(formatMessage("BatchManifestError", manifest, e.getMessage()), e);
+        }
+        final File baseDir = manifest.getAbsoluteFile().getParentFile();
+        this.concurrency = Math.max(1, getInt(o, "concurrency", 1));
+        this.memoryLimit = getLong(o, "memoryLimit", JobAdmission.getDefaultMemoryLimit());
+        this.admission = new JobAdmission(memoryLimit);
+        this.summaryFile = o.has("summary") ? AnalysisJob.resolve(baseDir, o.get("summary").getAsString()) : null;
+        final long memoryFactor = getLong(o, "memoryFactor", AnalysisJob.DEFAULT_MEMORY_FACTOR);
+        final JsonObject defaults = o.has("defaults") ? o.getAsJsonObject("defaults") : new JsonObject();
+        final JsonArray array = o.has("jobs") ? o.getAsJsonArray("jobs") : new JsonArray();
+        for (JsonElement e : array) {
+            final JsonObject job = new JsonObject();
+            defaults.entrySet().forEach(x -> job.add(x.getKey(), x.getValue()));
+            e.getAsJsonObject().entrySet().forEach(x -> job.add(x.getKey(), x.getValue()));
+            jobs.add(new AnalysisJob(jobs.size() + 1, job, baseDir, memoryFactor));
+        }
+    }
+
+    /**
+     * Runs the jobs of the manifest and returns their results, in the order of the
+     * manifest. The summary of the results is written to the summary file, if set.
+     */
+    public List<JobResult> run() throws IOException {
+        logger.info(() -> formatMessage("BatchStarting", jobs.size(), concurrency, memoryLimit));
+        final long start = System.nanoTime();
+        final List<JobResult> results = new ArrayList<>();
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.min(concurrency, Math.max(1, jobs.size())));
+        try {
+            final List<Future<JobResult>> futures = new ArrayList<>();
+            jobs.forEach(job -> futures.add(executor.submit(() -> runJob(job))));
+            for (Future<JobResult> f : futures) {
+                try {
+                    results.add(f.get());
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new CancellationException();
+                }
+                catch (ExecutionException e) {
+                    // Not expected, since runJob catches everything.
+                    throw new IOException(e.getCause());
+                }
+            }
+        }
+        finally {
+            executor.shutdownNow();
+        }
+        final long succeeded = results.stream().filter(r -> r.isSucceeded()).count();
+        final long time = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        logger.info(() -> formatMessage("BatchCompleted", succeeded, results.size(), time));
+        if (summaryFile != null) {
+            writeSummary(results, time);
+        }
+        return results;
+    }
+
+    private JobResult runJob(AnalysisJob job) {
+        try {
+            admission.admit(job);
+        }
+        catch (InterruptedException e) {
+            return new JobResult(job.getName(), false, 0, formatMessage("AnalysisCanceled"));
+        }
+        final long start = System.nanoTime();
+        try {
+            logger.info(() -> formatMessage("BatchJobStarting", job.getName(), job.getIndex(), jobs.size(), job.getMemory()));
+            job.createAnalyzer().run();
+            final long time = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            logger.info(() -> formatMessage("BatchJobCompleted", job.getName(), time));
+            return new JobResult(job.getName(), true, time, null);
+        }
+        catch (Throwable t) {
+            // Failures, including running out of memory, are isolated to the job.
+            final long time = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            final String message = (t.getMessage() != null) ? t.getMessage() : t.toString();
+            logger.severe(() -> formatMessage("BatchJobFailed", job.getName(), time, message));
+            return new JobResult(job.getName(), false, time, message);
+        }
+        finally {
+            admission.release(job);
+        }
+    }
+
+    private void writeSummary(List<JobResult> results, long time) {
+        final JsonArray array = new JsonArray();
+        results.forEach(r -> {
+            final JsonObject o = new JsonObject();
+            o.addProperty("name", r.getName());
+            o.addProperty("succeeded", r.isSucceeded());
+            o.addProperty("timeMs", r.getTime());
+            if (r.getMessage() != null) {
+                o.addProperty("message", r.getMessage());
+            }
+            array.add(o);
+        });
+        final JsonObject o = new JsonObject();
+        o.addProperty("timeMs", time);
+        o.add("jobs", array);
+        final File parent = summaryFile.getAbsoluteFile().getParentFile();
+        try {
+            if (!parent.isDirectory() && !parent.mkdirs()) {
+                throw new IOException(parent.getAbsolutePath());
+            }
+            try (Writer w = new OutputStreamWriter(new FileOutputStream(summaryFile), StandardCharsets.UTF_8)) {
+                new GsonBuilder().setPrettyPrinting().create().toJson(o, w);
+            }
+        }
+        catch (IOException e) {
+            logger.warning(() -> formatMessage("BatchSummaryWriteError", summaryFile, e.getMessage()));
+        }
+    }
+
+    private static int getInt(JsonObject o, String name, int defaultValue) {
+        return o.has(name) ? o.get(name).getAsInt() : defaultValue;
+    }
+
+    private static long getLong(JsonObject o, String name, long defaultValue) {
+        return o.has(name) ? o.get(name).getAsLong() : defaultValue;
+    }
+
+    /**
+     * The result of a job of the batch.
+     */
+    public static final class JobResult {
+
+        private final String name;
+        private final boolean succeeded;
+        private final long time;
+        private final String message;
+
+        JobResult(String name, boolean succeeded, long time, String message) {
+            this.name = name;
+            this.succeeded = succeeded;
+            this.time = time;
+            this.message = message;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public boolean isSucceeded() {
+            return succeeded;
+        }
+
+        /**
+         * Returns the time taken by the job in milliseconds.
+         */
+        public long getTime() {
+            return time;
+        }
+
+        /**
+         * Returns the message of the error which failed the job, or null if it succeeded.
+         */
+        public String getMessage() {
+            return message;
+        }
+    }
+
+    // [0] : manifest file
+    public static void main(String[] args) {
+        if (args.length > 0) {
+            try {
+                final List<JobResult> results = new BatchAnalyzer(new File(args[0])).run();
+                if (results.stream().anyMatch(r -> !r.isSucceeded())) {
+                    System.exit(1);
+                }
+            }
+            catch (IOException e) {
+                e.printStackTrace();
+                System.exit(1);
+            }
+        }
+    }
+}
@@ -20,34 +20,40 @@ package com.ibm.minerva.analyzer;
 
 import static com.ibm.minerva.analyzer.MessageFormatter.formatMessage;
 
+import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.Serializable;
-import java.lang.reflect.Constructor;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
-import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
-import java.util.jar.JarFile;
+import java.util.concurrent.CancellationException;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 import java.util.logging.Logger;
+import java.util.regex.Pattern;
 
-import org.jgrapht.Graph;
-import org.jgrapht.graph.DefaultDirectedGraph;
-import org.jgrapht.nio.Attribute;
-import org.jgrapht.nio.DefaultAttribute;
-import org.jgrapht.nio.json.JSONExporter;
-
-import com.google.gson.JsonObject;
+import com.ibm.minerva.analyzer.jfr.AnalyzerEvents;
+import com.ibm.minerva.analyzer.jfr.EventScope;
 import com.ibm.minerva.dgi.utils.SDGGraph2JSON;
+import com.ibm.minerva.dgi.utils.graph.LongIntHashMap;
+import com.ibm.minerva.dgi.utils.graph.MethodNodeRegistry;
+import com.ibm.minerva.dgi.utils.graph.StreamingGraphWriter;
 import com.ibm.wala.cast.ir.ssa.AstIRFactory;
 import com.ibm.wala.cast.java.ipa.callgraph.JavaSourceAnalysisScope;
 import com.ibm.wala.cast.java.translator.jdt.ecj.ECJClassLoaderFactory;
@@ -57,7 +63,6 @@ import com.ibm.wala.classLoader.IMethod;
 import com.ibm.wala.classLoader.Module;
 import com.ibm.wala.classLoader.ModuleEntry;
 import com.ibm.wala.classLoader.PhantomClass;
-import com.ibm.wala.core.util.strings.Atom;
 import com.ibm.wala.ipa.callgraph.AnalysisCacheImpl;
 import com.ibm.wala.ipa.callgraph.AnalysisOptions;
 import com.ibm.wala.ipa.callgraph.AnalysisOptions.ReflectionOptions;
@@ -67,20 +72,25 @@ import com.ibm.wala.ipa.callgraph.Entrypoint;
 import com.ibm.wala.ipa.callgraph.IAnalysisCacheView;
 import com.ibm.wala.ipa.callgraph.impl.DefaultEntrypoint;
 import com.ibm.wala.ipa.callgraph.propagation.InstanceKey;
-import com.ibm.wala.ipa.cfg.InterproceduralCFG;
+import com.ibm.wala.ipa.callgraph.propagation.PointerAnalysis;
+import com.ibm.wala.ipa.cha.ClassHierarchyException;
 import com.ibm.wala.ipa.cha.ClassHierarchyFactory;
 import com.ibm.wala.ipa.cha.IClassHierarchy;
 import com.ibm.wala.ipa.modref.ModRef;
 import com.ibm.wala.ipa.slicer.SDG;
 import com.ibm.wala.ipa.slicer.Slicer;
-import com.ibm.wala.properties.WalaProperties;
 import com.ibm.wala.ssa.SymbolTable;
 import com.ibm.wala.types.ClassLoaderReference;
+import com.ibm.wala.util.CancelException;
+import com.ibm.wala.util.config.FileOfClasses;
+import com.ibm.wala.util.config.SetOfClasses;
 
 public final class CallGraphBuilder {
     
     private static final Logger logger = LoggingUtil.getLogger(CallGraphBuilder.class);
     
+    private static final String DEFAULT_EXCLUSIONS_RESOURCE = "exclusions.txt";
+    
     private final CallGraphBuilderType type;
     private final AnalysisScope scope;
     private final Set<ModuleEntry> classes = new LinkedHashSet<>();
@@ -91,6 +101,50 @@ public final class CallGraphBuilder {
         }
     };
     private final Set<File> tempClassFiles = new LinkedHashSet<>();
+    // The shared library modules added to the scope, which are released by clean().
+    private final List<Module> libraryModules = new ArrayList<>();
+    
+    private File exclusionsFile;
+    private String exclusions;
+    private final Set<String> applicationClasses = new HashSet<>();
+    private Set<String> packageExclusions;
+    private boolean restrictJdkScope;
+    private final Set<String> referencedTypes = new LinkedHashSet<>();
+    private MethodGraphTier methodGraphTier = MethodGraphTier.DATA_DEPENDENCE;
+    private Slicer.DataDependenceOptions dataDependenceOptions = Slicer.DataDependenceOptions.NO_HEAP_NO_EXCEPTIONS;
+    private Slicer.ControlDependenceOptions controlDependenceOptions = Slicer.ControlDependenceOptions.NO_EXCEPTIONAL_EDGES;
+    private int methodGraphParallelism = 1;
+    private boolean concurrentWrites;
+    private AnalysisProgress progress = new AnalysisProgress();
+    private AnalysisMetrics metrics = new AnalysisMetrics();
+    private boolean useLibrarySummaries;
+    private File librarySummaryCacheDir = new File(System.getProperty("java.io.tmpdir"), "minerva-library-summaries");
+    private final List<File> extraLibs = new ArrayList<>();
+    private IncrementalCallGraph incremental;
+
+    /**
+     * Exclusions which never apply to the classes of the application. The default
+     * exclusions name packages, such as XML parsers, which applications often bundle
+     * (e.g. in WEB-INF/lib), and the call graph must cover the same classes as the
+     * symbol table. Classes of excluded application packages are never added to 
+     * the application scope, so the package exclusions only apply to libraries.
+     */
+    private static final class ApplicationScopeExclusions extends FileOfClasses {
+
+        private static final long serialVersionUID = -2716391547284738592L;
+
+        private final Set<String> applicationClasses;
+
+        ApplicationScopeExclusions(String exclusions, Set<String> applicationClasses) throws IOException {
+            super(new ByteArrayInputStream(exclusions.getBytes(StandardCharsets.UTF_8)));
+            this.applicationClasses = applicationClasses;
+        }
+
+        @Override
+        public boolean contains(String klassName) {
+            return !applicationClasses.contains(klassName) && super.contains(klassName);
+        }
+    }
 
     @FunctionalInterface
     interface InputStreamFactory {
@@ -158,207 +212,541 @@ public final class CallGraphBuilder {
             return getClassName();
         }
 
-        @Override
-        public int hashCode() {
-            return getClassName().hashCode();
-        }
-
-        @Override
-        public boolean equals(Object o) {
-            return (o instanceof ClassNode) && (toString().equals(o.toString()));
-        }
+        // Equality is based on identity. Use a ClassNodeCache to obtain the 
+        // unique ClassNode for an IClass.
         
         private static int size(Collection<?> c) {
             return (c != null) ? c.size() : 0;
         }
     }
 
-    static final class CallGraphEdge implements Serializable {
+    public CallGraphBuilder(CallGraphBuilderType type) throws IOException {
+        this.type = (type != null) ? type : CallGraphBuilderType.ZERO_ONE_CFA;
+        scope = createScope();
+    }
 
-        private final Atom source;
-        private final Atom destination;
-        private int weight;
-        private static final long serialVersionUID = -8284030936836318929L;
+    /**
+     * Sets a file containing the regular expressions (one per line, e.g. "java\/awt\/.*")
+     * of the classes to exclude from the analysis scope. If not set, the default
+     * exclusions shipped with the analyzer are used. The file is read immediately.
+     */
+    public void setExclusionsFile(File exclusionsFile) throws IOException {
+        this.exclusions = (exclusionsFile != null) ? readExclusions(exclusionsFile) : null;
+        this.exclusionsFile = exclusionsFile;
+    }
 
-        public CallGraphEdge(Atom source, Atom destination) {
-            this(source, destination, 1);
-        }
-        
-        private CallGraphEdge(Atom source, Atom destination, int weight) {
-            this.source = source;
-            this.destination = destination;
-            this.weight = weight;
+    /**
+     * Sets a list of packages whose classes (including those in sub-packages)
+     * are excluded from the analysis scope in addition to the exclusions file.
+     */
+    public void setPackageExclusions(Set<String> packageExclusions) {
+        this.packageExclusions = packageExclusions;
+    }
+
+    /**
+     * If true, only the JDK classes referenced from the constant pools of the application
+     * classes (and their super types) are added to the primordial scope instead of the whole
+     * JDK. This reduces the size of the class hierarchy and the work done by pointer analysis
+     * at the expense of call paths which go through the JDK.
+     */
+    public void setRestrictJdkScope(boolean restrictJdkScope) {
+        this.restrictJdkScope = restrictJdkScope;
+    }
+
+    /**
+     * If true, the extra libraries are replaced in the analysis scope by summaries 
+     * in which every method body is a stub. The summaries are cached in the given 
+     * directory (or a default directory in java.io.tmpdir if null).
+     */
+    public void setUseLibrarySummaries(boolean useLibrarySummaries, File cacheDir) {
+        this.useLibrarySummaries = useLibrarySummaries;
+        if (cacheDir != null) {
+            this.librarySummaryCacheDir = cacheDir;
         }
-        
-        public int getWeight() {
-            return weight;
+    }
+
+    /**
+     * Sets the information included in the method level call graph. 
+     */
+    public void setMethodGraphTier(MethodGraphTier methodGraphTier) {
+        this.methodGraphTier = (methodGraphTier != null) ? methodGraphTier : MethodGraphTier.DATA_DEPENDENCE;
+    }
+
+    /**
+     * Sets the options used to build the SDG for the {@link MethodGraphTier#DATA_DEPENDENCE} tier.
+     * Null values leave the corresponding option unchanged.
+     */
+    public void setDependenceOptions(Slicer.DataDependenceOptions dataDependenceOptions, 
+            Slicer.ControlDependenceOptions controlDependenceOptions) {
+        if (dataDependenceOptions != null) {
+            this.dataDependenceOptions = dataDependenceOptions;
         }
-        
-        public void incrementWeight() {
-            ++weight;
+        if (controlDependenceOptions != null) {
+            this.controlDependenceOptions = controlDependenceOptions;
         }
+    }
 
-        @Override
-        public String toString() {
-            final JsonObject o = new JsonObject();
-            o.addProperty("source", this.source.toString());
-            o.addProperty("destination", this.destination.toString());
-            return o.toString();
-        }
+    /**
+     * Sets the number of threads used to compute the edges of the method level call graph.
+     */
+    public void setMethodGraphParallelism(int methodGraphParallelism) {
+        this.methodGraphParallelism = Math.max(1, methodGraphParallelism);
+    }
 
-        @Override
-        public int hashCode() {
-            return toString().hashCode();
+    /**
+     * If true, the class level call graph is written on another thread while the SDG 
+     * is built and the method level call graph is written. Only the calling thread 
+     * reads the call graph, so the class graph edges are collected before.
+     */
+    public void setConcurrentWrites(boolean concurrentWrites) {
+        this.concurrentWrites = concurrentWrites;
+    }
+
+    /**
+     * Sets the object to which the progress of the call graph construction is reported
+     * and through which it may be canceled.
+     */
+    public void setAnalysisProgress(AnalysisProgress progress) {
+        this.progress = (progress != null) ? progress : new AnalysisProgress();
+    }
+
+    /**
+     * Sets the object in which the time spent in each phase of the call graph 
+     * construction and the size of the graphs are recorded.
+     */
+    public void setAnalysisMetrics(AnalysisMetrics metrics) {
+        this.metrics = (metrics != null) ? metrics : new AnalysisMetrics();
+    }
+
+    /**
+     * Enables the incremental rebuild of the call graphs. The hashes of the classes and
+     * the graphs written by each run are kept in the given directory. When few classes
+     * have changed since the previous run, only the edges of the classes affected by the
+     * changes are recomputed and replaced in the previous graphs. Otherwise, or when the 
+     * options have changed, the graphs are built in full. A null directory disables it.
+     */
+    public void setIncrementalStateDir(File stateDir) {
+        this.incremental = (stateDir != null) ? new IncrementalCallGraph(stateDir) : null;
+    }
+
+    /**
+     * The call graph of the application and the WALA builder which produced it.
+     * The builder holds the pointer analysis from which the SDG is built. If the 
+     * call graph was built incrementally, it only covers the affected classes of
+     * the region (and is null if none of them remains).
+     */
+    public static final class CallGraphResult {
+
+        final CallGraph callGraph;
+        final com.ibm.wala.ipa.callgraph.CallGraphBuilder<?> builder;
+        final IncrementalCallGraph.Region region;
+
+        CallGraphResult(CallGraph callGraph, com.ibm.wala.ipa.callgraph.CallGraphBuilder<?> builder, 
+                IncrementalCallGraph.Region region) {
+            this.callGraph = callGraph;
+            this.builder = builder;
+            this.region = region;
         }
 
-        @Override
-        public boolean equals(Object o) {
-            return (o instanceof CallGraphEdge) && (toString().equals(o.toString()));
+        public CallGraph getCallGraph() {
+            return callGraph;
         }
-    }
 
-    public CallGraphBuilder(CallGraphBuilderType type) throws IOException {
-        this.type = (type != null) ? type : CallGraphBuilderType.ZERO_ONE_CFA;
-        scope = createScope();
+        public PointerAnalysis<? extends InstanceKey> getPointerAnalysis() {
+            return builder.getPointerAnalysis();
+        }
     }
 
     public boolean write(File callGraphFile, File sdgGraphFile) throws IOException {
-        // Make class hierarchy
         try {
-            if (classes.size() > 0) {
-                // Create class hierarchy
-                logger.info(() -> formatMessage("CallGraphClassHierarchyBuild"));
-                IClassHierarchy cha = ClassHierarchyFactory.makeWithPhantom(scope, new ECJClassLoaderFactory(scope.getExclusions()));
-
-                logger.info(() -> formatMessage("CallGraphEndpointCalculation"));
-                Collection<Entrypoint> entryPoints = getEntryPoints(cha);
-                
-                if (entryPoints.size() > 0) {
-                    // Initialize analysis options
-                    AnalysisOptions options = new AnalysisOptions();
-                    options.setEntrypoints(entryPoints);
-                    options.getSSAOptions().setDefaultValues(SymbolTable::getDefaultValue);
-                    options.setReflectionOptions(ReflectionOptions.NONE);
-                    IAnalysisCacheView cache = new AnalysisCacheImpl(AstIRFactory.makeDefaultFactory(), options.getSSAOptions());
-
-                    // Build the call graph
-                    logger.info(() -> formatMessage("CallGraphBuildInitial"));
-                    com.ibm.wala.ipa.callgraph.CallGraphBuilder<?> builder = type.createCallGraphBuilder(options, cache, cha);
-                    CallGraph callGraph = builder.makeCallGraph(options, null);
-
-                    // Save the call graph as JSON
-                    callgraph2JSON(callGraph, callGraphFile);
-                    
-                    // Build System Dependency Graph (call graph with method information)
-                    logger.info(() -> formatMessage("CallGraphBuildMethodLevel"));
-                    
-                    try {
-						SDG<? extends InstanceKey> sdg = new SDG<>(
-						        callGraph,
-						        builder.getPointerAnalysis(),
-						        new ModRef<>(),
-						        Slicer.DataDependenceOptions.NO_HEAP_NO_EXCEPTIONS,
-						        Slicer.ControlDependenceOptions.NO_EXCEPTIONAL_EDGES);						
-
-						// Build IPCFG
-						InterproceduralCFG ipcfg_full = new InterproceduralCFG(callGraph,
-						        n -> n.getMethod().getReference().getDeclaringClass().getClassLoader() == JavaSourceAnalysisScope.SOURCE
-						                || n == callGraph.getFakeRootNode() || n == callGraph.getFakeWorldClinitNode());
-						
-						// Save System Dependency Graph as JSON (call graph with method information) 
-						SDGGraph2JSON.convertAndSave(sdg, callGraph, ipcfg_full, sdgGraphFile);
-						
-					} catch (Throwable t) {
-						if (t instanceof IOException) {
-			                throw (IOException) t;
-			            }
-			            logger.severe(() -> formatMessage("CallGraphWriteError", sdgGraphFile, t.getMessage()));
-			            throw new IOException(t);
-					}
-                    
-                    logger.info(() -> formatMessage("WritingFile", sdgGraphFile.getAbsolutePath()));
-                    
+            Set<String> changedClasses = null;
+            if (incremental != null && classes.size() > 0) {
+                changedClasses = incremental.computeChangedClasses(getIncrementalFingerprint());
+                if (changedClasses != null && changedClasses.isEmpty()) {
+                    incremental.restore(callGraphFile, sdgGraphFile);
                     return true;
                 }
             }
+            final CallGraphResult result = buildCallGraph(changedClasses);
+            if (result != null) {
+                if (result.region != null) {
+                    writeIncremental(result, callGraphFile, sdgGraphFile);
+                }
+                else {
+                    writeGraphs(result, callGraphFile, sdgGraphFile);
+                }
+                if (incremental != null) {
+                    incremental.save(callGraphFile, sdgGraphFile, result.region != null);
+                }
+                return true;
+            }
+            if (incremental != null) {
+                incremental.save(null, null, false);
+            }
         }
         catch (Throwable t) {
             if (t instanceof IOException) {
                 throw (IOException) t;
             }
+            if (t instanceof CancellationException) {
+                throw (CancellationException) t;
+            }
+            // WALA reports cancellation of the pointer analysis with its own exception.
+            if (t instanceof CancelException && progress.isCanceled()) {
+                progress.checkCanceled();
+            }
             logger.severe(() -> formatMessage("CallGraphWriteError", callGraphFile, t.getMessage()));
             throw new IOException(t);
         }
         return false;
     }
 
+    /**
+     * Builds the class hierarchy and the call graph of the classes added to the scope.
+     * Returns null if there are no classes or no entry points. Together with {@link 
+     * #writeClassGraph(CallGraphResult, File)} it lets the benchmarks export the same
+     * call graph repeatedly; {@link #write(File, File)} does both in one step.
+     */
+    public CallGraphResult buildCallGraph() throws IOException, ClassHierarchyException, CancelException {
+        return buildCallGraph(null);
+    }
+
+    /**
+     * Builds the class hierarchy and the call graph of the classes added to the scope. If
+     * the changed classes are given, the call graph is only built for the classes affected
+     * by the changes unless too many are affected.
+     */
+    private CallGraphResult buildCallGraph(Set<String> changedClasses) throws IOException, ClassHierarchyException, CancelException {
+        if (classes.size() > 0) {
+            // Add the standard libraries to the analysis scope.
+            addStandardLibrariesToScope();
+            
+            // Prune the analysis scope before the class hierarchy is built.
+            scope.setExclusions(createExclusions());
+            
+            // Create class hierarchy
+            progress.checkCanceled();
+            progress.setPhase(AnalysisProgress.Phase.CLASS_HIERARCHY);
+            logger.info(() -> formatMessage("CallGraphClassHierarchyBuild"));
+            AnalysisMetrics.Timer timer = metrics.startPhase(AnalysisMetrics.CLASS_HIERARCHY);
+            EventScope event = AnalyzerEvents.classHierarchy();
+            IClassHierarchy cha = ClassHierarchyFactory.makeWithPhantom(scope, new ECJClassLoaderFactory(scope.getExclusions()));
+            event.setCount(cha.getNumberOfClasses()).close();
+            timer.close();
+            metrics.set(AnalysisMetrics.CLASS_HIERARCHY_CLASSES, cha.getNumberOfClasses());
+            progress.setClassHierarchyClassesLoaded(cha.getNumberOfClasses());
+            progress.checkCanceled();
+
+            final IncrementalCallGraph.Region region = (changedClasses != null) ? 
+                    incremental.getAffectedClasses(changedClasses, cha) : null;
+            if (region != null) {
+                metrics.set(AnalysisMetrics.INCREMENTAL_CHANGED_CLASSES, region.changed.size());
+                metrics.set(AnalysisMetrics.INCREMENTAL_AFFECTED_CLASSES, region.affected.size());
+            }
+
+            logger.info(() -> formatMessage("CallGraphEndpointCalculation"));
+            timer = metrics.startPhase(AnalysisMetrics.ENTRYPOINTS);
+            Collection<Entrypoint> entryPoints = getEntryPoints(cha, (region != null) ? region.affected : null);
+            timer.close();
+            metrics.set(AnalysisMetrics.ENTRYPOINT_COUNT, entryPoints.size());
+            
+            if (entryPoints.size() > 0) {
+                // Initialize analysis options
+                AnalysisOptions options = new AnalysisOptions();
+                options.setEntrypoints(entryPoints);
+                options.getSSAOptions().setDefaultValues(SymbolTable::getDefaultValue);
+                options.setReflectionOptions(ReflectionOptions.NONE);
+                IAnalysisCacheView cache = new AnalysisCacheImpl(AstIRFactory.makeDefaultFactory(), options.getSSAOptions());
+
+                // Build the call graph
+                progress.setPhase(AnalysisProgress.Phase.CALL_GRAPH);
+                logger.info(() -> formatMessage("CallGraphBuildInitial"));
+                timer = metrics.startPhase(AnalysisMetrics.CALL_GRAPH);
+                event = AnalyzerEvents.callGraph(type.name());
+                com.ibm.wala.ipa.callgraph.CallGraphBuilder<?> builder = type.createCallGraphBuilder(options, cache, cha);
+                CallGraph callGraph = builder.makeCallGraph(options, progress.getPointerAnalysisMonitor());
+                event.setCount(callGraph.getNumberOfNodes()).close();
+                timer.close();
+                metrics.set(AnalysisMetrics.CALL_GRAPH_NODES, callGraph.getNumberOfNodes());
+                progress.checkCanceled();
+                return new CallGraphResult(callGraph, builder, region);
+            }
+            if (region != null) {
+                // Only removed classes were affected. Their edges are removed from the previous graphs.
+                return new CallGraphResult(null, null, region);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Writes the graphs of the affected classes to temporary files and 
+     * replaces the edges of those classes in the previous graphs with them.
+     */
+    private void writeIncremental(CallGraphResult result, File callGraphFile, File sdgGraphFile) throws IOException {
+        final IncrementalCallGraph.Region region = result.region;
+        File partialCallGraphFile = null;
+        File partialSdgGraphFile = null;
+        try {
+            if (result.callGraph != null) {
+                partialCallGraphFile = incremental.createTempFile();
+                partialSdgGraphFile = incremental.createTempFile();
+                writeGraphs(result, partialCallGraphFile, partialSdgGraphFile);
+            }
+            progress.checkCanceled();
+            final AnalysisMetrics.Timer timer = metrics.startPhase(AnalysisMetrics.GRAPH_SPLICE);
+            IncrementalCallGraph.GraphSize size = incremental.spliceClassGraph(partialCallGraphFile, callGraphFile, 
+                    region::ownsClassEdge);
+            metrics.set(AnalysisMetrics.CLASS_GRAPH_NODES, size.nodeCount);
+            metrics.set(AnalysisMetrics.CLASS_GRAPH_EDGES, size.edgeCount);
+            final boolean hasDependenceEdges = methodGraphTier != MethodGraphTier.CALL_GRAPH;
+            size = incremental.spliceMethodGraph(partialSdgGraphFile, sdgGraphFile, 
+                    (source, target) -> region.ownsMethodEdge(source, target, hasDependenceEdges));
+            metrics.set(AnalysisMetrics.METHOD_GRAPH_NODES, size.nodeCount);
+            metrics.set(AnalysisMetrics.METHOD_GRAPH_EDGES, size.edgeCount);
+            timer.close();
+        }
+        finally {
+            if (partialCallGraphFile != null) {
+                partialCallGraphFile.delete();
+            }
+            if (partialSdgGraphFile != null) {
+                partialSdgGraphFile.delete();
+            }
+        }
+    }
+
+    /**
+     * Writes the class level call graph and then the method level call graph, or
+     * both at once if concurrent writes are enabled.
+     */
+    private void writeGraphs(CallGraphResult result, File callGraphFile, File sdgGraphFile) throws IOException {
+        if (!concurrentWrites) {
+            // Save the call graph as JSON
+            final AnalysisMetrics.Timer timer = metrics.startPhase(AnalysisMetrics.CLASS_GRAPH_EXPORT);
+            callgraph2JSON(result.callGraph, new ClassNodeCache(), callGraphFile);
+            timer.close();
+
+            // Build the call graph with method information
+            writeMethodGraph(result, sdgGraphFile);
+            return;
+        }
+        // The IRs and class hierarchy are not safe to read from several threads while 
+        // the SDG is being built, so the class graph is aggregated here and only encoding 
+        // and writing it are left to the other thread.
+        AnalysisMetrics.Timer timer = metrics.startPhase(AnalysisMetrics.CLASS_GRAPH_EXPORT);
+        final ClassGraph classGraph = new ClassGraph();
+        getDirectedGraph(result.callGraph, new ClassNodeCache(), classGraph);
+        timer.close();
+        final BackgroundWrites classGraphWrite = new BackgroundWrites("minerva-class-graph-writer", 1);
+        classGraphWrite.submit(() -> {
+            try (AnalysisMetrics.Timer writeTimer = metrics.startPhase(AnalysisMetrics.CLASS_GRAPH_WRITE_BACKGROUND)) {
+                writeClassGraph(callGraphFile, classGraph::writeTo);
+            }
+        });
+        try {
+            // Build the call graph with method information
+            writeMethodGraph(result, sdgGraphFile);
+        }
+        catch (IOException | RuntimeException | Error e) {
+            // The failure of the method graph is the one reported.
+            try {
+                classGraphWrite.await();
+            }
+            catch (IOException | RuntimeException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
+        classGraphWrite.await();
+    }
+
+    /**
+     * Returns a description of everything other than the application classes which
+     * determines the call graphs, so that a change to any of it forces a full rebuild.
+     */
+    private String getIncrementalFingerprint() throws IOException {
+        final StringBuilder sb = new StringBuilder();
+        sb.append(type).append('|').append(methodGraphTier).append('|').append(dataDependenceOptions)
+            .append('|').append(controlDependenceOptions).append('|').append(restrictJdkScope)
+            .append('|').append(useLibrarySummaries).append('|').append(System.getProperty("java.version"));
+        sb.append('|').append(createExclusionsText());
+        for (File lib : extraLibs) {
+            sb.append('|').append(lib.getAbsolutePath()).append(':').append(lib.length()).append(':').append(lib.lastModified());
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Writes the method level call graph of the given call graph, building
+     * the SDG first unless the {@link MethodGraphTier#CALL_GRAPH} tier is selected.
+     */
+    void writeMethodGraph(CallGraphResult result, File sdgGraphFile) throws IOException {
+        progress.checkCanceled();
+        progress.setPhase(AnalysisProgress.Phase.METHOD_GRAPH);
+        logger.info(() -> formatMessage("CallGraphBuildMethodLevel"));
+        logger.config(() -> formatMessage("CallGraphMethodGraphTier", methodGraphTier));
+        
+        try {
+            final SDGGraph2JSON.Statistics statistics;
+            if (methodGraphTier == MethodGraphTier.CALL_GRAPH) {
+                // Save the method level call graph as JSON (call edges only)
+                final AnalysisMetrics.Timer timer = metrics.startPhase(AnalysisMetrics.METHOD_GRAPH_EXPORT);
+                final EventScope event = AnalyzerEvents.jsonExport(sdgGraphFile.getName());
+                statistics = SDGGraph2JSON.convertAndSave(result.callGraph, sdgGraphFile, new MethodNodeRegistry(), 
+                        methodGraphParallelism, progress.getSdgMonitor());
+                event.setCount(statistics.getNodeCount()).close();
+                timer.close();
+            }
+            else {
+                // Build System Dependency Graph. Most of the SDG is computed lazily 
+                // and is therefore included in the time of the method graph export.
+                AnalysisMetrics.Timer timer = metrics.startPhase(AnalysisMetrics.SDG);
+                final EventScope sdgEvent = AnalyzerEvents.sdg();
+                SDG<? extends InstanceKey> sdg = new SDG<>(
+                        result.callGraph,
+                        result.builder.getPointerAnalysis(),
+                        new ModRef<>(),
+                        dataDependenceOptions,
+                        controlDependenceOptions);
+                timer.close();
+
+                // Save System Dependency Graph as JSON (call graph with method information) 
+                timer = metrics.startPhase(AnalysisMetrics.METHOD_GRAPH_EXPORT);
+                final EventScope event = AnalyzerEvents.jsonExport(sdgGraphFile.getName());
+                statistics = SDGGraph2JSON.convertAndSave(sdg, sdgGraphFile, new MethodNodeRegistry(), 
+                        methodGraphParallelism, progress.getSdgMonitor());
+                event.setCount(statistics.getNodeCount()).close();
+                // The SDG event includes its lazy construction during the export.
+                sdgEvent.setCount(statistics.getStatementCount()).close();
+                timer.close();
+                metrics.set(AnalysisMetrics.SDG_STATEMENTS, statistics.getStatementCount());
+            }
+            metrics.set(AnalysisMetrics.METHOD_GRAPH_NODES, statistics.getNodeCount());
+            metrics.set(AnalysisMetrics.METHOD_GRAPH_EDGES, statistics.getEdgeCount());
+        } catch (Throwable t) {
+            if (t instanceof IOException) {
+                throw (IOException) t;
+            }
+            if (t instanceof CancellationException) {
+                throw (CancellationException) t;
+            }
+            logger.severe(() -> formatMessage("CallGraphWriteError", sdgGraphFile, t.getMessage()));
+            throw new IOException(t);
+        }
+        
+        logger.info(() -> formatMessage("WritingFile", sdgGraphFile.getAbsolutePath()));
+    }
+
+    /**
+     * Deletes the temporary class files and releases the library modules once the call
+     * graphs have been written or have failed. JVMs running many analyses would otherwise
+     * accumulate them until they exit.
+     */
     public void clean() {
-        // Delete temporary class files when the JVM exits.
         tempClassFiles.forEach(f -> {
-            f.deleteOnExit();
+            // Files which cannot be deleted now (e.g. still open on Windows) are deleted when the JVM exits.
+            if (!f.delete() && f.exists()) {
+                f.deleteOnExit();
+            }
         });
         tempClassFiles.clear();
+        libraryModules.forEach(LibraryModules::release);
+        libraryModules.clear();
     }
 
-    private Graph<ClassNode, CallGraphEdge> getDirectedGraph(CallGraph callGraph) {
-        final Graph<ClassNode, CallGraphEdge> graph = new DefaultDirectedGraph<>(CallGraphEdge.class);
+    private void getDirectedGraph(CallGraph callGraph, ClassNodeCache classNodes, BiConsumer<ClassNode, ClassNode> edges) {
         callGraph.getEntrypointNodes().forEach(entrypointNode -> {
             final IMethod entryMethod = entrypointNode.getMethod();
+            final ClassNode source = classNodes.get(entryMethod.getDeclaringClass());
             // Get call statements that may execute in a given method
             final Iterable<CallSiteReference> outGoingCalls = () -> entrypointNode.iterateCallSites();
             outGoingCalls.forEach(callSiteReference -> {
                 callGraph.getPossibleTargets(entrypointNode, callSiteReference).forEach(callTarget -> {
-                    if (isApplicationClass(callTarget.getMethod().getDeclaringClass())) {
-                        final ClassNode source = new ClassNode(entryMethod.getDeclaringClass());
-                        final ClassNode target = new ClassNode(callTarget.getMethod().getDeclaringClass());
-                        if (!source.equals(target)) {
-                            graph.addVertex(source);
-                            graph.addVertex(target);
-                            CallGraphEdge edge = graph.getEdge(source, target);
-                            if (edge == null) {
-                                graph.addEdge(
-                                        source,
-                                        target,
-                                        new CallGraphEdge(entryMethod.getName(), callTarget.getMethod().getName()));
-                            }
-                            else {
-                                edge.incrementWeight();
-                            }
+                    final IClass targetClass = callTarget.getMethod().getDeclaringClass();
+                    if (isApplicationClass(targetClass)) {
+                        final ClassNode target = classNodes.get(targetClass);
+                        if (source != target) {
+                            edges.accept(source, target);
                         }
                     }
                 });
             });
         });
-        return graph;
     }
 
-    private void callgraph2JSON(CallGraph callGraph, File savePath) {
+    /**
+     * Writes the class level call graph of the given call graph.
+     */
+    public void writeClassGraph(CallGraphResult result, File savePath) throws IOException {
+        callgraph2JSON(result.callGraph, new ClassNodeCache(), savePath);
+    }
+
+    private void callgraph2JSON(CallGraph callGraph, ClassNodeCache classNodes, File savePath) throws IOException {
+        writeClassGraph(savePath, graph -> getDirectedGraph(callGraph, classNodes, (source, target) -> {
+            final int sourceId = graph.addNode(source);
+            final int targetId = graph.addNode(target);
+            final int edge = graph.getEdge(sourceId, targetId);
+            if (edge < 0) {
+                graph.addEdge(sourceId, targetId, null);
+            }
+            else {
+                graph.incrementWeight(edge);
+            }
+        }));
+    }
+
+    /**
+     * Writes the class graph whose nodes and edges are added by the given builder.
+     */
+    private void writeClassGraph(File savePath, Consumer<StreamingGraphWriter<ClassNode, Void>> builder) throws IOException {
         logger.info(() -> formatMessage("CallGraphBuildFinal"));
-        final Graph<ClassNode, CallGraphEdge> graph = getDirectedGraph(callGraph);
-        final JSONExporter<ClassNode, CallGraphEdge> exporter = new JSONExporter<>(v -> v.getClassName());
-        exporter.setVertexAttributeProvider((v) -> {
-            final Map<String, Attribute> map = new LinkedHashMap<>();
-            map.put("label", DefaultAttribute.createAttribute(v.toString()));
-            map.put("is_class_private", DefaultAttribute.createAttribute(v.isPrivate()));
-            map.put("num_total_fields", DefaultAttribute.createAttribute(v.getFieldCount()));
-            map.put("num_static_fields", DefaultAttribute.createAttribute(v.getStaticFieldCount()));
-            map.put("num_instance_fields", DefaultAttribute.createAttribute(v.getInstanceFieldCount()));
-            map.put("num_total_methods", DefaultAttribute.createAttribute(v.getMethodCount()));
-            map.put("num_static_methods", DefaultAttribute.createAttribute(v.getStaticMethodCount()));
-            map.put("num_instance_methods", DefaultAttribute.createAttribute(v.getInstanceMethodCount()));
-            return map;
-        });
-        exporter.setEdgeAttributeProvider((e) -> {
-            return Collections.singletonMap("weight", DefaultAttribute.createAttribute(e.getWeight()));
-        });
-        // Export the graph to JSON
+        // Export the graph to JSON. Nodes are written while the graph is being built.
         logger.info(() -> formatMessage("WritingFile", savePath));
-        exporter.exportGraph(graph, savePath);
+        try (EventScope event = AnalyzerEvents.jsonExport(savePath.getName());
+                StreamingGraphWriter<ClassNode, Void> graph = new StreamingGraphWriter<>(savePath, v -> v.getClassName(), (w, v) -> {
+            w.name("label").value(v.toString());
+            w.name("is_class_private").value(v.isPrivate());
+            w.name("num_total_fields").value(v.getFieldCount());
+            w.name("num_static_fields").value(v.getStaticFieldCount());
+            w.name("num_instance_fields").value(v.getInstanceFieldCount());
+            w.name("num_total_methods").value(v.getMethodCount());
+            w.name("num_static_methods").value(v.getStaticMethodCount());
+            w.name("num_instance_methods").value(v.getInstanceMethodCount());
+        }, (w, e, weight) -> {
+            w.name("weight").value(weight);
+        })) {
+            builder.accept(graph);
+            graph.finish();
+            metrics.set(AnalysisMetrics.CLASS_GRAPH_NODES, graph.getNodeCount());
+            metrics.set(AnalysisMetrics.CLASS_GRAPH_EDGES, graph.getEdgeCount());
+            event.setCount(graph.getNodeCount());
+        }
+        catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
     }
 
     public void addToScope(ClassProcessor cp, byte[] clazz) {
-        final String binaryPath = cp.getBinaryPath();
-        final String className = cp.getClassName();
+        addToScope(cp.getCtClass().getName(), cp.getBinaryPath(), cp.getClassName(), 
+                restrictJdkScope ? cp.getCtClass().getRefClasses() : null, clazz);
+    }
+
+    /**
+     * Adds a class read from the {@link AnalysisCache} to the analysis scope.
+     */
+    public void addToScope(ClassSummary cs, byte[] clazz) {
+        addToScope(cs.getName(), cs.getBinaryPath(), cs.getClassName(), cs.getRefClasses(), clazz);
+    }
+
+    private void addToScope(String name, String binaryPath, String className, Collection<String> refClasses, byte[] clazz) {
+        applicationClasses.add(name.replace('.', '/'));
+        if (restrictJdkScope && refClasses != null) {
+            refClasses.forEach(x -> referencedTypes.add(x.replace('.', '/')));
+        }
+        if (incremental != null) {
+            incremental.addClass(name, clazz);
+        }
         final File tempClassFile = createTemporaryFile(className, clazz);
         final InputStreamFactory isf;
         if (tempClassFile != null) {
@@ -414,12 +802,15 @@ public final class CallGraphBuilder {
 
     private File createTemporaryFile(String className, byte[] clazz) {
         try {
-            final File f = File.createTempFile("minerva", null);
-            tempClassFiles.add(f);
-            final FileOutputStream fos = new FileOutputStream(f);
-            fos.write(clazz);
-            fos.close();
-            return f;
+            try (EventScope event = AnalyzerEvents.tempFileWrite(className).setBytes(clazz.length)) {
+                final File f = File.createTempFile("minerva", null);
+                tempClassFiles.add(f);
+                event.setSource(f.getPath());
+                final FileOutputStream fos = new FileOutputStream(f);
+                fos.write(clazz);
+                fos.close();
+                return f;
+            }
         }
         catch (Exception e) {
             logger.warning(() -> formatMessage("CallGraphTempFileWriteWarning",
@@ -429,14 +820,28 @@ public final class CallGraphBuilder {
     }
     
     public void addLibsToScope(File[] extraLibs) {
+        final LibrarySummaryBuilder summaryBuilder = useLibrarySummaries ? 
+                new LibrarySummaryBuilder(librarySummaryCacheDir, extraLibs) : null;
     	for (File extraLibJar : extraLibs) {
         	final String name = extraLibJar.getName().toLowerCase(Locale.ENGLISH);
             final BinaryType bt = BinaryType.getBinaryType(name);
             
             if (bt == BinaryType.JAR) {
             	logger.info(() -> formatMessage("CallGraphAddExtraLibToScope", extraLibJar.getName()));
+            	this.extraLibs.add(extraLibJar);
 			    try {
-					scope.addToScope(ClassLoaderReference.Extension, new JarFile(extraLibJar.getAbsolutePath()));
+			        File lib = extraLibJar;
+			        if (summaryBuilder != null) {
+			            try {
+			                lib = summaryBuilder.getSummary(extraLibJar);
+			            }
+			            catch (IOException e) {
+			                logger.warning(() -> formatMessage("CallGraphLibrarySummaryError", extraLibJar.getName(), e.getMessage()));
+			            }
+			        }
+			        final Module libraryModule = LibraryModules.acquire(lib);
+			        libraryModules.add(libraryModule);
+					scope.addToScope(ClassLoaderReference.Extension, libraryModule);
 			    } catch (Throwable t) {
 					logger.severe(() -> formatMessage("CallGraphBuildError", t.getMessage()));
 				}
@@ -450,22 +855,8 @@ public final class CallGraphBuilder {
     private AnalysisScope createScope() throws IOException {
         AnalysisScope scope = new JavaSourceAnalysisScope();
         try {
-            // Add standard libraries to scope.
-            try {
-                Module m = getJavaBaseModule();
-                scope.addToScope(ClassLoaderReference.Primordial, m);
-            }
-            catch (Throwable t) {
-                // Fall back to using the default method for collecting the J2SE jars
-                // files when the JrtModule for "java.base" cannot be loaded. This is
-                // expected if the analyzer is being run with Java 8.
-                final String[] stdlibs = WalaProperties.getJ2SEJarFiles();
-                for (String stdlib : stdlibs) {
-                    scope.addToScope(ClassLoaderReference.Primordial, new JarFile(stdlib));
-                }
-            }
-            
-            // Add application module to scope.
+            // Add application module to scope. The standard libraries are added 
+            // to the scope once the referenced classes are known.
             scope.addToScope(ClassLoaderReference.Application, module);
         }
         catch (Throwable t) {
@@ -477,22 +868,78 @@ public final class CallGraphBuilder {
         }
         return scope;
     }
-    
-    private Module getJavaBaseModule() throws Exception {
-        // Using reflection to avoid a compile time dependency on JrtModule.
-        Class<?> clazz = Class.forName("com.ibm.wala.core.java11.JrtModule");
-        Constructor<?> c = clazz.getConstructor(String.class);
-        return (Module) c.newInstance("java.base");
+
+    private void addStandardLibrariesToScope() throws IOException {
+        // The standard libraries are shared by the analyses run in this JVM.
+        final StandardLibraries stdlibs = StandardLibraries.get();
+        if (restrictJdkScope) {
+            scope.addToScope(ClassLoaderReference.Primordial, new ReferencedTypesModule(stdlibs, referencedTypes));
+        }
+        else {
+            for (Module m : stdlibs.getModules()) {
+                scope.addToScope(ClassLoaderReference.Primordial, m);
+            }
+        }
+        referencedTypes.clear();
+    }
+
+    private SetOfClasses createExclusions() throws IOException {
+        if (exclusionsFile != null) {
+            logger.config(() -> formatMessage("CallGraphExclusions", exclusionsFile));
+        }
+        return new ApplicationScopeExclusions(createExclusionsText(), applicationClasses);
+    }
+
+    /**
+     * Reads the exclusions in the given file, failing if it cannot be read.
+     */
+    static String readExclusions(File exclusionsFile) throws IOException {
+        return readExclusions(new FileInputStream(exclusionsFile));
+    }
+
+    private static String readExclusions(InputStream is) throws IOException {
+        final StringBuilder sb = new StringBuilder();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(is, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                // Skip comments and blank lines.
+                if (!line.isEmpty() && !line.startsWith("#")) {
+                    sb.append(line).append('\n');
+                }
+            }
+        }
+        return sb.toString();
     }
 
+    private String createExclusionsText() throws IOException {
+        final StringBuilder sb = new StringBuilder();
+        if (exclusions != null) {
+            sb.append(exclusions);
+        }
+        else {
+            final InputStream is = CallGraphBuilder.class.getResourceAsStream(DEFAULT_EXCLUSIONS_RESOURCE);
+            if (is != null) {
+                sb.append(readExclusions(is));
+            }
+        }
+        if (packageExclusions != null) {
+            packageExclusions.stream().filter(p -> p != null && !p.isEmpty()).forEach(p -> {
+                sb.append(Pattern.quote(p.replace('.', '/'))).append("/.*\n");
+            });
+        }
+        return sb.toString();
+    }
+    
     private boolean isApplicationClass(IClass _class) {
         return _class.getClassLoader().getReference().equals(ClassLoaderReference.Application);
     }
 
-    private Collection<Entrypoint> getEntryPoints(IClassHierarchy cha) {
+    private Collection<Entrypoint> getEntryPoints(IClassHierarchy cha, Set<String> includedClasses) {
         final Collection<Entrypoint> entrypoints = new ArrayList<>();
         cha.forEach(c -> {
-            if (isApplicationClass(c) && !(c instanceof PhantomClass)) {
+            if (isApplicationClass(c) && !(c instanceof PhantomClass) 
+                    && (includedClasses == null || includedClasses.contains(IncrementalCallGraph.getClassName(c)))) {
                 c.getDeclaredMethods().forEach(method -> {
                     entrypoints.add(new DefaultEntrypoint(method, cha));
                 });
@@ -500,4 +947,60 @@ public final class CallGraphBuilder {
         });
         return entrypoints;
     }
+
+    /**
+     * The class level call graph, aggregated while the call graph is traversed so that
+     * it can be written by another thread: the nodes in the order they were found and
+     * each edge once, in the order it was found, with the number of times it was found.
+     */
+    private static final class ClassGraph implements BiConsumer<ClassNode, ClassNode> {
+
+        private final Map<String,Integer> nodeIds = new HashMap<>();
+        private final List<ClassNode> nodes = new ArrayList<>();
+        private final LongIntHashMap edgeIndex = new LongIntHashMap();
+        private int[] sources = new int[64];
+        private int[] targets = new int[64];
+        private int[] weights = new int[64];
+        private int edgeCount;
+
+        @Override
+        public void accept(ClassNode source, ClassNode target) {
+            final int sourceId = addNode(source);
+            final int targetId = addNode(target);
+            final long key = ((long) sourceId << 32) | (targetId & 0xffffffffL);
+            final int edge = edgeIndex.get(key);
+            if (edge >= 0) {
+                ++weights[edge];
+                return;
+            }
+            if (edgeCount == sources.length) {
+                final int capacity = edgeCount << 1;
+                sources = Arrays.copyOf(sources, capacity);
+                targets = Arrays.copyOf(targets, capacity);
+                weights = Arrays.copyOf(weights, capacity);
+            }
+            sources[edgeCount] = sourceId;
+            targets[edgeCount] = targetId;
+            weights[edgeCount] = 1;
+            edgeIndex.put(key, edgeCount++);
+        }
+
+        private int addNode(ClassNode node) {
+            // Nodes are identified by their class name, as in the graph writer.
+            return nodeIds.computeIfAbsent(node.getClassName(), k -> {
+                nodes.add(node);
+                return nodes.size() - 1;
+            });
+        }
+
+        /**
+         * Adds the nodes and edges to the graph writer, which assigns them the same ids.
+         */
+        void writeTo(StreamingGraphWriter<ClassNode, Void> graph) {
+            nodes.forEach(graph::addNode);
+            for (int i = 0; i < edgeCount; ++i) {
+                graph.incrementWeight(graph.addEdge(sources[i], targets[i], null), weights[i] - 1);
+            }
+        }
+    }
 }
@@ -0,0 +1,38 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+
+package com.ibm.minerva.analyzer;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import com.ibm.minerva.analyzer.CallGraphBuilder.ClassNode;
+import com.ibm.wala.classLoader.IClass;
+
+/**
+ * Holds the ClassNode (and its metrics) computed for each IClass so that the
+ * class hierarchy is only walked once per class during a graph export.
+ */
+final class ClassNodeCache {
+
+    private final Map<IClass,ClassNode> classNodes = new IdentityHashMap<>();
+
+    public ClassNode get(IClass clazz) {
+        return classNodes.computeIfAbsent(clazz, ClassNode::new);
+    }
+}
@@ -0,0 +1,179 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+
+package com.ibm.minerva.analyzer;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+/**
+ * The information about a class needed to add it to the symbol and reference tables
+ * and to the call graph analysis scope, so that a class stored in the {@link AnalysisCache}
+ * can be processed again without parsing it.
+ */
+public final class ClassSummary {
+
+    private final String name;
+    private final String fqcn;
+    private final String simpleName;
+    private final String localName;
+    private final String packageName;
+    private final String className;
+    private final String sourcePath;
+    private final String binaryPath;
+    private final boolean isInterface;
+    private final boolean isStandardNamedClass;
+    private final boolean isLegalNamedClass;
+    private final List<String> refClasses;
+    private final JsonObject symTableClassObject;
+
+    ClassSummary(ClassProcessor cp, JsonObject symTableClassObject, Collection<String> refClasses) {
+        this.name = cp.getCtClass().getName();
+        this.fqcn = cp.toFQCN();
+        this.simpleName = cp.getSimpleName();
+        this.localName = cp.getLocalName();
+        this.packageName = cp.getPackageName();
+        this.className = cp.getClassName();
+        this.sourcePath = cp.getSourcePath();
+        this.binaryPath = cp.getBinaryPath();
+        this.isInterface = cp.getCtClass().isInterface();
+        this.isStandardNamedClass = cp.isStandardNamedClass(false);
+        this.isLegalNamedClass = cp.isStandardNamedClass(true);
+        this.refClasses = (refClasses != null) ? new ArrayList<>(refClasses) : null;
+        this.symTableClassObject = symTableClassObject;
+    }
+
+    private ClassSummary(JsonObject o) {
+        this.name = o.get("name").getAsString();
+        this.fqcn = o.get("fqcn").getAsString();
+        this.simpleName = o.get("simpleName").getAsString();
+        this.localName = o.get("localName").getAsString();
+        this.packageName = getString(o, "packageName");
+        this.className = o.get("className").getAsString();
+        this.sourcePath = o.get("sourcePath").getAsString();
+        this.binaryPath = o.get("binaryPath").getAsString();
+        this.isInterface = o.get("isInterface").getAsBoolean();
+        this.isStandardNamedClass = o.get("isStandardNamedClass").getAsBoolean();
+        this.isLegalNamedClass = o.get("isLegalNamedClass").getAsBoolean();
+        final JsonElement e = o.get("refClasses");
+        if (e != null && e.isJsonArray()) {
+            refClasses = new ArrayList<>();
+            e.getAsJsonArray().forEach(x -> refClasses.add(x.getAsString()));
+        }
+        else {
+            refClasses = null;
+        }
+        final JsonElement s = o.get("symTable");
+        this.symTableClassObject = (s != null && s.isJsonObject()) ? s.getAsJsonObject() : null;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String toFQCN() {
+        return fqcn;
+    }
+
+    public String getSimpleName() {
+        return simpleName;
+    }
+
+    public String getLocalName() {
+        return localName;
+    }
+
+    public String getPackageName() {
+        return packageName;
+    }
+
+    public String getClassName() {
+        return className;
+    }
+
+    public String getSourcePath() {
+        return sourcePath;
+    }
+
+    public String getBinaryPath() {
+        return binaryPath;
+    }
+
+    public boolean isInterface() {
+        return isInterface;
+    }
+
+    /**
+     * See {@link ClassProcessor#isStandardNamedClass(boolean)}.
+     */
+    public boolean isStandardNamedClass(boolean allowAnyLegalClasses) {
+        return allowAnyLegalClasses ? isLegalNamedClass : isStandardNamedClass;
+    }
+
+    /**
+     * Returns the classes referenced from the constant pool, or null if they were not recorded.
+     */
+    public List<String> getRefClasses() {
+        return refClasses;
+    }
+
+    /**
+     * Returns the object describing the class in the symbol table, or null if it was not recorded.
+     */
+    public JsonObject getSymTableClassObject() {
+        return symTableClassObject;
+    }
+
+    JsonObject toJson() {
+        final JsonObject o = new JsonObject();
+        o.addProperty("name", name);
+        o.addProperty("fqcn", fqcn);
+        o.addProperty("simpleName", simpleName);
+        o.addProperty("localName", localName);
+        o.addProperty("packageName", packageName);
+        o.addProperty("className", className);
+        o.addProperty("sourcePath", sourcePath);
+        o.addProperty("binaryPath", binaryPath);
+        o.addProperty("isInterface", isInterface);
+        o.addProperty("isStandardNamedClass", isStandardNamedClass);
+        o.addProperty("isLegalNamedClass", isLegalNamedClass);
+        if (refClasses != null) {
+            final JsonArray array = new JsonArray();
+            refClasses.forEach(array::add);
+            o.add("refClasses", array);
+        }
+        if (symTableClassObject != null) {
+            o.add("symTable", symTableClassObject);
+        }
+        return o;
+    }
+
+    static ClassSummary fromJson(JsonObject o) {
+        return new ClassSummary(o);
+    }
+
+    private static String getString(JsonObject o, String name) {
+        final JsonElement e = o.get(name);
+        return (e != null && !e.isJsonNull()) ? e.getAsString() : null;
+    }
+}
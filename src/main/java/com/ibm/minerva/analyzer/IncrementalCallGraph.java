@@ -0,0 +1,445 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+
+package com.ibm.minerva.analyzer;
+
+import static com.ibm.minerva.analyzer.MessageFormatter.formatMessage;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiPredicate;
+import java.util.logging.Logger;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonWriter;
+import com.ibm.wala.classLoader.IClass;
+import com.ibm.wala.classLoader.PhantomClass;
+import com.ibm.wala.ipa.cha.IClassHierarchy;
+import com.ibm.wala.types.ClassLoaderReference;
+
+/**
+ * The state kept between runs to rebuild the call graphs incrementally. It holds a hash 
+ * of each class added to the analysis scope and a copy of the class and method level call
+ * graphs written by the last run.
+ * <p>
+ * On the next run, the classes whose hash has changed (including those added or removed) 
+ * and their subclasses are the changed classes. The affected classes are the changed classes
+ * and their callers, and the callers of their super types, in the previous class graph. The
+ * call graph is then built with the methods of the affected classes as its only entry points
+ * and the edges it produces replace the edges of the affected classes in the previous graphs.
+ * <p>
+ * This is an approximation: a change whose effect propagates through more than one call 
+ * (e.g. a changed factory method whose result is passed on by an unchanged caller) is not
+ * seen by the callers further away, and the dependence edges of the method graph depend 
+ * on the order in which the SDG is traversed. The graphs are therefore rebuilt in full when 
+ * the options, libraries or Java version change, when too many classes are affected, and 
+ * after a number of consecutive incremental runs.
+ */
+final class IncrementalCallGraph {
+
+    private static final Logger logger = LoggingUtil.getLogger(IncrementalCallGraph.class);
+
+    // Incremented whenever the format of the state or of the graphs changes.
+    private static final String STATE_VERSION = "1";
+
+    private static final String STATE_FILE_NAME = "state.json";
+    private static final String CLASS_GRAPH_FILE_NAME = "classGraph.json";
+    private static final String METHOD_GRAPH_FILE_NAME = "methodGraph.json";
+
+    // A full rebuild is cheaper than an update when more than this fraction of the classes is affected.
+    static final double MAX_AFFECTED_FRACTION = 0.25;
+
+    // The number of consecutive incremental runs after which the graphs are rebuilt in full.
+    static final int MAX_INCREMENTAL_RUNS = 20;
+
+    private final File stateDir;
+    private final Map<String,String> classHashes = new LinkedHashMap<>();
+    private String fingerprint;
+    private int incrementalRuns;
+    private JsonObject previousClassGraph;
+
+    IncrementalCallGraph(File stateDir) {
+        this.stateDir = stateDir;
+    }
+
+    /**
+     * Records the hash of a class added to the analysis scope. The hashes of classes 
+     * with the same name (e.g. found in several modules) are combined.
+     */
+    void addClass(String name, byte[] bytes) {
+        classHashes.merge(name, AnalysisCache.digest(bytes), 
+                (a, b) -> AnalysisCache.digest((a + b).getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Compares the classes added to the scope with those of the previous run and returns
+     * those which have changed (including those which have been removed), or null (having
+     * logged the reason) if the graphs must be built in full.
+     */
+    Set<String> computeChangedClasses(String fingerprint) {
+        this.fingerprint = AnalysisCache.digest(fingerprint.getBytes(StandardCharsets.UTF_8));
+        final File stateFile = new File(stateDir, STATE_FILE_NAME);
+        if (!stateFile.isFile()) {
+            logger.info(() -> formatMessage("IncrementalCallGraphNoState", stateDir));
+            return null;
+        }
+        final JsonObject state;
+        try {
+            state = read(stateFile).getAsJsonObject();
+            if (!STATE_VERSION.equals(getString(state, "version")) 
+                    || !this.fingerprint.equals(getString(state, "fingerprint"))) {
+                logger.info(() -> formatMessage("IncrementalCallGraphOptionsChanged"));
+                return null;
+            }
+            final int runs = state.get("incrementalRuns").getAsInt();
+            if (runs >= MAX_INCREMENTAL_RUNS) {
+                logger.info(() -> formatMessage("IncrementalCallGraphRunLimit", runs));
+                return null;
+            }
+            if (!state.get("graphs").getAsBoolean() || !new File(stateDir, CLASS_GRAPH_FILE_NAME).isFile() 
+                    || !new File(stateDir, METHOD_GRAPH_FILE_NAME).isFile()) {
+                logger.info(() -> formatMessage("IncrementalCallGraphNoState", stateDir));
+                return null;
+            }
+            incrementalRuns = runs;
+        }
+        catch (IOException | RuntimeException e) {
+            logger.warning(() -> formatMessage("IncrementalCallGraphStateReadError", stateDir, e.getMessage()));
+            return null;
+        }
+        final Set<String> changed = new LinkedHashSet<>();
+        final Map<String,String> previousHashes = new LinkedHashMap<>();
+        state.getAsJsonObject("classes").entrySet().forEach(e -> previousHashes.put(e.getKey(), e.getValue().getAsString()));
+        classHashes.forEach((name, hash) -> {
+            if (!hash.equals(previousHashes.get(name))) {
+                changed.add(name);
+            }
+        });
+        previousHashes.keySet().forEach(name -> {
+            if (!classHashes.containsKey(name)) {
+                changed.add(name);
+            }
+        });
+        return changed;
+    }
+
+    /**
+     * Returns the classes whose edges must be recomputed, or null (having logged
+     * the reason) if so many are affected that the graphs should be built in full.
+     */
+    Region getAffectedClasses(Set<String> changedClasses, IClassHierarchy cha) throws IOException {
+        final Map<String,Set<String>> appClasses = new LinkedHashMap<>();
+        cha.forEach(c -> {
+            if (isApplicationClass(c) && !(c instanceof PhantomClass)) {
+                appClasses.put(getClassName(c), getSuperTypes(c));
+            }
+        });
+        return getAffectedClasses(changedClasses, appClasses);
+    }
+
+    /**
+     * Returns the classes whose edges must be recomputed given the application classes 
+     * and their application super types, or null (having logged the reason) if so many
+     * are affected that the graphs should be built in full.
+     */
+    Region getAffectedClasses(Set<String> changedClasses, Map<String,Set<String>> appClasses) throws IOException {
+        // Changes to a class are inherited by its subclasses. Calls to the methods of its
+        // super types may also be dispatched to it.
+        final Set<String> changed = new LinkedHashSet<>(changedClasses);
+        final Set<String> callees = new HashSet<>(changedClasses);
+        appClasses.forEach((name, superTypes) -> {
+            if (changedClasses.contains(name)) {
+                callees.addAll(superTypes);
+            }
+            else if (superTypes.stream().anyMatch(changedClasses::contains)) {
+                changed.add(name);
+                callees.add(name);
+            }
+        });
+        
+        final Set<String> affected = new LinkedHashSet<>(changed);
+        getPreviousClassGraph().getAsJsonArray("edges").forEach(e -> {
+            final JsonObject edge = e.getAsJsonObject();
+            if (callees.contains(edge.get("target").getAsString())) {
+                affected.add(edge.get("source").getAsString());
+            }
+        });
+        if (affected.size() > MAX_AFFECTED_FRACTION * Math.max(appClasses.size(), 1)) {
+            logger.info(() -> formatMessage("IncrementalCallGraphTooManyChanges", affected.size(), appClasses.size()));
+            return null;
+        }
+        logger.info(() -> formatMessage("IncrementalCallGraphUpdate", changedClasses.size(), affected.size()));
+        return new Region(changed, affected);
+    }
+
+    /**
+     * Copies the graphs of the previous run to the given files when no class has changed.
+     */
+    void restore(File classGraphFile, File methodGraphFile) throws IOException {
+        logger.info(() -> formatMessage("IncrementalCallGraphUnchanged"));
+        logger.info(() -> formatMessage("WritingFile", classGraphFile));
+        Files.copy(new File(stateDir, CLASS_GRAPH_FILE_NAME).toPath(), classGraphFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        logger.info(() -> formatMessage("WritingFile", methodGraphFile));
+        Files.copy(new File(stateDir, METHOD_GRAPH_FILE_NAME).toPath(), methodGraphFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Writes the previous class level graph with the owned edges replaced by those of the
+     * partial graph (which may be null if no edges were computed) to the given file.
+     */
+    GraphSize spliceClassGraph(File partial, File output, BiPredicate<String,String> isOwned) throws IOException {
+        return splice(getPreviousClassGraph(), partial, output, isOwned);
+    }
+
+    /**
+     * Writes the previous method level graph with the owned edges replaced by those of 
+     * the partial graph (which may be null if no edges were computed) to the given file.
+     */
+    GraphSize spliceMethodGraph(File partial, File output, BiPredicate<String,String> isOwned) throws IOException {
+        return splice(read(new File(stateDir, METHOD_GRAPH_FILE_NAME)).getAsJsonObject(), partial, output, isOwned);
+    }
+
+    /**
+     * Saves the hashes of the classes and a copy of the graphs written by this run (null 
+     * if no graphs were built). The number of consecutive incremental runs is reset if
+     * the graphs were built in full.
+     */
+    void save(File classGraphFile, File methodGraphFile, boolean isIncremental) {
+        final File stateFile = new File(stateDir, STATE_FILE_NAME);
+        try {
+            // Remove the state first so that it never refers to graphs of another run.
+            Files.deleteIfExists(stateFile.toPath());
+            if (!stateDir.isDirectory() && !stateDir.mkdirs()) {
+                throw new IOException(stateDir.getAbsolutePath());
+            }
+            final boolean graphs = classGraphFile != null && methodGraphFile != null;
+            if (graphs) {
+                Files.copy(classGraphFile.toPath(), new File(stateDir, CLASS_GRAPH_FILE_NAME).toPath(), StandardCopyOption.REPLACE_EXISTING);
+                Files.copy(methodGraphFile.toPath(), new File(stateDir, METHOD_GRAPH_FILE_NAME).toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            final JsonObject state = new JsonObject();
+            state.addProperty("version", STATE_VERSION);
+            state.addProperty("fingerprint", fingerprint);
+            state.addProperty("incrementalRuns", isIncremental ? incrementalRuns + 1 : 0);
+            state.addProperty("graphs", graphs);
+            final JsonObject classes = new JsonObject();
+            classHashes.forEach(classes::addProperty);
+            state.add("classes", classes);
+            final File temp = File.createTempFile(STATE_FILE_NAME, null, stateDir);
+            try {
+                try (Writer w = new OutputStreamWriter(new FileOutputStream(temp), StandardCharsets.UTF_8)) {
+                    new Gson().toJson(state, w);
+                }
+                if (!temp.renameTo(stateFile)) {
+                    throw new IOException(stateFile.getAbsolutePath());
+                }
+            }
+            finally {
+                temp.delete();
+            }
+        }
+        catch (IOException e) {
+            logger.warning(() -> formatMessage("IncrementalCallGraphStateWriteError", stateDir, e.getMessage()));
+        }
+    }
+
+    File createTempFile() throws IOException {
+        if (!stateDir.isDirectory() && !stateDir.mkdirs()) {
+            throw new IOException(stateDir.getAbsolutePath());
+        }
+        return File.createTempFile("minerva", ".json", stateDir);
+    }
+
+    private JsonObject getPreviousClassGraph() throws IOException {
+        if (previousClassGraph == null) {
+            previousClassGraph = read(new File(stateDir, CLASS_GRAPH_FILE_NAME)).getAsJsonObject();
+        }
+        return previousClassGraph;
+    }
+
+    private GraphSize splice(JsonObject previous, File partial, File output, BiPredicate<String,String> isOwned) throws IOException {
+        final JsonObject current = (partial != null) ? read(partial).getAsJsonObject() : null;
+        
+        // The owned edges of the previous graph are replaced by the owned edges of the partial graph.
+        final JsonArray edges = new JsonArray();
+        final Set<String> nodeIds = new HashSet<>();
+        addEdges(getArray(previous, "edges"), false, isOwned, edges, nodeIds);
+        if (current != null) {
+            addEdges(getArray(current, "edges"), true, isOwned, edges, nodeIds);
+        }
+        
+        // Only the nodes of the remaining edges are kept. The attributes of the nodes 
+        // of the partial graph are up to date and replace those of the previous graph.
+        final Map<String,JsonObject> nodes = new LinkedHashMap<>();
+        getArray(previous, "nodes").forEach(e -> nodes.put(e.getAsJsonObject().get("id").getAsString(), e.getAsJsonObject()));
+        if (current != null) {
+            getArray(current, "nodes").forEach(e -> nodes.put(e.getAsJsonObject().get("id").getAsString(), e.getAsJsonObject()));
+        }
+        nodes.keySet().retainAll(nodeIds);
+        
+        logger.info(() -> formatMessage("WritingFile", output));
+        final Gson gson = new GsonBuilder().serializeNulls().create();
+        try (JsonWriter writer = new JsonWriter(new BufferedWriter(
+                new OutputStreamWriter(new FileOutputStream(output), StandardCharsets.UTF_8)))) {
+            writer.setSerializeNulls(true);
+            writer.beginObject();
+            writer.name("creator").value("JGraphT JSON Exporter");
+            writer.name("version").value("1");
+            writer.name("nodes").beginArray();
+            for (JsonObject node : nodes.values()) {
+                gson.toJson(node, writer);
+            }
+            writer.endArray();
+            writer.name("edges").beginArray();
+            for (JsonElement edge : edges) {
+                gson.toJson(edge, writer);
+            }
+            writer.endArray();
+            writer.endObject();
+        }
+        return new GraphSize(nodes.size(), edges.size());
+    }
+
+    private static void addEdges(JsonArray from, boolean owned, BiPredicate<String,String> isOwned, 
+            JsonArray edges, Set<String> nodeIds) {
+        for (JsonElement e : from) {
+            final JsonObject edge = e.getAsJsonObject();
+            final String source = edge.get("source").getAsString();
+            final String target = edge.get("target").getAsString();
+            if (isOwned.test(source, target) == owned) {
+                edges.add(edge);
+                nodeIds.add(source);
+                nodeIds.add(target);
+            }
+        }
+    }
+
+    private static Set<String> getSuperTypes(IClass c) {
+        final Set<String> superTypes = new LinkedHashSet<>();
+        for (IClass s = c.getSuperclass(); s != null && isApplicationClass(s); s = s.getSuperclass()) {
+            superTypes.add(getClassName(s));
+        }
+        c.getAllImplementedInterfaces().stream().filter(IncrementalCallGraph::isApplicationClass)
+                .forEach(i -> superTypes.add(getClassName(i)));
+        return superTypes;
+    }
+
+    /**
+     * Returns the name of the class as it appears in the graphs (e.g. "a.b.C$D").
+     */
+    static String getClassName(IClass c) {
+        return c.getName().toString().substring(1).replace("/", ".");
+    }
+
+    /**
+     * Returns the name of the declaring class of a node of the method level graph,
+     * whose id is the name of the class followed by the selector of the method.
+     */
+    static String getMethodClassName(String methodId) {
+        final int paren = methodId.indexOf('(');
+        final int dot = methodId.lastIndexOf('.', paren >= 0 ? paren : methodId.length());
+        return (dot >= 0) ? methodId.substring(0, dot) : methodId;
+    }
+
+    private static boolean isApplicationClass(IClass c) {
+        return c.getClassLoader().getReference().equals(ClassLoaderReference.Application);
+    }
+
+    private static JsonElement read(File f) throws IOException {
+        try (Reader r = new InputStreamReader(new FileInputStream(f), StandardCharsets.UTF_8)) {
+            return JsonParser.parseReader(r);
+        }
+        catch (RuntimeException e) {
+            throw new IOException(f.getAbsolutePath(), e);
+        }
+    }
+
+    private static JsonArray getArray(JsonObject o, String name) {
+        final JsonElement e = o.get(name);
+        return (e != null && e.isJsonArray()) ? e.getAsJsonArray() : new JsonArray();
+    }
+
+    private static String getString(JsonObject o, String name) {
+        final JsonElement e = o.get(name);
+        return (e != null && e.isJsonPrimitive()) ? e.getAsString() : null;
+    }
+
+    /**
+     * The changed classes (including the subclasses of the classes which have changed)
+     * and the affected classes, which are the changed classes and their callers.
+     */
+    static final class Region {
+
+        final Set<String> changed;
+        final Set<String> affected;
+
+        Region(Set<String> changed, Set<String> affected) {
+            this.changed = changed;
+            this.affected = affected;
+        }
+
+        /**
+         * Returns whether an edge of the class level graph is recomputed. Its edges are 
+         * those of the entry point methods, so all edges from the affected classes are.
+         */
+        boolean ownsClassEdge(String source, String target) {
+            return affected.contains(source);
+        }
+
+        /**
+         * Returns whether an edge of the method level graph is recomputed. The dependence
+         * edges go from callees back to their callers, so if the graph has any, the edges 
+         * to the changed classes are recomputed as well as those from the affected classes.
+         */
+        boolean ownsMethodEdge(String source, String target, boolean hasDependenceEdges) {
+            return affected.contains(getMethodClassName(source)) 
+                    || (hasDependenceEdges && changed.contains(getMethodClassName(target)));
+        }
+    }
+
+    static final class GraphSize {
+
+        final int nodeCount;
+        final int edgeCount;
+
+        GraphSize(int nodeCount, int edgeCount) {
+            this.nodeCount = nodeCount;
+            this.edgeCount = edgeCount;
+        }
+    }
+}
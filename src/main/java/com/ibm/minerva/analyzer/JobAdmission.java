@@ -0,0 +1,68 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+
+package com.ibm.minerva.analyzer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Limits the analyses which run at the same time in one JVM. An analysis is only 
+ * admitted while the memory estimated for the running analyses fits in the limit
+ * and no running analysis uses the same cache, incremental state, checkpoint or 
+ * output directory. An analysis is always admitted if no other analysis is running.
+ */
+final class JobAdmission {
+
+    private static final long MB = 1024L * 1024;
+
+    private final long memoryLimit;
+    private final List<AnalysisJob> running = new ArrayList<>();
+    private long reservedMemory;
+
+    /**
+     * Creates an admission limit of the given memory in megabytes.
+     */
+    JobAdmission(long memoryLimit) {
+        this.memoryLimit = memoryLimit;
+    }
+
+    /**
+     * Returns the default memory limit in megabytes, 
+     * three quarters of the maximum heap size.
+     */
+    static long getDefaultMemoryLimit() {
+        return Runtime.getRuntime().maxMemory() / MB * 3 / 4;
+    }
+
+    synchronized void admit(AnalysisJob job) throws InterruptedException {
+        while (!running.isEmpty() && (reservedMemory + job.getMemory() > memoryLimit 
+                || running.stream().anyMatch(r -> r.sharesDirectoryWith(job)))) {
+            wait();
+        }
+        running.add(job);
+        reservedMemory += job.getMemory();
+    }
+
+    synchronized void release(AnalysisJob job) {
+        if (running.remove(job)) {
+            reservedMemory -= job.getMemory();
+        }
+        notifyAll();
+    }
+}
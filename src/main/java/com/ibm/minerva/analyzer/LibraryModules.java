@@ -0,0 +1,129 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+
+package com.ibm.minerva.analyzer;
+
+import static com.ibm.minerva.analyzer.MessageFormatter.formatMessage;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.jar.JarFile;
+import java.util.logging.Logger;
+
+import com.ibm.wala.classLoader.JarFileModule;
+import com.ibm.wala.classLoader.Module;
+
+/**
+ * The modules of the library JARs (or their summaries) added to the call graph analysis
+ * scope, which are shared by the analyses run in a JVM (e.g. by an {@link AnalysisServer})
+ * so that the same library is only opened once. A module is keyed by the path, size and
+ * modification time of its JAR, so a library which has been replaced is opened again.
+ * <p>
+ * Each analysis releases the modules it has acquired once its call graphs are done. A 
+ * module which has been replaced or cleared is closed when no analysis uses it any more.
+ */
+final class LibraryModules {
+
+    private static final Logger logger = LoggingUtil.getLogger(LibraryModules.class);
+
+    // The current modules by the path, size and modification time of their JARs.
+    private static final Map<String,Library> libraries = new HashMap<>();
+    // All the open modules, including those which have been replaced or cleared.
+    private static final Map<Module,Library> open = new IdentityHashMap<>();
+
+    private LibraryModules() {}
+
+    /**
+     * Returns the module of the given JAR, opening it unless it is already open. 
+     * It must be given back with {@link #release(Module)}.
+     */
+    static synchronized Module acquire(File jar) throws IOException {
+        final File file = jar.getAbsoluteFile();
+        final String key = file.getPath() + '|' + file.length() + '|' + file.lastModified();
+        Library library = libraries.get(key);
+        if (library == null) {
+            // Earlier versions of the JAR are no longer used by new analyses.
+            new ArrayList<>(libraries.values()).stream()
+                .filter(l -> l.path.equals(file.getPath()))
+                .forEach(LibraryModules::retire);
+            library = new Library(key, file.getPath(), new JarFile(file));
+            libraries.put(key, library);
+            open.put(library.module, library);
+        }
+        ++library.users;
+        return library.module;
+    }
+
+    /**
+     * Releases a module returned by {@link #acquire(File)}, which is closed 
+     * if it has been replaced or cleared and no other analysis uses it.
+     */
+    static synchronized void release(Module module) {
+        final Library library = open.get(module);
+        if (library != null && --library.users <= 0 && library.retired) {
+            close(library);
+        }
+    }
+
+    /**
+     * Releases the modules, so that the JARs are opened again by the next analyses.
+     * The modules are closed now if they are not in use, or else once they are released.
+     */
+    static synchronized void clear() {
+        new ArrayList<>(libraries.values()).forEach(LibraryModules::retire);
+    }
+
+    private static void retire(Library library) {
+        libraries.remove(library.key);
+        library.retired = true;
+        if (library.users <= 0) {
+            close(library);
+        }
+    }
+
+    private static void close(Library library) {
+        open.remove(library.module);
+        try {
+            library.jarFile.close();
+        }
+        catch (IOException e) {
+            logger.severe(() -> formatMessage("ArchiveCloseError", BinaryType.JAR.getExtension(), e.getMessage()));
+        }
+    }
+
+    private static final class Library {
+
+        private final String key;
+        private final String path;
+        private final JarFile jarFile;
+        private final Module module;
+        private int users;
+        private boolean retired;
+
+        Library(String key, String path, JarFile jarFile) {
+            this.key = key;
+            this.path = path;
+            this.jarFile = jarFile;
+            this.module = new JarFileModule(jarFile);
+        }
+    }
+}
@@ -0,0 +1,243 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+
+package com.ibm.minerva.analyzer;
+
+import static com.ibm.minerva.analyzer.MessageFormatter.formatMessage;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.logging.Logger;
+
+import javassist.ClassPool;
+import javassist.CtBehavior;
+import javassist.CtClass;
+import javassist.CtConstructor;
+import javassist.CtMethod;
+import javassist.Modifier;
+import javassist.NotFoundException;
+
+/**
+ * Builds summaries of library JARs for call graph construction. A summary contains
+ * the same classes and method signatures as the library, but every method body is
+ * replaced by a stub which returns a fresh object of the declared return type when
+ * it can be instantiated (or a default value otherwise). Summaries are cached on 
+ * disk, keyed by a hash of the library contents and of the class path against 
+ * which the stubs are compiled, so they are only built once.
+ */
+final class LibrarySummaryBuilder {
+
+    private static final Logger logger = LoggingUtil.getLogger(LibrarySummaryBuilder.class);
+
+    // Incremented whenever the format of the generated summaries changes.
+    private static final String SUMMARY_VERSION = "2";
+
+    private final File cacheDir;
+    private final ClassPool classPool;
+    private final List<File> classPath = new ArrayList<>();
+    private final Map<File,String> hashes = new HashMap<>();
+    private String classPathHash;
+
+    LibrarySummaryBuilder(File cacheDir, File[] libraries) {
+        this.cacheDir = cacheDir;
+        // The class pool is used to resolve types referenced from the method 
+        // signatures, which may be declared in any of the libraries.
+        this.classPool = new ClassPool(true);
+        for (File library : libraries) {
+            try {
+                classPool.appendClassPath(library.getAbsolutePath());
+                classPath.add(library);
+            }
+            catch (NotFoundException e) {
+                logger.finest(() -> formatMessage("ArchiveReadError", BinaryType.JAR.getExtension(), e.getMessage()));
+            }
+        }
+    }
+
+    File getSummary(File library) throws IOException {
+        final String key = computeKey(library);
+        final File summary = new File(cacheDir, key + BinaryType.JAR.getExtension());
+        if (!summary.isFile()) {
+            logger.info(() -> formatMessage("CallGraphLibrarySummaryBuild", library.getName()));
+            if (cacheDir.mkdirs()) {
+                logger.info(() -> formatMessage("DirectoryCreated", cacheDir));
+            }
+            // Write to a temporary file first so that an interrupted build never 
+            // leaves an incomplete summary in the cache.
+            final File temp = File.createTempFile(key, null, cacheDir);
+            try {
+                writeSummary(library, temp);
+                if (!temp.renameTo(summary) && !summary.isFile()) {
+                    throw new IOException(summary.getAbsolutePath());
+                }
+            }
+            finally {
+                temp.delete();
+            }
+        }
+        logger.config(() -> formatMessage("CallGraphLibrarySummary", summary, library.getName()));
+        return summary;
+    }
+
+    private void writeSummary(File library, File summary) throws IOException {
+        try (JarFile jarFile = new JarFile(library, false);
+                JarOutputStream jos = new JarOutputStream(new FileOutputStream(summary))) {
+            final Enumeration<JarEntry> entries = jarFile.entries();
+            while (entries.hasMoreElements()) {
+                final JarEntry entry = entries.nextElement();
+                final String name = entry.getName();
+                if (!entry.isDirectory() && name.toLowerCase(Locale.ENGLISH).endsWith(BinaryType.CLASS.getExtension())) {
+                    final byte[] bytes;
+                    try (InputStream is = jarFile.getInputStream(entry)) {
+                        bytes = summarize(library, name, readFully(is));
+                    }
+                    jos.putNextEntry(new JarEntry(name));
+                    jos.write(bytes);
+                    jos.closeEntry();
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the summary of the given class, or the class itself if it cannot be 
+     * summarized, since a class missing from the summary would become a phantom
+     * class in the class hierarchy and the calls to its methods would be lost.
+     */
+    private byte[] summarize(File library, String name, byte[] original) {
+        CtClass ctClass = null;
+        try {
+            ctClass = classPool.makeClass(new ByteArrayInputStream(original), false);
+            for (CtBehavior behavior : ctClass.getDeclaredBehaviors()) {
+                final int mod = behavior.getModifiers();
+                if (!Modifier.isAbstract(mod) && !Modifier.isNative(mod)) {
+                    try {
+                        behavior.setBody(createStubBody(behavior));
+                    }
+                    catch (Exception e) {
+                        // Keep the original body if a stub cannot be compiled 
+                        // (e.g. if the super class has no default constructor).
+                    }
+                }
+            }
+            return ctClass.toBytecode();
+        }
+        catch (Exception e) {
+            logger.warning(() -> formatMessage("CallGraphLibrarySummaryClassError", name, library.getName(), e.getMessage()));
+            return original;
+        }
+        finally {
+            if (ctClass != null) {
+                ctClass.detach();
+            }
+        }
+    }
+
+    private String createStubBody(CtBehavior behavior) {
+        if (behavior instanceof CtMethod) {
+            try {
+                final CtClass returnType = ((CtMethod) behavior).getReturnType();
+                if (!returnType.isPrimitive() && !returnType.isArray() && !returnType.isInterface()
+                        && !Modifier.isAbstract(returnType.getModifiers())) {
+                    final CtConstructor c = returnType.getDeclaredConstructor(new CtClass[0]);
+                    if (Modifier.isPublic(c.getModifiers())) {
+                        return "{ return new " + returnType.getName() + "(); }";
+                    }
+                }
+            }
+            catch (NotFoundException e) {
+                // The return type cannot be instantiated. Fall through to the default body.
+            }
+        }
+        // Returns a default value from methods and only calls super() from constructors.
+        return null;
+    }
+
+    /**
+     * Returns the key of the summary of the given library. Which stubs compile, and 
+     * so which original bodies are kept, depends on the classes found in the other
+     * libraries and the JDK, so the key includes the whole class path.
+     */
+    private String computeKey(File library) throws IOException {
+        if (classPathHash == null) {
+            final StringBuilder sb = new StringBuilder(System.getProperty("java.version"));
+            for (File f : classPath) {
+                sb.append('|').append(getHash(f));
+            }
+            classPathHash = computeHash(new ByteArrayInputStream(sb.toString().getBytes(StandardCharsets.UTF_8)));
+        }
+        final String key = getHash(library) + '|' + classPathHash;
+        return computeHash(new ByteArrayInputStream(key.getBytes(StandardCharsets.UTF_8))) + "-v" + SUMMARY_VERSION;
+    }
+
+    private String getHash(File file) throws IOException {
+        String hash = hashes.get(file);
+        if (hash == null) {
+            // Directories on the class path are identified by their path.
+            hash = file.isFile() ? computeHash(new FileInputStream(file)) : file.getAbsolutePath();
+            hashes.put(file, hash);
+        }
+        return hash;
+    }
+
+    private static String computeHash(InputStream input) throws IOException {
+        try (InputStream is = input) {
+            final MessageDigest md = MessageDigest.getInstance("SHA-256");
+            final byte[] buffer = new byte[8192];
+            int len;
+            while ((len = is.read(buffer)) != -1) {
+                md.update(buffer, 0, len);
+            }
+            final StringBuilder sb = new StringBuilder();
+            for (byte b : md.digest()) {
+                sb.append(String.format("%02x", b));
+            }
+            return sb.toString();
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private static byte[] readFully(InputStream is) throws IOException {
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[8192];
+        int len;
+        while ((len = is.read(buffer)) != -1) {
+            baos.write(buffer, 0, len);
+        }
+        return baos.toByteArray();
+    }
+}
@@ -0,0 +1,133 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+
+package com.ibm.minerva.analyzer;
+
+import static com.ibm.minerva.analyzer.MessageFormatter.formatMessage;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryNotificationInfo;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import javax.management.NotificationEmitter;
+
+/**
+ * Watches the heap usage left after garbage collections and counts the times it exceeds
+ * a fraction of the maximum heap size. Analyses poll the count and release memory (e.g.
+ * by spilling their state to disk) when it changes. The usage thresholds of the memory
+ * pools are global to the JVM, so one governor is shared by all the analyses run in it.
+ * The pools use the lowest threshold of the analyses running, and each analysis checks
+ * its own threshold with {@link #exceeds(double)} when the count changes.
+ */
+final class MemoryGovernor {
+
+    private static final Logger logger = LoggingUtil.getLogger(MemoryGovernor.class);
+
+    private static MemoryGovernor instance;
+
+    private final AtomicLong pressureCount = new AtomicLong();
+    // The thresholds of the analyses which have not released the governor. Guarded by MemoryGovernor.class.
+    private final List<Double> thresholds = new ArrayList<>();
+
+    private MemoryGovernor() {
+        final NotificationEmitter emitter = (NotificationEmitter) ManagementFactory.getMemoryMXBean();
+        emitter.addNotificationListener((notification, handback) -> {
+            if (MemoryNotificationInfo.MEMORY_COLLECTION_THRESHOLD_EXCEEDED.equals(notification.getType())) {
+                pressureCount.incrementAndGet();
+                logger.info(() -> formatMessage("MemoryPressure", toMegabytes(getHeapUsed()), toMegabytes(getHeapMax())));
+            }
+        }, null, null);
+    }
+
+    /**
+     * Returns the governor of this JVM, adding the given fraction of the maximum size of 
+     * each heap pool to its thresholds. It must be released once the analysis is done.
+     */
+    static synchronized MemoryGovernor acquire(double threshold) {
+        if (instance == null) {
+            instance = new MemoryGovernor();
+        }
+        instance.thresholds.add(threshold);
+        instance.updateThreshold();
+        return instance;
+    }
+
+    /**
+     * Removes a threshold added by {@link #acquire(double)}. The pools use the lowest 
+     * threshold left, or none if no other analysis is using the governor.
+     */
+    void release(double threshold) {
+        synchronized (MemoryGovernor.class) {
+            thresholds.remove(Double.valueOf(threshold));
+            updateThreshold();
+        }
+    }
+
+    /**
+     * Returns true if the usage of a heap pool after the last collection 
+     * exceeds the given fraction of the maximum size of the pool.
+     */
+    boolean exceeds(double threshold) {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            final MemoryUsage usage = (pool.getType() == MemoryType.HEAP && pool.isCollectionUsageThresholdSupported()) ? 
+                    pool.getCollectionUsage() : null;
+            final long max = pool.getUsage().getMax();
+            if (usage != null && max > 0 && usage.getUsed() >= (long) (max * threshold)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the number of times the heap usage after a collection has exceeded the threshold.
+     */
+    long getPressureCount() {
+        return pressureCount.get();
+    }
+
+    private void updateThreshold() {
+        // A threshold of zero disables the notifications.
+        final double threshold = thresholds.isEmpty() ? 0 : Collections.min(thresholds);
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            final long max = pool.getUsage().getMax();
+            if (pool.getType() == MemoryType.HEAP && pool.isCollectionUsageThresholdSupported() && max > 0) {
+                pool.setCollectionUsageThreshold((long) (max * threshold));
+            }
+        }
+    }
+
+    private static long getHeapUsed() {
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    private static long getHeapMax() {
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getMax();
+    }
+
+    private static long toMegabytes(long bytes) {
+        return bytes / (1024L * 1024);
+    }
+}
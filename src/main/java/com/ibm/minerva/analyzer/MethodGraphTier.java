@@ -0,0 +1,43 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+
+package com.ibm.minerva.analyzer;
+
+import java.util.Arrays;
+import java.util.Optional;
+
+/**
+ * The information included in the method level call graph.
+ */
+public enum MethodGraphTier {
+    
+    /**
+     * Only the call edges between methods. No SDG is built.
+     */
+    CALL_GRAPH,
+    
+    /**
+     * The call edges and the data and control dependencies between methods,
+     * computed from an SDG.
+     */
+    DATA_DEPENDENCE;
+    
+    public static Optional<MethodGraphTier> find(String name) {
+        return Arrays.stream(values()).filter(x -> x.name().equalsIgnoreCase(name)).findFirst();
+    }
+}
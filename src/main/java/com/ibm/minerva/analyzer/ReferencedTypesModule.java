@@ -0,0 +1,99 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+
+package com.ibm.minerva.analyzer;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Logger;
+
+import com.ibm.wala.classLoader.Module;
+import com.ibm.wala.classLoader.ModuleEntry;
+
+/**
+ * A module which only exposes the classes of the standard libraries that are referenced 
+ * by the application, together with the closure of their super types.
+ */
+final class ReferencedTypesModule implements Module {
+
+    private static final Logger logger = LoggingUtil.getLogger(ReferencedTypesModule.class);
+
+    // Types which WALA expects to find in the primordial scope regardless 
+    // of whether the application references them directly.
+    private static final List<String> REQUIRED_TYPES = Collections.unmodifiableList(Arrays.asList(
+            "java/lang/Object",
+            "java/lang/String",
+            "java/lang/Class",
+            "java/lang/Cloneable",
+            "java/io/Serializable",
+            "java/lang/Throwable",
+            "java/lang/Error",
+            "java/lang/Exception",
+            "java/lang/RuntimeException",
+            "java/lang/ArithmeticException",
+            "java/lang/ArrayIndexOutOfBoundsException",
+            "java/lang/ArrayStoreException",
+            "java/lang/ClassCastException",
+            "java/lang/ClassNotFoundException",
+            "java/lang/IllegalMonitorStateException",
+            "java/lang/NegativeArraySizeException",
+            "java/lang/NullPointerException",
+            "java/lang/Boolean",
+            "java/lang/Byte",
+            "java/lang/Character",
+            "java/lang/Double",
+            "java/lang/Float",
+            "java/lang/Integer",
+            "java/lang/Long",
+            "java/lang/Short",
+            "java/lang/Runnable",
+            "java/lang/Thread"));
+
+    private final List<ModuleEntry> entries;
+
+    ReferencedTypesModule(StandardLibraries libraries, Set<String> referencedTypes) {
+        final Set<String> visited = new HashSet<>();
+        final Deque<String> worklist = new ArrayDeque<>(REQUIRED_TYPES);
+        worklist.addAll(referencedTypes);
+        final List<ModuleEntry> closure = new ArrayList<>();
+        while (!worklist.isEmpty()) {
+            final String name = worklist.pop();
+            if (visited.add(name)) {
+                final ModuleEntry entry = libraries.getEntry(name);
+                if (entry != null) {
+                    closure.add(entry);
+                    libraries.getSuperTypes(entry).forEach(worklist::push);
+                }
+            }
+        }
+        this.entries = closure;
+        logger.info(() -> MessageFormatter.formatMessage("CallGraphRestrictedJdkScope", closure.size(), libraries.size()));
+    }
+
+    @Override
+    public Iterator<? extends ModuleEntry> getEntries() {
+        return entries.iterator();
+    }
+}
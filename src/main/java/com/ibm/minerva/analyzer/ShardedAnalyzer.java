@@ -0,0 +1,398 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+
+package com.ibm.minerva.analyzer;
+
+import static com.ibm.minerva.analyzer.MessageFormatter.formatMessage;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+/**
+ * Scans the archives of an application in several worker processes and merges their
+ * results into one {@link AnalysisCheckpoint}, from which an {@link Analyzer} created
+ * with {@link Analyzer#resume(File, File)} writes the tables and builds the call graph.
+ * <p>
+ * The top level entries of the archives (e.g. the modules of an EAR or the packages of
+ * a JAR) are split into consecutive ranges of about the same compressed size, one for 
+ * each shard, and each worker writes the classes found in its shard to a checkpoint. The
+ * checkpoints are merged in the order of the shards, whatever the order in which the
+ * workers complete, so the merged checkpoint holds the classes in the same order as a 
+ * scan in a single process. The analysis resumed from it therefore numbers duplicate
+ * classes and fills in the Dup_Class mappings exactly as a single process would.
+ */
+public final class ShardedAnalyzer {
+
+    private static final Logger logger = LoggingUtil.getLogger(ShardedAnalyzer.class);
+
+    private static final String SHARD_FILE_NAME = "shard.json";
+    private static final String CHECKPOINT_DIR = "checkpoint";
+    private static final String LOG_FILE_NAME = "worker.log";
+
+    private final File[] archives;
+    private final File workDir;
+    private int shardCount = Runtime.getRuntime().availableProcessors();
+    private int maxConcurrentWorkers;
+    private List<String> workerJvmArguments = Collections.emptyList();
+    private String workerClassPath = System.getProperty("java.class.path");
+
+    public ShardedAnalyzer(File[] archives, File workDir) {
+        if (archives == null || Arrays.stream(archives).anyMatch(x -> x == null) || workDir == null) {
+            throw new NullPointerException();
+        }
+        this.archives = archives;
+        this.workDir = workDir;
+    }
+
+    /**
+     * Sets the number of shards. Fewer shards are used if the archives 
+     * have fewer top level entries. The default is the number of processors.
+     */
+    public ShardedAnalyzer setShardCount(int shardCount) {
+        this.shardCount = Math.max(1, shardCount);
+        return this;
+    }
+
+    /**
+     * Sets the maximum number of worker processes which run at the same 
+     * time. If not positive (the default), all workers run at the same time.
+     */
+    public ShardedAnalyzer setMaxConcurrentWorkers(int maxConcurrentWorkers) {
+        this.maxConcurrentWorkers = maxConcurrentWorkers;
+        return this;
+    }
+
+    /**
+     * Sets the arguments (e.g. "-Xmx4g") of the JVMs in which the workers run.
+     */
+    public ShardedAnalyzer setWorkerJvmArguments(List<String> workerJvmArguments) {
+        this.workerJvmArguments = (workerJvmArguments != null) ? workerJvmArguments : Collections.emptyList();
+        return this;
+    }
+
+    /**
+     * Sets the class path of the workers, which must include the analyzer 
+     * and its dependencies. The default is the class path of this JVM.
+     */
+    public ShardedAnalyzer setWorkerClassPath(String workerClassPath) {
+        this.workerClassPath = workerClassPath;
+        return this;
+    }
+
+    /**
+     * Scans the archives in worker processes, merges their results and returns the
+     * directory of the merged checkpoint. The output of each worker is written to
+     * a log file in the work directory.
+     */
+    public File scan() throws IOException {
+        final List<List<Segment>> shards = planShards();
+        logger.info(() -> formatMessage("ShardPlan", shards.size(), archives.length));
+        final int concurrency = (maxConcurrentWorkers > 0) ? Math.min(maxConcurrentWorkers, shards.size()) : shards.size();
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, concurrency));
+        try {
+            final List<Future<File>> workers = new ArrayList<>();
+            for (int i = 0; i < shards.size(); ++i) {
+                final int shard = i;
+                workers.add(executor.submit(() -> runWorker(shard, shards.size(), shards.get(shard))));
+            }
+            final List<File> shardCheckpoints = new ArrayList<>();
+            for (Future<File> worker : workers) {
+                shardCheckpoints.add(getResult(worker));
+            }
+            final File merged = merge(shardCheckpoints);
+            shardCheckpoints.forEach(ShardedAnalyzer::delete);
+            return merged;
+        }
+        finally {
+            // Stops the remaining workers if one has failed.
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Merges the checkpoints of the shards, given in the order of the shards, 
+     * into one checkpoint in the work directory and returns its directory.
+     */
+    File merge(List<File> shardCheckpoints) throws IOException {
+        // The results are merged in the order of the shards, not in the order the workers complete.
+        final AnalysisCheckpoint merged = new AnalysisCheckpoint(new File(workDir, CHECKPOINT_DIR));
+        logger.info(() -> formatMessage("ShardMerge", shardCheckpoints.size(), merged.getDirectory()));
+        if (!merged.begin()) {
+            throw new IOException(formatMessage("ShardCheckpointWriteError", merged.getDirectory()));
+        }
+        boolean complete = false;
+        try {
+            for (File shardCheckpoint : shardCheckpoints) {
+                merged.addClasses(new AnalysisCheckpoint(shardCheckpoint));
+            }
+            complete = merged.complete(archives, Collections.emptyList());
+        }
+        finally {
+            if (!complete) {
+                merged.abort();
+            }
+        }
+        if (!complete) {
+            throw new IOException(formatMessage("ShardCheckpointWriteError", merged.getDirectory()));
+        }
+        return merged.getDirectory();
+    }
+
+    private File runWorker(int shard, int shards, List<Segment> segments) throws IOException {
+        final File shardDir = new File(workDir, "shard-" + (shard + 1));
+        if (!shardDir.isDirectory() && !shardDir.mkdirs()) {
+            throw new IOException(shardDir.getAbsolutePath());
+        }
+        final File shardFile = new File(shardDir, SHARD_FILE_NAME);
+        final JsonArray array = new JsonArray();
+        segments.forEach(s -> array.add(s.toJson()));
+        final JsonObject o = new JsonObject();
+        o.add("segments", array);
+        try (Writer w = new OutputStreamWriter(new FileOutputStream(shardFile), StandardCharsets.UTF_8)) {
+            new GsonBuilder().setPrettyPrinting().create().toJson(o, w);
+        }
+        final File checkpointDir = new File(shardDir, CHECKPOINT_DIR);
+        final File log = new File(shardDir, LOG_FILE_NAME);
+        final List<String> command = new ArrayList<>();
+        command.add(new File(new File(System.getProperty("java.home"), "bin"), "java").getPath());
+        command.addAll(workerJvmArguments);
+        command.add("-cp");
+        command.add(workerClassPath);
+        command.add(Worker.class.getName());
+        command.add(shardFile.getAbsolutePath());
+        command.add(checkpointDir.getAbsolutePath());
+        
+        final long start = System.nanoTime();
+        final Process process = new ProcessBuilder(command).redirectErrorStream(true).redirectOutput(log).start();
+        final int exitCode;
+        try {
+            exitCode = process.waitFor();
+        }
+        catch (InterruptedException e) {
+            process.destroyForcibly();
+            throw new InterruptedIOException();
+        }
+        if (exitCode != 0 || !new AnalysisCheckpoint(checkpointDir).exists()) {
+            throw new IOException(formatMessage("ShardFailed", shard + 1, exitCode, log));
+        }
+        final long time = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        logger.info(() -> formatMessage("ShardCompleted", shard + 1, shards, time));
+        return checkpointDir;
+    }
+
+    private static File getResult(Future<File> worker) throws IOException {
+        try {
+            return worker.get();
+        }
+        catch (InterruptedException e) {
+            throw new InterruptedIOException();
+        }
+        catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * Splits the top level entries of the archives into consecutive ranges of about the 
+     * same compressed size. Files other than JAR and ZIP archives are not split.
+     */
+    List<List<Segment>> planShards() {
+        final List<Segment> units = new ArrayList<>();
+        final List<Long> weights = new ArrayList<>();
+        long total = 0;
+        for (File archive : archives) {
+            final BinaryType bt = BinaryType.getBinaryType(archive.getName().toLowerCase(Locale.ENGLISH));
+            boolean split = false;
+            if (bt != BinaryType.CLASS && bt != BinaryType.UNKNOWN && archive.isFile()) {
+                try (ZipFile zip = new ZipFile(archive)) {
+                    final Enumeration<? extends ZipEntry> entries = zip.entries();
+                    int index = 0;
+                    while (entries.hasMoreElements()) {
+                        final long weight = Math.max(1, entries.nextElement().getCompressedSize());
+                        units.add(new Segment(archive, index, index + 1));
+                        weights.add(weight);
+                        total += weight;
+                        ++index;
+                    }
+                    split = true;
+                }
+                catch (IOException e) {
+                    // The worker reports the error when it processes the whole archive.
+                }
+            }
+            if (!split) {
+                final long weight = Math.max(1, archive.length());
+                units.add(new Segment(archive, 0, Integer.MAX_VALUE));
+                weights.add(weight);
+                total += weight;
+            }
+        }
+        final int count = Math.max(1, Math.min(shardCount, units.size()));
+        final List<List<Segment>> shards = new ArrayList<>();
+        int unit = 0;
+        long cumulative = 0;
+        for (int i = 0; i < count; ++i) {
+            final long limit = (i == count - 1) ? Long.MAX_VALUE : total * (i + 1) / count;
+            final List<Segment> shard = new ArrayList<>();
+            // Each shard takes at least one unit and leaves at least one for each of the remaining shards.
+            while (unit < units.size() && (shard.isEmpty() 
+                    || (cumulative + weights.get(unit) / 2 <= limit && units.size() - unit > count - i - 1))) {
+                final Segment s = units.get(unit);
+                final Segment last = shard.isEmpty() ? null : shard.get(shard.size() - 1);
+                if (last != null && last.archive.equals(s.archive) && last.toEntry == s.fromEntry) {
+                    shard.set(shard.size() - 1, new Segment(s.archive, last.fromEntry, s.toEntry));
+                }
+                else {
+                    shard.add(s);
+                }
+                cumulative += weights.get(unit++);
+            }
+            if (!shard.isEmpty()) {
+                shards.add(shard);
+            }
+        }
+        return shards;
+    }
+
+    private static void delete(File file) {
+        final File[] files = file.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                delete(f);
+            }
+        }
+        file.delete();
+    }
+
+    /**
+     * A range of the top level entries of an archive.
+     */
+    static final class Segment {
+
+        final File archive;
+        final int fromEntry;
+        final int toEntry;
+
+        Segment(File archive, int fromEntry, int toEntry) {
+            this.archive = archive;
+            this.fromEntry = fromEntry;
+            this.toEntry = toEntry;
+        }
+
+        JsonObject toJson() {
+            final JsonObject o = new JsonObject();
+            o.addProperty("archive", archive.getAbsolutePath());
+            o.addProperty("fromEntry", fromEntry);
+            o.addProperty("toEntry", toEntry);
+            return o;
+        }
+
+        static Segment fromJson(JsonObject o) {
+            return new Segment(new File(o.get("archive").getAsString()), 
+                    o.get("fromEntry").getAsInt(), o.get("toEntry").getAsInt());
+        }
+    }
+
+    /**
+     * The main class of the worker processes. Its arguments are the shard 
+     * file and the directory of the checkpoint to which the classes are written.
+     */
+    static final class Worker {
+
+        public static void main(String[] args) {
+            try {
+                scan(new File(args[0]), new File(args[1]));
+            }
+            catch (Throwable t) {
+                t.printStackTrace();
+                System.exit(1);
+            }
+        }
+
+        private static void scan(File shardFile, File checkpointDir) throws IOException {
+            final List<Segment> segments = new ArrayList<>();
+            try (Reader r = new InputStreamReader(new FileInputStream(shardFile), StandardCharsets.UTF_8)) {
+                JsonParser.parseReader(r).getAsJsonObject().getAsJsonArray("segments").forEach(e -> segments.add(Segment.fromJson(e.getAsJsonObject())));
+            }
+            scan(segments, checkpointDir);
+        }
+
+        /**
+         * Writes the classes found in the given segments to a checkpoint in the given directory.
+         */
+        static void scan(List<Segment> segments, File checkpointDir) throws IOException {
+            final List<File> archives = new ArrayList<>();
+            segments.forEach(s -> {
+                if (!archives.contains(s.archive)) {
+                    archives.add(s.archive);
+                }
+            });
+            // The tables are not built by the workers. Only the summaries of the classes are needed.
+            final AnalysisMetrics metrics = new AnalysisMetrics();
+            final TableBuilder tb = new TableBuilder(checkpointDir, TableBuilderConfiguration.NONE);
+            tb.setAnalysisMetrics(metrics);
+            final AnalysisCheckpoint checkpoint = new AnalysisCheckpoint(checkpointDir);
+            if (!checkpoint.begin()) {
+                throw new IOException(formatMessage("ShardCheckpointWriteError", checkpointDir));
+            }
+            tb.setAnalysisCheckpoint(checkpoint);
+            final ArchiveProcessor processor = new ArchiveProcessor(tb, new AnalysisProgress(), metrics);
+            final AnalysisMetrics.Timer timer = metrics.startPhase(AnalysisMetrics.ARCHIVE_SCAN);
+            for (Segment s : segments) {
+                logger.info(() -> formatMessage("AnalyzingArchive", s.archive));
+                processor.processBinaryFile(s.archive, s.fromEntry, s.toEntry);
+            }
+            timer.close();
+            if (!checkpoint.complete(archives.toArray(new File[archives.size()]), Collections.emptyList())) {
+                throw new IOException(formatMessage("ShardCheckpointWriteError", checkpointDir));
+            }
+            metrics.write(checkpointDir.getParentFile());
+        }
+    }
+}
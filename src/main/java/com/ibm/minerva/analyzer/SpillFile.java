@@ -0,0 +1,116 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+
+package com.ibm.minerva.analyzer;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+
+/**
+ * A temporary file holding the entries of a JSON object (e.g. the symbol table) which 
+ * have been moved out of the heap. The entries are read back in the order they were
+ * written. An entry is only read back once the batch it was written in is committed, 
+ * so a batch which could not be written in full is ignored. No entries may be written
+ * after such a batch.
+ */
+final class SpillFile implements Closeable {
+
+    @FunctionalInterface
+    interface EntryConsumer {
+        public void accept(String key, JsonElement value) throws IOException;
+    }
+
+    private final File file;
+    private final Writer writer;
+    private final Gson gson = new GsonBuilder().serializeNulls().create();
+    private int written;
+    private int committed;
+
+    SpillFile() throws IOException {
+        this.file = File.createTempFile("minerva", ".spill");
+        this.writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8));
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    /**
+     * Returns the number of committed entries.
+     */
+    int size() {
+        return committed;
+    }
+
+    void write(String key, JsonElement value) throws IOException {
+        // One entry per line. Line breaks in strings are escaped by the compact format.
+        final JsonArray entry = new JsonArray();
+        entry.add(key);
+        entry.add(value);
+        gson.toJson(entry, writer);
+        writer.write('\n');
+        ++written;
+    }
+
+    /**
+     * Makes the entries written since the last commit readable.
+     */
+    void commit() throws IOException {
+        writer.flush();
+        committed = written;
+    }
+
+    /**
+     * Reads the committed entries in the order they were written.
+     */
+    void forEach(EntryConsumer consumer) throws IOException {
+        writer.flush();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            for (int i = 0; i < committed; ++i) {
+                final JsonArray entry = JsonParser.parseString(reader.readLine()).getAsJsonArray();
+                consumer.accept(entry.get(0).getAsString(), entry.get(1));
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            writer.close();
+        }
+        catch (IOException e) {
+            // Ignored. The file is deleted anyway.
+        }
+        file.delete();
+    }
+}
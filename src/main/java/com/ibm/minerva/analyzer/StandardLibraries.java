@@ -0,0 +1,167 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+
+package com.ibm.minerva.analyzer;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.jar.JarFile;
+import java.util.logging.Logger;
+
+import com.ibm.wala.classLoader.JarFileModule;
+import com.ibm.wala.classLoader.Module;
+import com.ibm.wala.classLoader.ModuleEntry;
+import com.ibm.wala.properties.WalaProperties;
+
+import javassist.bytecode.ClassFile;
+
+/**
+ * The modules of the standard libraries added to the call graph analysis scope. They
+ * are opened, indexed and parsed once per JVM and shared by the call graph builders
+ * of all the analyses run in it (e.g. by a {@link BatchAnalyzer}), since they only
+ * depend on the Java runtime.
+ */
+final class StandardLibraries {
+
+    private static final Logger logger = LoggingUtil.getLogger(StandardLibraries.class);
+
+    private static StandardLibraries instance;
+
+    private final List<Module> modules;
+    // The class entries of the modules by class name (e.g. java/lang/Object). Built on first use.
+    private Map<String,ModuleEntry> index;
+    // The super class and interfaces of the classes whose entries have been read.
+    private final Map<String,List<String>> superTypes = new ConcurrentHashMap<>();
+
+    private StandardLibraries(List<Module> modules) {
+        this.modules = Collections.unmodifiableList(modules);
+    }
+
+    /**
+     * Returns the standard libraries of the Java runtime, opening them on first use.
+     */
+    static synchronized StandardLibraries get() throws IOException {
+        if (instance == null) {
+            final List<Module> modules = new ArrayList<>();
+            try {
+                modules.add(getJavaBaseModule());
+            }
+            catch (Throwable t) {
+                // Fall back to using the default method for collecting the J2SE jars
+                // files when the JrtModule for "java.base" cannot be loaded. This is
+                // expected if the analyzer is being run with Java 8.
+                for (String stdlib : WalaProperties.getJ2SEJarFiles()) {
+                    modules.add(new JarFileModule(new JarFile(stdlib)));
+                }
+            }
+            instance = new StandardLibraries(modules);
+        }
+        return instance;
+    }
+
+    /**
+     * Releases the standard libraries. They are opened again when next used.
+     */
+    static synchronized void release() {
+        instance = null;
+    }
+
+    List<Module> getModules() {
+        return modules;
+    }
+
+    /**
+     * Returns the entry of the given class (e.g. java/lang/Object), or null if not found.
+     */
+    ModuleEntry getEntry(String className) {
+        return getIndex().get(className);
+    }
+
+    /**
+     * Returns the number of classes in the standard libraries.
+     */
+    int size() {
+        return getIndex().size();
+    }
+
+    /**
+     * Returns the names of the super class and interfaces of the class of the given entry.
+     */
+    List<String> getSuperTypes(ModuleEntry entry) {
+        return superTypes.computeIfAbsent(entry.getClassName(), x -> readSuperTypes(entry));
+    }
+
+    private synchronized Map<String,ModuleEntry> getIndex() {
+        if (index == null) {
+            final Map<String,ModuleEntry> map = new HashMap<>();
+            modules.forEach(m -> index(m, map));
+            index = map;
+        }
+        return index;
+    }
+
+    private static void index(Module m, Map<String,ModuleEntry> index) {
+        final Iterator<? extends ModuleEntry> i = m.getEntries();
+        while (i.hasNext()) {
+            final ModuleEntry entry = i.next();
+            if (entry.isClassFile()) {
+                index.putIfAbsent(entry.getClassName(), entry);
+            }
+            else if (entry.isModuleFile()) {
+                index(entry.asModule(), index);
+            }
+        }
+    }
+
+    private static List<String> readSuperTypes(ModuleEntry entry) {
+        final List<String> result = new ArrayList<>();
+        try (InputStream is = entry.getInputStream()) {
+            final ClassFile cf = new ClassFile(new DataInputStream(is));
+            final String superClass = cf.getSuperclass();
+            if (superClass != null) {
+                result.add(superClass.replace('.', '/'));
+            }
+            final String[] interfaces = cf.getInterfaces();
+            if (interfaces != null) {
+                Arrays.stream(interfaces).forEach(x -> result.add(x.replace('.', '/')));
+            }
+        }
+        catch (IOException e) {
+            logger.finest(() -> MessageFormatter.formatMessage("ArchiveReadError", 
+                    BinaryType.CLASS.getExtension(), e.getMessage()));
+        }
+        return result;
+    }
+
+    private static Module getJavaBaseModule() throws Exception {
+        // Using reflection to avoid a compile time dependency on JrtModule.
+        Class<?> clazz = Class.forName("com.ibm.wala.core.java11.JrtModule");
+        Constructor<?> c = clazz.getConstructor(String.class);
+        return (Module) c.newInstance("java.base");
+    }
+}
@@ -20,16 +20,20 @@ package com.ibm.minerva.analyzer;
 
 import static com.ibm.minerva.analyzer.MessageFormatter.formatMessage;
 
+import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -40,6 +44,9 @@ import com.google.gson.GsonBuilder;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonWriter;
+import com.ibm.minerva.analyzer.jfr.AnalyzerEvents;
+import com.ibm.minerva.analyzer.jfr.EventScope;
 
 import javassist.Modifier;
 import javassist.bytecode.SignatureAttribute;
@@ -55,11 +62,16 @@ public final class TableBuilder implements ApplicationProcessor {
     private static final String CALL_GRAPH_FILE_NAME = "callGraph.json";
     private static final String CALL_GRAPH_METHODS_FILE_NAME = "callGraph-methods.json";
 
+    private static final int WRITE_BUFFER_SIZE = 1 << 16;
+
     private final File tableDir;
     private final TableBuilderConfiguration config;
 
-    private final JsonObject symTable;
-    private final JsonObject refTable;
+    private JsonObject symTable;
+    private JsonObject refTable;
+    // The symbol table entries spilled to disk under memory pressure, and the "file" of each entry.
+    private SpillFile symTableSpill;
+    private Map<String,String> spilledSymTableFiles = new HashMap<>();
 
     private final Set<String> fqcns = new LinkedHashSet<>();
     private final Set<String> duplicateClasses = new LinkedHashSet<>();
@@ -75,6 +87,15 @@ public final class TableBuilder implements ApplicationProcessor {
     private boolean isPackageIncludeList;
     private boolean allowAnyLegalClasses;
     private boolean useSystemOut;
+    private AnalysisProgress progress = new AnalysisProgress();
+    private AnalysisMetrics metrics = new AnalysisMetrics();
+    private AnalysisCache cache;
+    private AnalysisCheckpoint checkpoint;
+    private MemoryGovernor memoryGovernor;
+    private double spillThreshold;
+    private long memoryPressureCount;
+    private boolean concurrentWrites;
+    private BackgroundWrites tableWrites;
 
     public TableBuilder(File tableDir, TableBuilderConfiguration config) {
         this.tableDir = tableDir;
@@ -95,50 +116,103 @@ public final class TableBuilder implements ApplicationProcessor {
     }
 
     public void process(ClassProcessor cp, byte[] bytes) {
-        final String fqcn = cp.toFQCN();
-        final String simpleName = cp.getCtClass().getSimpleName();
-        
-        if (simpleName != null && simpleName.length() > 0) {
-        	final int index = simpleName.lastIndexOf('$');
-            if (index >= 0) {
-            	allInnerClasses.add(fqcn);
+        final ClassSummary summary;
+        if (cache != null || checkpoint != null) {
+            // The summary is stored with the symbol table object even if the class is skipped 
+            // by this analysis, so that it can be reused by analyses with other options.
+            summary = new ClassSummary(cp, createSymTableClassObject(cp), cp.getCtClass().getRefClasses());
+            if (cache != null) {
+                cache.putClass(cache.hash(bytes), summary);
             }
         }
-        
-        if (cp.getCtClass().isInterface()) {
-        	allInterfaces.add(fqcn);
+        else {
+            summary = new ClassSummary(cp, null, null);
+        }
+        process(summary, cp, bytes);
+    }
+
+    public boolean processCached(ClassSummary summary, byte[] bytes) {
+        // The call graph builder and the checkpoint need the class file. The symbol 
+        // table object is always present in summaries written by this class.
+        if ((bytes == null && (callGraphBuilder != null || checkpoint != null)) || summary.getSymTableClassObject() == null) {
+            return false;
         }
+        process(summary, null, bytes);
+        return true;
+    }
 
-        if (isIncludedPackage(cp) && cp.isStandardNamedClass(allowAnyLegalClasses)) {
-            if (!fqcns.contains(fqcn)) {
-                logger.info(() -> formatMessage("AnalyzingClass", cp.getCtClass().getName()));
-                if (config.generateSymRefTables()) {
-                    addToRefTable(cp, addToSymTable(cp));
+    private void process(ClassSummary summary, ClassProcessor cp, byte[] bytes) {
+        if (memoryGovernor != null && memoryGovernor.getPressureCount() != memoryPressureCount) {
+            memoryPressureCount = memoryGovernor.getPressureCount();
+            // The pressure may have been reported for the lower threshold of another analysis.
+            if (memoryGovernor.exceeds(spillThreshold)) {
+                spillSymTable();
+            }
+        }
+        if (checkpoint != null) {
+            checkpoint.addClass(summary, bytes);
+        }
+        final String fqcn = summary.toFQCN();
+        try (EventScope event = AnalyzerEvents.classProcess(fqcn)) {
+            final String simpleName = summary.getSimpleName();
+        
+            if (simpleName != null && simpleName.length() > 0) {
+            	final int index = simpleName.lastIndexOf('$');
+                if (index >= 0) {
+                	allInnerClasses.add(fqcn);
                 }
-                fqcns.add(fqcn);
-                if (callGraphBuilder != null) {
-                    callGraphBuilder.addToScope(cp, bytes);
+            }
+        
+            if (summary.isInterface()) {
+            	allInterfaces.add(fqcn);
+            }
+
+            if (isIncludedPackage(summary.getPackageName()) && summary.isStandardNamedClass(allowAnyLegalClasses)) {
+                if (!fqcns.contains(fqcn)) {
+                    logger.info(() -> formatMessage("AnalyzingClass", summary.getName()));
+                    if (config.generateSymRefTables()) {
+                        try (AnalysisMetrics.Timer timer = metrics.startPhase(AnalysisMetrics.TABLE_BUILD)) {
+                            final JsonObject classObject = (summary.getSymTableClassObject() != null) ?
+                                    summary.getSymTableClassObject() : createSymTableClassObject(cp);
+                            addToRefTable(summary, addToSymTable(summary, classObject));
+                        }
+                    }
+                    metrics.increment(AnalysisMetrics.CLASSES_ANALYZED);
+                    fqcns.add(fqcn);
+                    if (callGraphBuilder != null) {
+                        if (cp != null) {
+                            callGraphBuilder.addToScope(cp, bytes);
+                        }
+                        else {
+                            callGraphBuilder.addToScope(summary, bytes);
+                        }
+                    }
+                }
+                // This reduces reporting of duplicate classes if more than 
+                // two instances of the same class exist in the archive.
+                else {
+                    metrics.increment(AnalysisMetrics.CLASSES_DUPLICATED);
+                    if (!duplicateClasses.contains(fqcn)) {
+                        logger.warning(() -> formatMessage("DuplicateClass", summary.getName()));
+                        duplicateClasses.add(fqcn);
+                    }
                 }
             }
-            // This reduces reporting of duplicate classes if more than 
-            // two instances of the same class exist in the archive.
-            else if (!duplicateClasses.contains(fqcn)) {
-                logger.warning(() -> formatMessage("DuplicateClass", cp.getCtClass().getName()));
-                duplicateClasses.add(fqcn);
+            // This reduces reporting of skipped classes if more than one
+            // instance of the skipped class exists in the archive.
+            else {
+                metrics.increment(AnalysisMetrics.CLASSES_SKIPPED);
+                if (!skippedClasses.contains(fqcn)) {
+                    logger.finest(() -> formatMessage("SkippedClass", summary.getName()));
+                    skippedClasses.add(fqcn);
+                }
             }
         }
-        // This reduces reporting of skipped classes if more than one
-        // instance of the skipped class exists in the archive.
-        else if (!skippedClasses.contains(fqcn)) {
-            logger.finest(() -> formatMessage("SkippedClass", cp.getCtClass().getName()));
-            skippedClasses.add(fqcn);
-        }
     }
 
-    private boolean isIncludedPackage(ClassProcessor cp) {
+    private boolean isIncludedPackage(String packageName) {
         // Check if the class is a member of an include or exclude list if one was specified.
         if (packages != null) {
-            final String packageName = cp.getPackageName();
             final boolean match;
             // Handle the special case of the default package (represented by null).
             if (packageName != null) {
@@ -169,31 +243,141 @@ public final class TableBuilder implements ApplicationProcessor {
         this.useSystemOut = useSystemOut;
     }
 
+    public void setAnalysisProgress(AnalysisProgress progress) {
+        this.progress = (progress != null) ? progress : new AnalysisProgress();
+    }
+
+    public void setAnalysisMetrics(AnalysisMetrics metrics) {
+        this.metrics = (metrics != null) ? metrics : new AnalysisMetrics();
+    }
+
+    public void setAnalysisCache(AnalysisCache cache) {
+        this.cache = cache;
+    }
+
+    public void setAnalysisCheckpoint(AnalysisCheckpoint checkpoint) {
+        this.checkpoint = checkpoint;
+    }
+
+    /**
+     * If positive, the symbol table entries built so far are spilled to a temporary file
+     * whenever the heap usage left after a garbage collection exceeds the given fraction 
+     * of the maximum heap size. They are streamed back when the tables are written.
+     */
+    public void setSpillThreshold(double threshold) {
+        releaseMemoryGovernor();
+        if (threshold > 0) {
+            spillThreshold = threshold;
+            memoryGovernor = MemoryGovernor.acquire(threshold);
+            memoryPressureCount = memoryGovernor.getPressureCount();
+        }
+    }
+
+    /**
+     * If true, the tables are written on background threads while the call graph is 
+     * built. {@link #writeCallGraph()} then waits for them and reports their failures.
+     */
+    public void setConcurrentWrites(boolean concurrentWrites) {
+        this.concurrentWrites = concurrentWrites;
+    }
+
     public void write() throws IOException {
+        writeTables();
+        writeCallGraph();
+    }
+
+    /**
+     * Writes the symbol table, the reference table and the instrumenter configuration,
+     * and then releases the structures built for them while the classes were processed,
+     * so that they can be collected before the call graph is built. No more classes may
+     * be processed afterwards.
+     */
+    public void writeTables() throws IOException {
+        progress.checkCanceled();
+        progress.setPhase(AnalysisProgress.Phase.WRITING);
+        final AnalysisMetrics.Timer timer = metrics.startPhase(AnalysisMetrics.TABLE_WRITE);
         removeInnerClassesInsideInterfaces();
         resolveDuplicateClassMappings();
         if (tableDir.mkdirs()) {
             logger.info(() -> formatMessage("DirectoryCreated", tableDir));
         }
-        Gson gson = new GsonBuilder().serializeNulls().create();
+        final List<BackgroundWrites.Write> writes = createTableWrites(symTable, refTable, symTableSpill, spilledSymTableFiles);
+        if (concurrentWrites && !writes.isEmpty()) {
+            // The tables are written while the call graph is being built. 
+            // Each one can be collected as soon as it has been written.
+            tableWrites = new BackgroundWrites("minerva-table-writer", writes.size());
+            writes.forEach(write -> tableWrites.submit(() -> {
+                try (AnalysisMetrics.Timer writeTimer = metrics.startPhase(AnalysisMetrics.TABLE_WRITE_BACKGROUND)) {
+                    write.run();
+                }
+            }));
+        }
+        else {
+            for (BackgroundWrites.Write write : writes) {
+                progress.checkCanceled();
+                write.run();
+            }
+        }
+        timer.close();
+        releaseTables();
+    }
+
+    /**
+     * Returns the writes of the table documents. They are given the tables to write 
+     * rather than reading the fields, which are cleared once the writes are created.
+     */
+    private List<BackgroundWrites.Write> createTableWrites(JsonObject symTable, JsonObject refTable, 
+            SpillFile symTableSpill, Map<String,String> spilledSymTableFiles) {
+        final List<BackgroundWrites.Write> writes = new ArrayList<>();
         if (config.generateSymRefTables()) {
             // Write symTable.json.
-            try (Writer symTableWriter = createWriter(SYM_TABLE_FILE_NAME)) {
-                gson.toJson(symTable, symTableWriter);
-            }
+            writes.add(() -> {
+                final Gson gson = new GsonBuilder().serializeNulls().create();
+                try (EventScope event = AnalyzerEvents.jsonExport(SYM_TABLE_FILE_NAME).setCount(symTable.size() + spilledSymTableFiles.size());
+                        Writer symTableWriter = createWriter(SYM_TABLE_FILE_NAME)) {
+                    if (symTableSpill != null) {
+                        writeSymTable(gson, symTableWriter, symTable, symTableSpill, spilledSymTableFiles);
+                    }
+                    else {
+                        gson.toJson(symTable, symTableWriter);
+                    }
+                }
+                finally {
+                    if (symTableSpill != null) {
+                        symTableSpill.close();
+                    }
+                }
+            });
             // Write refTable.json.
-            try (Writer refTableWriter = createWriter(REF_TABLE_FILE_NAME)) {
-                gson.toJson(refTable, refTableWriter);
-            }
+            writes.add(() -> {
+                final Gson gson = new GsonBuilder().serializeNulls().create();
+                try (EventScope event = AnalyzerEvents.jsonExport(REF_TABLE_FILE_NAME).setCount(refTable.size());
+                        Writer refTableWriter = createWriter(REF_TABLE_FILE_NAME)) {
+                    gson.toJson(refTable, refTableWriter);
+                }
+            });
         }
-        gson = new GsonBuilder().serializeNulls().setPrettyPrinting().create();
         if (config.generateInstrumentationConfig()) {
             // Write instrumenter-config.json.
-            try (Writer agentConfigWriter = createWriter(AGENT_CONFIG_FILE_NAME)) {
-                gson.toJson(createAgentConfiguration(), agentConfigWriter);
-            }
+            writes.add(() -> {
+                final Gson gson = new GsonBuilder().serializeNulls().setPrettyPrinting().create();
+                try (EventScope event = AnalyzerEvents.jsonExport(AGENT_CONFIG_FILE_NAME);
+                        Writer agentConfigWriter = createWriter(AGENT_CONFIG_FILE_NAME)) {
+                    gson.toJson(createAgentConfiguration(), agentConfigWriter);
+                }
+            });
         }
+        return writes;
+    }
+
+    /**
+     * Builds the call graph and writes the call graph documents. This is done after
+     * {@link #writeTables()}, once the tables are no longer held in memory.
+     */
+    public void writeCallGraph() throws IOException {
+        progress.checkCanceled();
         if (callGraphBuilder != null) {
+            final Gson gson = new GsonBuilder().serializeNulls().setPrettyPrinting().create();
             // Write callGraph.json.
             if (!writeCallGraphs(CALL_GRAPH_FILE_NAME, CALL_GRAPH_METHODS_FILE_NAME)) {
                 // Write empties JSON documents if no call graph was generated.
@@ -205,9 +389,61 @@ public final class TableBuilder implements ApplicationProcessor {
                 }
             }
         }
+        if (tableWrites != null) {
+            final BackgroundWrites writes = tableWrites;
+            tableWrites = null;
+            writes.await();
+        }
+    }
+
+    /**
+     * Drops the tables and everything else that is only needed while classes are 
+     * being processed. The call graph builder keeps what it needs on its own.
+     */
+    private void releaseTables() {
+        // The spill file is closed once the symbol table has been written.
+        symTable = null;
+        refTable = null;
+        symTableSpill = null;
+        spilledSymTableFiles = null;
+        fqcns.clear();
+        duplicateClasses.clear();
+        skippedClasses.clear();
+        duplicateClassMap.clear();
+        allInterfaces.clear();
+        allInnerClasses.clear();
+        cache = null;
+        checkpoint = null;
+        releaseMemoryGovernor();
+    }
+
+    /**
+     * Removes the spill threshold from the governor, which is shared by the analyses run in the JVM.
+     */
+    private void releaseMemoryGovernor() {
+        if (memoryGovernor != null) {
+            memoryGovernor.release(spillThreshold);
+            memoryGovernor = null;
+        }
     }
 
     public void clean() {
+        if (tableWrites != null) {
+            // The writes are only still pending if the call graph could not be written.
+            try {
+                tableWrites.await();
+            }
+            catch (IOException | RuntimeException e) {
+                logger.warning(() -> formatMessage("TableWriteError", e.getMessage()));
+            }
+            tableWrites = null;
+        }
+        // The tables are not released if the analysis failed before writing them.
+        releaseMemoryGovernor();
+        if (symTableSpill != null) {
+            symTableSpill.close();
+            symTableSpill = null;
+        }
         if (callGraphBuilder != null) {
             callGraphBuilder.clean();
         }
@@ -222,19 +458,91 @@ public final class TableBuilder implements ApplicationProcessor {
         if (writeMessage) {
             logger.info(() -> formatMessage("WritingFile", f));
         }
-        OutputStream os = new FileOutputStream(f);
-        return new OutputStreamWriter(os, "UTF-8");
+        return new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(f.toPath()), 
+                StandardCharsets.UTF_8), WRITE_BUFFER_SIZE);
     }
 
     private boolean writeCallGraphs(String file1, String file2) throws IOException {
         return callGraphBuilder.write(new File(tableDir, file1), new File(tableDir, file2));
     }
 
-    private String addToSymTable(ClassProcessor cp) {
+    /**
+     * Writes the spilled entries of the symbol table followed by those in memory, which
+     * is the order in which they were added, in the same format as the whole table.
+     */
+    private void writeSymTable(Gson gson, Writer writer, JsonObject symTable, 
+            SpillFile symTableSpill, Map<String,String> spilledSymTableFiles) throws IOException {
+        final JsonWriter jsonWriter = gson.newJsonWriter(writer);
+        jsonWriter.beginObject();
+        symTableSpill.forEach((key, value) -> {
+            // Skip the entries removed since they were spilled.
+            if (spilledSymTableFiles.containsKey(key)) {
+                jsonWriter.name(key);
+                gson.toJson(value, jsonWriter);
+            }
+        });
+        for (Map.Entry<String,JsonElement> e : symTable.entrySet()) {
+            jsonWriter.name(e.getKey());
+            gson.toJson(e.getValue(), jsonWriter);
+        }
+        jsonWriter.endObject();
+        jsonWriter.flush();
+    }
+
+    /**
+     * Moves the entries of the symbol table to the spill file, keeping the "file" 
+     * of each entry, which is needed to resolve the duplicate class mappings.
+     * Package-private so that the tests can spill without memory pressure.
+     */
+    void spillSymTable() {
+        if (symTable == null || symTable.size() == 0) {
+            return;
+        }
+        final int count = symTable.size();
+        try {
+            if (symTableSpill == null) {
+                symTableSpill = new SpillFile();
+            }
+            for (Map.Entry<String,JsonElement> e : symTable.entrySet()) {
+                symTableSpill.write(e.getKey(), e.getValue());
+            }
+            symTableSpill.commit();
+        }
+        catch (IOException e) {
+            // The entries stay in memory and no more are spilled.
+            logger.warning(() -> formatMessage("SpillWriteError", e.getMessage()));
+            releaseMemoryGovernor();
+            return;
+        }
+        symTable.entrySet().forEach(e -> {
+            final JsonElement file = e.getValue().getAsJsonObject().get("file");
+            spilledSymTableFiles.put(e.getKey(), (file != null && !file.isJsonNull()) ? file.getAsString() : null);
+        });
+        symTable = createSymTable();
+        metrics.add(AnalysisMetrics.SYM_TABLE_ENTRIES_SPILLED, count);
+        logger.info(() -> formatMessage("SymTableSpilled", count, symTableSpill.getFile()));
+    }
+
+    private boolean hasSymTableEntry(String key) {
+        return symTable.has(key) || spilledSymTableFiles.containsKey(key);
+    }
+
+    private boolean removeSymTableEntry(String key) {
+        if (symTable.has(key)) {
+            symTable.remove(key);
+            return true;
+        }
+        if (spilledSymTableFiles.containsKey(key)) {
+            spilledSymTableFiles.remove(key);
+            return true;
+        }
+        return false;
+    }
+
+    private String addToSymTable(ClassSummary cs, JsonObject o) {
         // Compute the symbol table key for the class.
-        String symTableKey = cp.getSimpleName().replace("$", "::");
-        JsonObject o = createSymTableClassObject(cp);
-        if (symTable.has(symTableKey)) {
+        String symTableKey = cs.getSimpleName().replace("$", "::");
+        if (hasSymTableEntry(symTableKey)) {
             Set<String> duplicates = duplicateClassMap.get(symTableKey);
             if (duplicates == null) {
                 duplicates = new LinkedHashSet<>();
@@ -246,7 +554,7 @@ public final class TableBuilder implements ApplicationProcessor {
             do {
                 dupeKey = symTableKey + " [Duplicate_#00" + (i++) + "]";
             }
-            while (symTable.has(dupeKey));
+            while (hasSymTableEntry(dupeKey));
             symTableKey = dupeKey;
             duplicates.add(symTableKey);
         }
@@ -254,18 +562,18 @@ public final class TableBuilder implements ApplicationProcessor {
         return symTableKey;
     }
 
-    private void addToRefTable(ClassProcessor cp, String symTableKey) {
+    private void addToRefTable(ClassSummary cs, String symTableKey) {
         final JsonObject files = refTable.get("Files").getAsJsonObject();
-        final String sourcePath = cp.getSourcePath();
-        final String fqcn = cp.toFQCN();
-        final String localName = cp.getLocalName();
+        final String sourcePath = cs.getSourcePath();
+        final String fqcn = cs.toFQCN();
+        final String localName = cs.getLocalName();
 
         JsonElement e = files.get(sourcePath);
         JsonObject fileObject = (e != null) ? e.getAsJsonObject() : null;
         if (fileObject == null) {
             fileObject = new JsonObject();
             files.add(sourcePath, fileObject);
-            final String pkg = cp.getPackageName();
+            final String pkg = cs.getPackageName();
             if (pkg != null) {
                 fileObject.addProperty("package", pkg);
             }
@@ -294,7 +602,7 @@ public final class TableBuilder implements ApplicationProcessor {
             fileObject = new JsonObject();
             jParser.add(sourcePath, fileObject);
         }
-        fileObject.addProperty(cp.getClassName(), symTableKey);
+        fileObject.addProperty(cs.getClassName(), symTableKey);
     }
 
     private JsonObject createSymTable() {
@@ -642,6 +950,9 @@ public final class TableBuilder implements ApplicationProcessor {
                             JsonObject classObj = e.getAsJsonObject();
                             fileMap.addProperty(classObj.get("file").getAsString(), x);
                         }
+                        else if (spilledSymTableFiles.containsKey(x)) {
+                            fileMap.addProperty(spilledSymTableFiles.get(x), x);
+                        }
                     });
                     dupeClasses.add(k, fileMap);
                 });
@@ -664,8 +975,7 @@ public final class TableBuilder implements ApplicationProcessor {
                         String compoundName = innerClass.substring(parentNameIndex+1);
                         compoundName = compoundName.replace(".$", "::");
                         
-                        if (symTable.has(compoundName)) {
-                            symTable.remove(compoundName);
+                        if (removeSymTableEntry(compoundName)) {
                             // refTable.remove // refTable is more complex because has different entries for the same class
                             // but does not cause a fail in the process when the parent class of a inner class is not in the table
                             fqcns.remove(innerClass);
@@ -0,0 +1,47 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+
+package com.ibm.minerva.analyzer.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.StackTrace;
+
+/**
+ * The fields common to all analyzer events. Each event type describes 
+ * what its name, source, bytes and count refer to.
+ */
+@Category({"Minerva", "Analyzer"})
+@StackTrace(false)
+abstract class AnalyzerEvent extends Event {
+    
+    @Label("Name")
+    String name;
+    
+    @Label("Source")
+    String source;
+    
+    @Label("Bytes")
+    @DataAmount
+    long bytes;
+    
+    @Label("Count")
+    long count;
+}
@@ -0,0 +1,136 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+
+package com.ibm.minerva.analyzer.jfr;
+
+/**
+ * Creates Java Flight Recorder events for the hot paths of the analyzer. 
+ * The events are only recorded on JVMs which support JFR (and only while a 
+ * recording is active). Otherwise a shared no-op scope is returned.
+ */
+public final class AnalyzerEvents {
+    
+    enum Kind {
+        ARCHIVE_ENTRY_READ,
+        CLASS_PARSE,
+        CLASS_PROCESS,
+        TEMP_FILE_WRITE,
+        CLASS_HIERARCHY,
+        CALL_GRAPH,
+        SDG,
+        JSON_EXPORT
+    }
+    
+    interface EventFactory {
+        public EventScope begin(Kind kind);
+    }
+    
+    static final EventScope NOOP = new EventScope() {
+        @Override
+        public EventScope setName(String name) {
+            return this;
+        }
+        @Override
+        public EventScope setSource(String source) {
+            return this;
+        }
+        @Override
+        public EventScope setBytes(long bytes) {
+            return this;
+        }
+        @Override
+        public EventScope setCount(long count) {
+            return this;
+        }
+        @Override
+        public void close() {}
+    };
+    
+    private static final EventFactory JFR_FACTORY = createJfrFactory();
+    private static final EventFactory FACTORY = (JFR_FACTORY != null) ? JFR_FACTORY : kind -> NOOP;
+    
+    private AnalyzerEvents() {}
+    
+    // The JFR event classes are only loaded if the jdk.jfr module is present.
+    private static EventFactory createJfrFactory() {
+        try {
+            final Class<?> flightRecorder = Class.forName("jdk.jfr.FlightRecorder");
+            if (Boolean.TRUE.equals(flightRecorder.getMethod("isAvailable").invoke(null))) {
+                return (EventFactory) Class.forName(AnalyzerEvents.class.getPackage().getName() + ".JfrEventFactory")
+                        .getDeclaredConstructor().newInstance();
+            }
+        }
+        catch (ReflectiveOperationException | LinkageError | RuntimeException e) {}
+        return null;
+    }
+    
+    /**
+     * Returns true if the events can be recorded by this JVM.
+     */
+    public static boolean isSupported() {
+        return JFR_FACTORY != null;
+    }
+    
+    /**
+     * An entry of an archive being read and processed. For a nested archive 
+     * this includes the processing of all of its entries.
+     */
+    public static EventScope archiveEntryRead(String archive, String entry) {
+        return FACTORY.begin(Kind.ARCHIVE_ENTRY_READ).setSource(archive).setName(entry);
+    }
+    
+    /**
+     * The bytes of a class being read and parsed.
+     */
+    public static EventScope classParse() {
+        return FACTORY.begin(Kind.CLASS_PARSE);
+    }
+    
+    /**
+     * A class being added to the symbol and reference tables and the call graph scope.
+     */
+    public static EventScope classProcess(String className) {
+        return FACTORY.begin(Kind.CLASS_PROCESS).setName(className);
+    }
+    
+    /**
+     * A class being written to a temporary file for the call graph analysis.
+     */
+    public static EventScope tempFileWrite(String className) {
+        return FACTORY.begin(Kind.TEMP_FILE_WRITE).setName(className);
+    }
+    
+    public static EventScope classHierarchy() {
+        return FACTORY.begin(Kind.CLASS_HIERARCHY);
+    }
+    
+    public static EventScope callGraph(String algorithm) {
+        return FACTORY.begin(Kind.CALL_GRAPH).setName(algorithm);
+    }
+    
+    public static EventScope sdg() {
+        return FACTORY.begin(Kind.SDG);
+    }
+    
+    /**
+     * A JSON document being written.
+     */
+    public static EventScope jsonExport(String file) {
+        return FACTORY.begin(Kind.JSON_EXPORT).setName(file);
+    }
+}
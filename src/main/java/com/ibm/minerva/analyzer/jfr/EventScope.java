@@ -0,0 +1,34 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+
+package com.ibm.minerva.analyzer.jfr;
+
+/**
+ * A timed analyzer event. The event ends and is committed (if it is being 
+ * recorded) when the scope is closed.
+ */
+public interface EventScope extends AutoCloseable {
+    
+    public EventScope setName(String name);
+    public EventScope setSource(String source);
+    public EventScope setBytes(long bytes);
+    public EventScope setCount(long count);
+    
+    @Override
+    public void close();
+}
@@ -0,0 +1,101 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+
+package com.ibm.minerva.analyzer.jfr;
+
+import com.ibm.minerva.analyzer.jfr.AnalyzerEvents.EventFactory;
+import com.ibm.minerva.analyzer.jfr.AnalyzerEvents.Kind;
+
+/**
+ * Creates the JFR events. This class is only loaded if JFR is available.
+ */
+final class JfrEventFactory implements EventFactory {
+    
+    @Override
+    public EventScope begin(Kind kind) {
+        final AnalyzerEvent event = create(kind);
+        if (!event.isEnabled()) {
+            return AnalyzerEvents.NOOP;
+        }
+        event.begin();
+        return new JfrEventScope(event);
+    }
+    
+    private static AnalyzerEvent create(Kind kind) {
+        switch (kind) {
+        case ARCHIVE_ENTRY_READ:
+            return new ArchiveEntryReadEvent();
+        case CLASS_PARSE:
+            return new ClassParseEvent();
+        case CLASS_PROCESS:
+            return new ClassProcessEvent();
+        case TEMP_FILE_WRITE:
+            return new TempFileWriteEvent();
+        case CLASS_HIERARCHY:
+            return new ClassHierarchyEvent();
+        case CALL_GRAPH:
+            return new CallGraphEvent();
+        case SDG:
+            return new SdgEvent();
+        case JSON_EXPORT:
+        default:
+            return new JsonExportEvent();
+        }
+    }
+    
+    private static final class JfrEventScope implements EventScope {
+        
+        private final AnalyzerEvent event;
+        
+        JfrEventScope(AnalyzerEvent event) {
+            this.event = event;
+        }
+        
+        @Override
+        public EventScope setName(String name) {
+            event.name = name;
+            return this;
+        }
+        
+        @Override
+        public EventScope setSource(String source) {
+            event.source = source;
+            return this;
+        }
+        
+        @Override
+        public EventScope setBytes(long bytes) {
+            event.bytes = bytes;
+            return this;
+        }
+        
+        @Override
+        public EventScope setCount(long count) {
+            event.count = count;
+            return this;
+        }
+        
+        @Override
+        public void close() {
+            event.end();
+            if (event.shouldCommit()) {
+                event.commit();
+            }
+        }
+    }
+}
@@ -0,0 +1,328 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+
+package com.ibm.minerva.dgi.utils;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+
+import com.ibm.minerva.dgi.utils.SDGGraph2JSON.DepthFirstSearch;
+import com.ibm.minerva.dgi.utils.graph.AbstractGraphEdge;
+import com.ibm.minerva.dgi.utils.graph.AbstractGraphNode;
+import com.ibm.minerva.dgi.utils.graph.LongIntHashMap;
+import com.ibm.minerva.dgi.utils.graph.MethodNodeRegistry;
+import com.ibm.minerva.dgi.utils.graph.StatementPositionCache;
+import com.ibm.minerva.dgi.utils.graph.StreamingGraphWriter;
+import com.ibm.minerva.dgi.utils.graph.SystemDepEdge;
+import com.ibm.wala.classLoader.CallSiteReference;
+import com.ibm.wala.classLoader.IMethod;
+import com.ibm.wala.ipa.callgraph.CGNode;
+import com.ibm.wala.ipa.callgraph.CallGraph;
+import com.ibm.wala.ipa.slicer.Statement;
+import com.ibm.wala.util.MonitorUtil.IProgressMonitor;
+import com.ibm.wala.util.graph.Graph;
+import com.ibm.wala.util.graph.NumberedGraph;
+
+/**
+ * Computes the edges of the method level call graph on several threads.
+ * 
+ * The dependence edges are partitioned by the CGNode of their source statement. Each 
+ * partition collects the candidate edges between two methods in a local table, recording 
+ * the order in which the sequential traversal would have found them. The tables are then 
+ * merged in that order, so the graph written is the same as the one built sequentially.
+ */
+final class ParallelMethodGraph {
+    
+    // Minimum number of statements processed by a task.
+    private static final int MIN_TASK_SIZE = 1024;
+    
+    // Number of tasks created per thread, to balance partitions of different sizes.
+    private static final int TASKS_PER_THREAD = 8;
+    
+    private ParallelMethodGraph() {}
+    
+    static void addDependenceEdges(DepthFirstSearch dfs,
+                                   Graph<Statement> sdg,
+                                   NumberedGraph<Statement> numbering,
+                                   BiFunction<Statement, Statement, String> edgeLabels,
+                                   MethodNodeRegistry methodNodes,
+                                   int parallelism,
+                                   IProgressMonitor monitor,
+                                   StreamingGraphWriter<AbstractGraphNode, AbstractGraphEdge> graph) {
+        
+        final Statement[] byFinishTime = dfs.byFinishTime;
+        final int count = dfs.finishCount;
+        
+        // Sort the statements by CGNode, keeping the finish order within each CGNode.
+        int maxNodeId = -1;
+        for (int i = 0; i < count; ++i) {
+            maxNodeId = Math.max(maxNodeId, byFinishTime[i].getNode().getGraphNodeId());
+        }
+        final int[] offsets = new int[maxNodeId + 2];
+        for (int i = 0; i < count; ++i) {
+            ++offsets[byFinishTime[i].getNode().getGraphNodeId() + 1];
+        }
+        for (int n = 1; n < offsets.length; ++n) {
+            offsets[n] += offsets[n - 1];
+        }
+        final int[] order = new int[count];
+        final int[] next = offsets.clone();
+        for (int i = 0; i < count; ++i) {
+            order[next[byFinishTime[i].getNode().getGraphNodeId()]++] = i;
+        }
+        
+        // Group the CGNodes into tasks of roughly the same number of statements.
+        // The PDGs of all the statements were materialized by the search, so the 
+        // tasks only read the SDG. IRs and source positions are read under a lock.
+        final Object irLock = new Object();
+        final int taskSize = Math.max(MIN_TASK_SIZE, count / (parallelism * TASKS_PER_THREAD));
+        final List<Callable<List<MethodPair>>> tasks = new ArrayList<>();
+        int from = 0;
+        for (int n = 1; n < offsets.length; ++n) {
+            final int to = offsets[n];
+            if (to - from >= taskSize || (n == offsets.length - 1 && to > from)) {
+                final int start = from;
+                tasks.add(() -> collectDependenceEdges(order, start, to, dfs, sdg, numbering, edgeLabels, irLock, monitor));
+                from = to;
+            }
+        }
+        
+        // Merge the tables, visiting the pairs of methods in the order the sequential 
+        // traversal would have first found them. This also adds the nodes in the same order.
+        final List<MethodPair> pairs = new ArrayList<>();
+        invokeAll(tasks, parallelism).forEach(pairs::addAll);
+        pairs.sort(Comparator.comparingLong(pair -> pair.order));
+        for (MethodPair pair : pairs) {
+            final int sourceId = graph.addNode(methodNodes.get(pair.source));
+            final int targetId = graph.addNode(methodNodes.get(pair.target));
+            int cgEdge = graph.getEdge(sourceId, targetId);
+            if (cgEdge < 0) {
+                // The first dependency found creates the edge.
+                final Dependency first = pair.dependencies.get(0);
+                cgEdge = graph.addEdge(sourceId, targetId, 
+                        new SystemDepEdge(first.sourcePos, first.destinationPos, first.type));
+                graph.incrementWeight(cgEdge, first.count - 1);
+            }
+            else {
+                // Another pair of CGNodes for the same methods created the edge.
+                final AbstractGraphEdge value = graph.getEdgeValue(cgEdge);
+                for (Dependency d : pair.dependencies) {
+                    if (SDGGraph2JSON.matches(value, d.sourcePos, d.destinationPos, d.type)) {
+                        graph.incrementWeight(cgEdge, d.count);
+                        break;
+                    }
+                }
+            }
+        }
+    }
+    
+    private static List<MethodPair> collectDependenceEdges(int[] order, int from, int to,
+                                                           DepthFirstSearch dfs,
+                                                           Graph<Statement> sdg,
+                                                           NumberedGraph<Statement> numbering,
+                                                           BiFunction<Statement, Statement, String> edgeLabels,
+                                                           Object irLock,
+                                                           IProgressMonitor monitor) {
+        final StatementPositionCache positions = new StatementPositionCache(irLock);
+        final LongIntHashMap pairIndex = new LongIntHashMap();
+        final List<MethodPair> pairs = new ArrayList<>();
+        final Statement[] byFinishTime = dfs.byFinishTime;
+        for (int k = from; k < to; ++k) {
+            if (((k - from) & SDGGraph2JSON.PROGRESS_INTERVAL_MASK) == 0) {
+                SDGGraph2JSON.checkCanceled(monitor);
+            }
+            final int i = order[k];
+            final Statement p = byFinishTime[i];
+            final int pNumber = numbering.getNumber(p);
+            final CGNode pNode = p.getNode();
+            final IMethod pMethod = pNode.getMethod();
+            final Iterator<Statement> succs = sdg.getSuccNodes(p);
+            for (int succIndex = 0; succs.hasNext(); ++succIndex) {
+                final Statement s = succs.next();
+                if (!dfs.isForwardOrCrossEdge(pNumber, numbering.getNumber(s))) {
+                    continue;
+                }
+                final CGNode sNode = s.getNode();
+                final IMethod sMethod = sNode.getMethod();
+                if (pMethod.equals(sMethod)) {
+                    continue;
+                }
+                // Position of this edge in the sequential traversal.
+                final long edgeOrder = ((long) i << 32) | succIndex;
+                final long key = ((long) pNode.getGraphNodeId() << 32) | (sNode.getGraphNodeId() & 0xffffffffL);
+                final int index = pairIndex.get(key);
+                final MethodPair pair;
+                if (index < 0) {
+                    pair = new MethodPair(pMethod, sMethod, edgeOrder);
+                    pairIndex.put(key, pairs.size());
+                    pairs.add(pair);
+                }
+                else {
+                    pair = pairs.get(index);
+                }
+                pair.add(positions.getPosition(p), positions.getPosition(s), edgeLabels.apply(p, s));
+            }
+        }
+        SDGGraph2JSON.worked(monitor, to - from);
+        return pairs;
+    }
+    
+    static void addCallEdges(CallGraph callGraph, 
+                             MethodNodeRegistry methodNodes,
+                             int parallelism, 
+                             IProgressMonitor monitor,
+                             StreamingGraphWriter<AbstractGraphNode, AbstractGraphEdge> graph) {
+        final List<CGNode> entrypoints = new ArrayList<>(callGraph.getEntrypointNodes());
+        final int taskSize = Math.max(1, entrypoints.size() / (parallelism * TASKS_PER_THREAD));
+        final List<Callable<List<List<CGNode>>>> tasks = new ArrayList<>();
+        for (int from = 0; from < entrypoints.size(); from += taskSize) {
+            final List<CGNode> nodes = entrypoints.subList(from, Math.min(from + taskSize, entrypoints.size()));
+            tasks.add(() -> {
+                final List<List<CGNode>> targets = new ArrayList<>(nodes.size());
+                for (CGNode p : nodes) {
+                    SDGGraph2JSON.checkCanceled(monitor);
+                    final List<CGNode> nodeTargets = new ArrayList<>();
+                    // Get call statements that may execute in a given method
+                    final Iterator<CallSiteReference> outGoingCalls = p.iterateCallSites();
+                    while (outGoingCalls.hasNext()) {
+                        for (CGNode o : callGraph.getPossibleTargets(p, outGoingCalls.next())) {
+                            if (SDGGraph2JSON.isApplicationClass(o.getMethod().getDeclaringClass())) {
+                                nodeTargets.add(o);
+                            }
+                        }
+                    }
+                    targets.add(nodeTargets);
+                }
+                return targets;
+            });
+        }
+        
+        // Add the edges in the order of the entry points.
+        int i = 0;
+        for (List<List<CGNode>> targets : invokeAll(tasks, parallelism)) {
+            for (List<CGNode> nodeTargets : targets) {
+                final CGNode p = entrypoints.get(i++);
+                nodeTargets.forEach(o -> SDGGraph2JSON.addCallEdge(p, o, methodNodes, graph));
+            }
+        }
+    }
+    
+    /**
+     * Runs the tasks and returns their results in the order of the tasks.
+     */
+    private static <T> List<T> invokeAll(List<Callable<T>> tasks, int parallelism) {
+        final List<T> results = new ArrayList<>(tasks.size());
+        if (tasks.isEmpty()) {
+            return results;
+        }
+        final ExecutorService executor = Executors.newFixedThreadPool(
+                Math.min(parallelism, tasks.size()), new WorkerThreadFactory());
+        try {
+            for (Future<T> future : executor.invokeAll(tasks)) {
+                results.add(future.get());
+            }
+            return results;
+        } 
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+        catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new RuntimeException(cause);
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+    
+    private static final class WorkerThreadFactory implements ThreadFactory {
+        
+        private final AtomicInteger count = new AtomicInteger();
+        
+        @Override
+        public Thread newThread(Runnable r) {
+            final Thread t = new Thread(r, "minerva-method-graph-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    }
+    
+    /**
+     * The dependencies found between a pair of CGNodes, grouped by edge attributes.
+     */
+    private static final class MethodPair {
+        
+        private final IMethod source;
+        private final IMethod target;
+        private final long order;
+        private final List<Dependency> dependencies = new ArrayList<>(2);
+        
+        MethodPair(IMethod source, IMethod target, long order) {
+            this.source = source;
+            this.target = target;
+            this.order = order;
+        }
+        
+        void add(Integer sourcePos, Integer destinationPos, String type) {
+            for (Dependency d : dependencies) {
+                if (d.matches(sourcePos, destinationPos, type)) {
+                    ++d.count;
+                    return;
+                }
+            }
+            dependencies.add(new Dependency(sourcePos, destinationPos, type));
+        }
+    }
+    
+    private static final class Dependency {
+        
+        private final Integer sourcePos;
+        private final Integer destinationPos;
+        private final String type;
+        private int count = 1;
+        
+        Dependency(Integer sourcePos, Integer destinationPos, String type) {
+            this.sourcePos = sourcePos;
+            this.destinationPos = destinationPos;
+            this.type = type;
+        }
+        
+        boolean matches(Integer sourcePos, Integer destinationPos, String type) {
+            return Objects.equals(this.type, type) && Objects.equals(this.sourcePos, sourcePos) 
+                    && Objects.equals(this.destinationPos, destinationPos);
+        }
+    }
+}
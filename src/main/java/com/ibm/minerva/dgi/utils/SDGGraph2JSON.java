@@ -21,35 +21,38 @@ package com.ibm.minerva.dgi.utils;
 import static com.ibm.minerva.analyzer.MessageFormatter.formatMessage;
 
 import java.io.File;
-import java.util.Comparator;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
 import java.util.Iterator;
-import java.util.Map;
+import java.util.concurrent.CancellationException;
 import java.util.function.BiFunction;
-import java.util.function.Supplier;
 import java.util.logging.Logger;
 
-import org.jgrapht.graph.DefaultDirectedGraph;
-import org.jgrapht.nio.json.JSONExporter;
-
 import com.ibm.minerva.analyzer.LoggingUtil;
 import com.ibm.minerva.dgi.utils.graph.AbstractGraphEdge;
 import com.ibm.minerva.dgi.utils.graph.AbstractGraphNode;
 import com.ibm.minerva.dgi.utils.graph.CallEdge;
 import com.ibm.minerva.dgi.utils.graph.MethodNode;
+import com.ibm.minerva.dgi.utils.graph.MethodNodeRegistry;
+import com.ibm.minerva.dgi.utils.graph.StatementPositionCache;
+import com.ibm.minerva.dgi.utils.graph.StreamingGraphWriter;
 import com.ibm.minerva.dgi.utils.graph.SystemDepEdge;
 import com.ibm.wala.classLoader.CallSiteReference;
 import com.ibm.wala.classLoader.IClass;
+import com.ibm.wala.classLoader.IMethod;
+import com.ibm.wala.ipa.callgraph.CGNode;
 import com.ibm.wala.ipa.callgraph.CallGraph;
 import com.ibm.wala.ipa.callgraph.propagation.InstanceKey;
-import com.ibm.wala.ipa.cfg.InterproceduralCFG;
 import com.ibm.wala.ipa.slicer.MethodEntryStatement;
 import com.ibm.wala.ipa.slicer.SDG;
 import com.ibm.wala.ipa.slicer.Statement;
 import com.ibm.wala.types.ClassLoaderReference;
-import com.ibm.wala.util.collections.HashMapFactory;
+import com.ibm.wala.util.MonitorUtil.IProgressMonitor;
 import com.ibm.wala.util.graph.Graph;
 import com.ibm.wala.util.graph.GraphSlicer;
-import com.ibm.wala.util.graph.traverse.DFS;
+import com.ibm.wala.util.graph.NumberedGraph;
 
 /**
  * The type System Dependency Graph (SDG) to JSON.
@@ -58,103 +61,266 @@ public class SDGGraph2JSON {
 	
 	private static final Logger logger = LoggingUtil.getLogger(SDGGraph2JSON.class);
 
-    private static JSONExporter<AbstractGraphNode, AbstractGraphEdge> getGraphExporter() {
-        JSONExporter<AbstractGraphNode, AbstractGraphEdge> exporter = new JSONExporter<>(v -> String.valueOf(v.getId()));
-        exporter.setVertexAttributeProvider(AbstractGraphNode::getAttributes);
-        exporter.setEdgeAttributeProvider(AbstractGraphEdge::getAttributes);
-        return exporter;
+    // Progress is reported and cancellation checked every 4096 statements.
+    static final int PROGRESS_INTERVAL_MASK = 0xfff;
+
+    private static StreamingGraphWriter<AbstractGraphNode, AbstractGraphEdge> createGraphWriter(File outputFile) throws IOException {
+        return new StreamingGraphWriter<>(outputFile, AbstractGraphNode::getId, 
+                (w, v) -> v.writeAttributes(w), (w, e, weight) -> e.writeAttributes(w, weight));
     }
 
-    private static org.jgrapht.Graph<AbstractGraphNode, AbstractGraphEdge> buildGraph(Supplier<Iterator<Statement>> entryPoints,
-                                                                                      Graph<Statement> sdg, CallGraph callGraph,
-                                                                                      BiFunction<Statement, Statement, String> edgeLabels) {
+    private static int addDependenceEdges(Iterator<Statement> entryPoints,
+                                           Graph<Statement> sdg,
+                                           NumberedGraph<Statement> numbering,
+                                           BiFunction<Statement, Statement, String> edgeLabels,
+                                           MethodNodeRegistry methodNodes,
+                                           int parallelism,
+                                           IProgressMonitor monitor,
+                                           StreamingGraphWriter<AbstractGraphNode, AbstractGraphEdge> graph) {
     	
-        org.jgrapht.Graph<AbstractGraphNode, AbstractGraphEdge> graph = new DefaultDirectedGraph<>(AbstractGraphEdge.class);
-        // We'll use forward and backward search on the DFS to identify which CFG nodes are dominant
-        // This is a forward DFS search (or exit time first search)
+        // We'll use the discovery and finish times of a DFS search to identify which SDG 
+        // edges are back edges. Both are recorded in a single traversal and stored in
+        // arrays indexed by the statement number in the SDG.
+        final DepthFirstSearch dfs = new DepthFirstSearch(sdg, numbering, monitor);
+        dfs.run(entryPoints);
+        
+        if (parallelism > 1) {
+            logger.info(() -> formatMessage("CallGraphPopulatingMethodLevelParallel", parallelism));
+            ParallelMethodGraph.addDependenceEdges(dfs, sdg, numbering, edgeLabels, methodNodes, parallelism, monitor, graph);
+            return dfs.finishCount;
+        }
+        
+        logger.info(() -> formatMessage("CallGraphPopulatingMethodLevel"));
+        final StatementPositionCache positions = new StatementPositionCache();
+        // Populate graph, visiting the statements in the order they finished.
+        final Statement[] byFinishTime = dfs.byFinishTime;
+        final int count = dfs.finishCount;
+        for (int i = 0; i < count; ++i) {
+            if ((i & PROGRESS_INTERVAL_MASK) == 0 && i > 0) {
+                worked(monitor, PROGRESS_INTERVAL_MASK + 1);
+            }
+            final Statement p = byFinishTime[i];
+            final int pNumber = numbering.getNumber(p);
+            final IMethod pMethod = p.getNode().getMethod();
+            MethodNode source = null;
+            final Iterator<Statement> succs = sdg.getSuccNodes(p);
+            while (succs.hasNext()) {
+                final Statement s = succs.next();
+                if (!dfs.isForwardOrCrossEdge(pNumber, numbering.getNumber(s))) {
+                    continue;
+                }
+                final IMethod sMethod = s.getNode().getMethod();
+                if (pMethod.equals(sMethod)) {
+                    continue;
+                }
                 
-        int dfsNumber = 0;
-        Map<Statement,Integer> dfsFinish = HashMapFactory.make();
-        Iterator<Statement> search = DFS.iterateFinishTime(sdg, entryPoints.get());
-       
-        while (search.hasNext()) {
-            dfsFinish.put(search.next(), dfsNumber++);
+                // Get the source and destination nodes
+                if (source == null) {
+                    source = methodNodes.get(pMethod);
+                }
+                MethodNode target = methodNodes.get(sMethod);
+
+                // Add the nodes to the graph as vertices
+                int sourceId = graph.addNode(source);
+                int targetId = graph.addNode(target);
+
+                String edgeType = edgeLabels.apply(p, s);
+                Integer sourcePos = positions.getPosition(p);
+                Integer destinationPos = positions.getPosition(s);
+                int cgEdge = graph.getEdge(sourceId, targetId);
+                if (cgEdge < 0) {
+                    graph.addEdge(
+                            sourceId,
+                            targetId,
+                            new SystemDepEdge(sourcePos, destinationPos, edgeType));
+                } 
+                // Only one edge is kept between two methods. Increment its weight 
+                // if this dependency matches it.
+                else if (matches(graph.getEdgeValue(cgEdge), sourcePos, destinationPos, edgeType)) {
+                    graph.incrementWeight(cgEdge);
+                }
+            }
         }
+        worked(monitor, count > 0 ? ((count - 1) & PROGRESS_INTERVAL_MASK) + 1 : 0);
+        return count;
+    }
 
-        // This is a reverse DFS search (or entry time first search)
-        int reverseDfsNumber = 0;
-        Map<Statement,Integer> dfsStart = HashMapFactory.make();
-        Iterator<Statement> reverseSearch = DFS.iterateDiscoverTime(sdg, entryPoints.get());
+    /**
+     * Reports the statements processed to the monitor and throws a 
+     * CancellationException if the monitor has been canceled.
+     */
+    static void worked(IProgressMonitor monitor, int statements) {
+        if (monitor != null) {
+            monitor.worked(statements);
+        }
+        checkCanceled(monitor);
+    }
 
-        while (reverseSearch.hasNext()) {
-            dfsStart.put(reverseSearch.next(), reverseDfsNumber++);
+    static void checkCanceled(IProgressMonitor monitor) {
+        if (monitor != null && monitor.isCanceled()) {
+            throw new CancellationException(formatMessage("AnalysisCanceled"));
         }
+    }
 
-        logger.info(() -> formatMessage("CallGraphPopulatingMethodLevel"));
-        // Populate graph
-        sdg.stream()
-                .filter(dfsFinish::containsKey)
-                .sorted(Comparator.comparingInt(dfsFinish::get))
-                .forEach(p -> sdg.getSuccNodes(p).forEachRemaining(s -> {
-                    if (dfsFinish.containsKey(s)
-                    		&& dfsStart.get(p) != null && dfsStart.get(s) != null
-                            && !((dfsStart.get(p) >= dfsStart.get(s))
-                            && (dfsFinish.get(p) <= dfsFinish.get(s)))
-                            && !p.getNode().getMethod().equals(s.getNode().getMethod())) {
-
-                        // Build source and destination nodes
-                        MethodNode source = new MethodNode(p.getNode().getMethod());
-                        MethodNode target = new MethodNode(s.getNode().getMethod());
-
-                        // Add the nodes to the graph as vertices
-                        graph.addVertex(source);
-                        graph.addVertex(target);
-
-                        String edgeType = edgeLabels.apply(p, s);
-                        SystemDepEdge graphEdge = new SystemDepEdge(p, s, edgeType);
-                        SystemDepEdge cgEdge = (SystemDepEdge) graph.getEdge(source, target);
-                        if (cgEdge == null || !cgEdge.equals(graphEdge)) {
-                            graph.addEdge(
-                                    source,
-                                    target,
-                                    graphEdge);
-                        } else {
-                            graphEdge.incrementWeight();
+    static boolean matches(AbstractGraphEdge edge, Integer sourcePos, Integer destinationPos, String type) {
+        return (edge instanceof SystemDepEdge) 
+                && ((SystemDepEdge) edge).matches(sourcePos, destinationPos, type, null);
+    }
+
+    /**
+     * Iterative depth first search which records the discovery and finish
+     * times of the statements it visits in arrays indexed by statement number.
+     */
+    static final class DepthFirstSearch {
+        
+        private final Graph<Statement> graph;
+        private final NumberedGraph<Statement> numbering;
+        private final IProgressMonitor monitor;
+        
+        private int[] discoverTime = new int[0];
+        private int[] finishTime = new int[0];
+        Statement[] byFinishTime = new Statement[16];
+        int discoverCount;
+        int finishCount;
+        
+        DepthFirstSearch(Graph<Statement> graph, NumberedGraph<Statement> numbering, IProgressMonitor monitor) {
+            this.graph = graph;
+            this.numbering = numbering;
+            this.monitor = monitor;
+            ensureCapacity(numbering.getMaxNumber());
+        }
+        
+        /**
+         * Returns false if the edge between the given statements is a back edge
+         * or if its target was not reached by the search.
+         */
+        boolean isForwardOrCrossEdge(int sourceNumber, int targetNumber) {
+            if (targetNumber >= finishTime.length || finishTime[targetNumber] < 0) {
+                return false;
+            }
+            return !(discoverTime[sourceNumber] >= discoverTime[targetNumber] 
+                    && finishTime[sourceNumber] <= finishTime[targetNumber]);
+        }
+        
+        void run(Iterator<Statement> roots) {
+            final ArrayDeque<Statement> nodes = new ArrayDeque<>();
+            final ArrayDeque<Iterator<Statement>> pending = new ArrayDeque<>();
+            while (roots.hasNext()) {
+                final Statement root = roots.next();
+                if (!discover(root)) {
+                    continue;
+                }
+                nodes.push(root);
+                pending.push(graph.getSuccNodes(root));
+                while (!nodes.isEmpty()) {
+                    final Iterator<Statement> succs = pending.peek();
+                    if (succs.hasNext()) {
+                        final Statement s = succs.next();
+                        if (discover(s)) {
+                            nodes.push(s);
+                            pending.push(graph.getSuccNodes(s));
                         }
                     }
-                }));
+                    else {
+                        finish(nodes.pop());
+                        pending.pop();
+                    }
+                }
+            }
+        }
+        
+        private boolean discover(Statement s) {
+            final int number = numbering.getNumber(s);
+            ensureCapacity(number);
+            if (discoverTime[number] >= 0) {
+                return false;
+            }
+            if ((discoverCount & PROGRESS_INTERVAL_MASK) == 0) {
+                checkCanceled(monitor);
+            }
+            discoverTime[number] = discoverCount++;
+            return true;
+        }
+        
+        private void finish(Statement s) {
+            finishTime[numbering.getNumber(s)] = finishCount;
+            if (finishCount == byFinishTime.length) {
+                byFinishTime = Arrays.copyOf(byFinishTime, finishCount << 1);
+            }
+            byFinishTime[finishCount++] = s;
+        }
         
+        // Statements may be numbered lazily by the SDG while it is being traversed. 
+        private void ensureCapacity(int number) {
+            if (number >= discoverTime.length) {
+                final int oldLength = discoverTime.length;
+                final int newLength = Math.max(number + 1, oldLength + (oldLength >> 1));
+                discoverTime = Arrays.copyOf(discoverTime, newLength);
+                finishTime = Arrays.copyOf(finishTime, newLength);
+                Arrays.fill(discoverTime, oldLength, newLength, -1);
+                Arrays.fill(finishTime, oldLength, newLength, -1);
+            }
+        }
+    }
+
+    private static void addCallEdges(CallGraph callGraph, MethodNodeRegistry methodNodes, int parallelism, 
+            IProgressMonitor monitor, StreamingGraphWriter<AbstractGraphNode, AbstractGraphEdge> graph) {
         logger.info(() -> formatMessage("CallGraphCalculatingWeightMethodLevel"));
+        if (parallelism > 1) {
+            ParallelMethodGraph.addCallEdges(callGraph, methodNodes, parallelism, monitor, graph);
+            return;
+        }
         callGraph.getEntrypointNodes()
                 .forEach(p -> {
+                    checkCanceled(monitor);
                     // Get call statements that may execute in a given method
                     Iterator<CallSiteReference> outGoingCalls = p.iterateCallSites();
                     outGoingCalls.forEachRemaining( n -> {
                         callGraph.getPossibleTargets(p, n).stream().filter(o -> isApplicationClass(o.getMethod().getDeclaringClass()))
-                                .forEach(o -> {
-                            MethodNode source = new MethodNode(p.getMethod());
-                            MethodNode target = new MethodNode(o.getMethod());
-                            if (!source.equals(target)) {
-                                graph.addVertex(source);
-                                graph.addVertex(target);
-                                // Get the edge between the source and the target
-                                AbstractGraphEdge cgEdge = graph.getEdge(source, target);
-
-                                if (cgEdge == null) {
-                                    graph.addEdge(source, target, new CallEdge());
-                                }
-                                // If edge exists, then increment the weight
-                                else {
-                                    cgEdge.incrementWeight();
-                                }
-                            }});
+                                .forEach(o -> addCallEdge(p, o, methodNodes, graph));
                         });
                 });
+    }
+
+    static void addCallEdge(CGNode p, CGNode o, MethodNodeRegistry methodNodes, 
+            StreamingGraphWriter<AbstractGraphNode, AbstractGraphEdge> graph) {
+        MethodNode source = methodNodes.get(p.getMethod());
+        MethodNode target = methodNodes.get(o.getMethod());
+        if (source != target) {
+            int sourceId = graph.addNode(source);
+            int targetId = graph.addNode(target);
+            // Get the edge between the source and the target
+            int cgEdge = graph.getEdge(sourceId, targetId);
+
+            if (cgEdge < 0) {
+                graph.addEdge(sourceId, targetId, new CallEdge());
+            }
+            // If edge exists, then increment the weight
+            else {
+                graph.incrementWeight(cgEdge);
+            }
+        }
+    }
 
-        return graph;
+    /**
+     * Saves the method level call graph with both the data and control dependencies 
+     * between methods found in the SDG and the call edges of its call graph.
+     */
+    public static Statistics convertAndSave(SDG<? extends InstanceKey> sdg, File outputFile) throws IOException {
+        return convertAndSave(sdg, outputFile, new MethodNodeRegistry(), 1, null);
     }
 
-    public static void convertAndSave(SDG<? extends InstanceKey> sdg, CallGraph cg, InterproceduralCFG ipcfg_full, File outputFile) {
+    /**
+     * Saves the method level call graph with both the data and control dependencies 
+     * between methods found in the SDG and the call edges of its call graph. If the
+     * parallelism is greater than 1, the edges are computed by that many threads.
+     * The output is the same regardless of the parallelism. The method nodes are 
+     * obtained from the given registry. The statements processed are reported to
+     * the monitor (which may be null), and the export is abandoned with a 
+     * CancellationException if it is canceled.
+     */
+    public static Statistics convertAndSave(SDG<? extends InstanceKey> sdg, File outputFile, 
+            MethodNodeRegistry methodNodes, int parallelism, IProgressMonitor monitor) throws IOException {
     	// Prune the Graph to keep only application classes.
         Graph<Statement> prunedGraph = GraphSlicer.prune(sdg,
                 statement -> (
@@ -170,21 +336,86 @@ public class SDGGraph2JSON {
 
         CallGraph callGraph = sdg.getCallGraph();
 
-        // A supplier to get entries
-        Supplier<Iterator<Statement>> sdgEntryPointsSupplier =
-        		() -> callGraph.getEntrypointNodes().stream().map(n -> (Statement)new MethodEntryStatement(n)).iterator();
+        // The entry statements of the entry point methods
+        Iterator<Statement> sdgEntryPoints =
+        		callGraph.getEntrypointNodes().stream().map(n -> (Statement)new MethodEntryStatement(n)).iterator();
                 
-        org.jgrapht.Graph<AbstractGraphNode, AbstractGraphEdge> sdg_graph = buildGraph(
-                sdgEntryPointsSupplier,
-                prunedGraph, callGraph,
-                (p, s) -> String.valueOf(sdg.getEdgeLabels(p, s).iterator().next()));
-
-        // Save the SDG as JSON
-        JSONExporter<AbstractGraphNode, AbstractGraphEdge> sdg_exporter = getGraphExporter();
-        sdg_exporter.exportGraph(sdg_graph, outputFile);
+        // Save the SDG as JSON. Nodes are written while the graph is being built.
+        try (StreamingGraphWriter<AbstractGraphNode, AbstractGraphEdge> sdg_graph = createGraphWriter(outputFile)) {
+            final int statements = addDependenceEdges(
+                    sdgEntryPoints,
+                    prunedGraph,
+                    sdg,
+                    (p, s) -> String.valueOf(sdg.getEdgeLabels(p, s).iterator().next()),
+                    methodNodes,
+                    parallelism,
+                    monitor,
+                    sdg_graph);
+            addCallEdges(callGraph, methodNodes, parallelism, monitor, sdg_graph);
+            sdg_graph.finish();
+            return new Statistics(sdg_graph.getNodeCount(), sdg_graph.getEdgeCount(), statements);
+        }
+        catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Saves the method level call graph with only the call edges of the call 
+     * graph. This does not require an SDG to be built.
+     */
+    public static Statistics convertAndSave(CallGraph callGraph, File outputFile) throws IOException {
+        return convertAndSave(callGraph, outputFile, new MethodNodeRegistry(), 1, null);
+    }
+
+    /**
+     * Saves the method level call graph with only the call edges of the call 
+     * graph, with the targets of the call sites computed by the given number of threads.
+     * The method nodes are obtained from the given registry. The export is abandoned 
+     * with a CancellationException if the monitor (which may be null) is canceled.
+     */
+    public static Statistics convertAndSave(CallGraph callGraph, File outputFile, 
+            MethodNodeRegistry methodNodes, int parallelism, IProgressMonitor monitor) throws IOException {
+        try (StreamingGraphWriter<AbstractGraphNode, AbstractGraphEdge> cg_graph = createGraphWriter(outputFile)) {
+            addCallEdges(callGraph, methodNodes, parallelism, monitor, cg_graph);
+            cg_graph.finish();
+            return new Statistics(cg_graph.getNodeCount(), cg_graph.getEdgeCount(), 0);
+        }
+        catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+    
+    /**
+     * The size of a saved method level call graph.
+     */
+    public static final class Statistics {
+        
+        private final int nodeCount;
+        private final int edgeCount;
+        private final int statementCount;
+        
+        Statistics(int nodeCount, int edgeCount, int statementCount) {
+            this.nodeCount = nodeCount;
+            this.edgeCount = edgeCount;
+            this.statementCount = statementCount;
+        }
+        
+        public int getNodeCount() {
+            return nodeCount;
+        }
+        
+        public int getEdgeCount() {
+            return edgeCount;
+        }
+        
+        // The number of SDG statements reached from the entry points (0 if no SDG was used).
+        public int getStatementCount() {
+            return statementCount;
+        }
     }
     
-    private static boolean isApplicationClass(IClass _class) {
+    static boolean isApplicationClass(IClass _class) {
         return _class.getClassLoader().getReference().equals(ClassLoaderReference.Application);
     }
 }
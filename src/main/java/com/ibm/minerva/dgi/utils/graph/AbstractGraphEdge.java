@@ -18,21 +18,15 @@
 
 package com.ibm.minerva.dgi.utils.graph;
 
+import java.io.IOException;
 import java.io.Serializable;
-import java.util.Map;
 
-import org.jgrapht.nio.Attribute;
-
-import com.ibm.wala.ipa.callgraph.CGNode;
+import com.google.gson.stream.JsonWriter;
 import com.ibm.wala.ipa.slicer.Statement;
-import com.ibm.wala.shrike.shrikeCT.InvalidClassFileException;
-import com.ibm.wala.ssa.IR;
-import com.ibm.wala.ssa.SSAInstruction;
 
 
 public abstract class AbstractGraphEdge implements Serializable {
 	private static final long serialVersionUID = 73380029269931811L;
-	public Integer weight = 1;
     public final String context;
     protected AbstractGraphEdge() {
         this(null);
@@ -40,28 +34,12 @@ public abstract class AbstractGraphEdge implements Serializable {
     protected AbstractGraphEdge(String context) {
         this.context = context;
     }
-    public void incrementWeight() { this.weight += 1; }
     public String getContext() { return this.context; }
     public Integer getId() { return this.hashCode(); }
-    public Integer getWeight() { return this.weight; }
     Integer getStatementPosition(Statement statement) {
-        CGNode statementNode = statement.getNode();
-        IR statementIR = statementNode.getIR();
-        Integer pos = null;
-        // TODO: check this assumption: the same source instruction maps to several SSAInstructions,
-        //  therefore it is sufficient to return the position of the first statement.
-        for (SSAInstruction inst : statementNode.getIR().getInstructions()) {
-            try {
-                pos = statementIR.getMethod().getSourcePosition(inst.iIndex()).getLastLine();
-                return pos;
-            } catch (InvalidClassFileException e) {
-                throw new RuntimeException(e);
-            } catch (NullPointerException npe) {
-                return -1;
-            }
-        }
-        return pos;
+        return StatementPositionCache.getNodePosition(statement.getNode());
     }
 
-    public abstract Map<String, Attribute> getAttributes();
+    // The weight of an edge is maintained by the graph holding the edge.
+    public abstract void writeAttributes(JsonWriter writer, int weight) throws IOException;
 }
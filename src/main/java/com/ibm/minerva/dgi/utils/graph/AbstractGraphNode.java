@@ -18,9 +18,10 @@
 
 package com.ibm.minerva.dgi.utils.graph;
 
+import java.io.IOException;
 import java.io.Serializable;
-import java.util.Map;
-import org.jgrapht.nio.Attribute;
+
+import com.google.gson.stream.JsonWriter;
 
 
 public abstract class AbstractGraphNode implements Serializable {
@@ -29,5 +30,6 @@ public abstract class AbstractGraphNode implements Serializable {
 
 	public abstract String getId();
 
-    public abstract Map<String, Attribute> getAttributes();
+    // Writes the attributes of the node other than its id.
+    public abstract void writeAttributes(JsonWriter writer) throws IOException;
 }
\ No newline at end of file
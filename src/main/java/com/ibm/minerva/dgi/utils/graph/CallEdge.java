@@ -18,10 +18,9 @@
 
 package com.ibm.minerva.dgi.utils.graph;
 
-import org.jgrapht.nio.Attribute;
-import org.jgrapht.nio.DefaultAttribute;
-import java.util.LinkedHashMap;
-import java.util.Map;
+import java.io.IOException;
+
+import com.google.gson.stream.JsonWriter;
 
 public class CallEdge extends AbstractGraphEdge {
     public final String type;
@@ -43,12 +42,10 @@ public class CallEdge extends AbstractGraphEdge {
         return (o instanceof CallEdge) && (toString().equals(o.toString()));
     }
 
-    public Map<String, Attribute> getAttributes() {
-        Map<String, Attribute> map = new LinkedHashMap<>();
-        map.put("id", DefaultAttribute.createAttribute(getId()));
-        map.put("context", DefaultAttribute.createAttribute(getContext()));
-        map.put("type", DefaultAttribute.createAttribute(toString()));
-        map.put("weight", DefaultAttribute.createAttribute(getWeight()));
-        return map;
+    public void writeAttributes(JsonWriter writer, int weight) throws IOException {
+        writer.name("id").value(getId());
+        writer.name("context").value(getContext());
+        writer.name("type").value(toString());
+        writer.name("weight").value(weight);
     }
 }
\ No newline at end of file
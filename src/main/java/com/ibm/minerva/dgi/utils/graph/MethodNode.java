@@ -18,28 +18,29 @@
 
 package com.ibm.minerva.dgi.utils.graph;
 
-import java.util.LinkedHashMap;
+import java.io.IOException;
 import java.util.List;
-import java.util.Map;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
-import org.jgrapht.nio.Attribute;
-import org.jgrapht.nio.DefaultAttribute;
-
+import com.google.gson.stream.JsonWriter;
 import com.ibm.wala.classLoader.IMethod;
 
 public class MethodNode extends AbstractGraphNode {
 
 	private static final long serialVersionUID = 1966838287941900414L;
 	public final String id;
+    public final int index;
     public final String method;
     public final String returnType;
     public final List<String> arguments;
     public final String className;
     public final String classShortName;
+    private final String argumentsString;
 
-    public MethodNode(IMethod method) {
+    // Nodes are interned by a MethodNodeRegistry, which assigns their index.
+    MethodNode(IMethod method, int index) {
+        this.index = index;
         this.method = method.getName().toString();
         this.className = method.getDeclaringClass()
                 .getName()
@@ -49,13 +50,14 @@ public class MethodNode extends AbstractGraphNode {
         this.classShortName = className
                 .substring(className.lastIndexOf('/') + 1)
                 .replace("$", "_");
-        this.id = generateNodeId();
+        this.id = generateNodeId(method);
         this.returnType = method.getReturnType()
                 .getName()
                 .toString()
                 .substring(1)
                 .replace("/", ".");
         this.arguments = getArgumentsList(method);
+        this.argumentsString = arguments.toString();
     }
 
     private List<String> getArgumentsList(IMethod method) {
@@ -68,14 +70,19 @@ public class MethodNode extends AbstractGraphNode {
                 .collect(Collectors.toList());
     }
 
-    private String generateNodeId() {
-        return getMethodSignature();
+    // The id includes the method descriptor so that overloaded methods are distinct nodes.
+    private String generateNodeId(IMethod method) {
+        return className + "." + method.getSelector();
     }
 
     public String getId() {
         return id;
     }
 
+    public int getIndex() {
+        return index;
+    }
+
     public String getMethodSignature() {
         return className + "." + method;
     }
@@ -90,12 +97,12 @@ public class MethodNode extends AbstractGraphNode {
 
     @Override
     public int hashCode() {
-        return toString().hashCode();
+        return id.hashCode();
     }
 
     @Override
     public boolean equals(Object o) {
-        return (o instanceof MethodNode) && (toString().equals(o.toString()));
+        return (o instanceof MethodNode) && id.equals(((MethodNode) o).id);
     }
 
     public String getMethod() {
@@ -115,14 +122,10 @@ public class MethodNode extends AbstractGraphNode {
     }
 
     @Override
-    public Map<String, Attribute> getAttributes() {
-        Map<String, Attribute> map = new LinkedHashMap<>();
-        map.put("id", DefaultAttribute.createAttribute(getId()));
-        map.put("class", DefaultAttribute.createAttribute(getClassName()));
-        map.put("method", DefaultAttribute.createAttribute(getMethod()));
-        map.put("arguments", DefaultAttribute.createAttribute(getArguments().toString()));
-        map.put("returnType", DefaultAttribute.createAttribute(getReturnType()));
-        return map;
+    public void writeAttributes(JsonWriter writer) throws IOException {
+        writer.name("class").value(getClassName());
+        writer.name("method").value(getMethod());
+        writer.name("arguments").value(argumentsString);
+        writer.name("returnType").value(getReturnType());
     }
 }
-
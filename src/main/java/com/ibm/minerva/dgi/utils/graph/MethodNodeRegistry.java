@@ -0,0 +1,62 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+
+package com.ibm.minerva.dgi.utils.graph;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.ibm.wala.classLoader.IMethod;
+import com.ibm.wala.types.MethodReference;
+
+/**
+ * Interns one MethodNode per method reference (class, name and descriptor) 
+ * and gives each a dense int index, so that the nodes of the method level call 
+ * graph are only created once per method during an export.
+ */
+public final class MethodNodeRegistry {
+    
+    private final Map<MethodReference, MethodNode> nodes = new HashMap<>();
+    private final List<MethodNode> nodesByIndex = new ArrayList<>();
+    
+    public MethodNode get(IMethod method) {
+        final MethodReference ref = method.getReference();
+        MethodNode node = nodes.get(ref);
+        if (node == null) {
+            node = new MethodNode(method, nodesByIndex.size());
+            nodes.put(ref, node);
+            nodesByIndex.add(node);
+        }
+        return node;
+    }
+    
+    public MethodNode get(int index) {
+        return nodesByIndex.get(index);
+    }
+    
+    public int size() {
+        return nodesByIndex.size();
+    }
+    
+    public void clear() {
+        nodes.clear();
+        nodesByIndex.clear();
+    }
+}
@@ -0,0 +1,151 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+
+package com.ibm.minerva.dgi.utils.graph;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.ibm.wala.classLoader.IBytecodeMethod;
+import com.ibm.wala.classLoader.IMethod;
+import com.ibm.wala.classLoader.IMethod.SourcePosition;
+import com.ibm.wala.ipa.callgraph.CGNode;
+import com.ibm.wala.ipa.slicer.Statement;
+import com.ibm.wala.ipa.slicer.StatementWithInstructionIndex;
+import com.ibm.wala.shrike.shrikeCT.InvalidClassFileException;
+import com.ibm.wala.ssa.IR;
+import com.ibm.wala.ssa.SSAInstruction;
+
+/**
+ * Caches the source positions of SDG statements for the duration of an export.
+ * Statements with an instruction index are given the position of their instruction.
+ * Other statements are given the position of the method they belong to.
+ */
+public final class StatementPositionCache {
+    
+    private static final int UNKNOWN = Integer.MIN_VALUE;
+    
+    private final Map<CGNode, NodePositions> positions = new HashMap<>();
+    private final Object irLock;
+    
+    public StatementPositionCache() {
+        this.irLock = this;
+    }
+    
+    /**
+     * Creates a cache which reads IRs and source positions while holding the given lock.
+     * Caches used by concurrent threads should share the same lock, since neither IRs nor
+     * source positions can be safely computed concurrently. 
+     */
+    public StatementPositionCache(Object irLock) {
+        this.irLock = irLock;
+    }
+    
+    public Integer getPosition(Statement statement) {
+        final CGNode node = statement.getNode();
+        NodePositions nodePositions = positions.get(node);
+        if (nodePositions == null) {
+            synchronized (irLock) {
+                nodePositions = new NodePositions(node);
+            }
+            positions.put(node, nodePositions);
+        }
+        if (statement instanceof StatementWithInstructionIndex) {
+            return nodePositions.getInstructionPosition(((StatementWithInstructionIndex) statement).getInstructionIndex());
+        }
+        return nodePositions.nodePosition;
+    }
+    
+    public int size() {
+        return positions.size();
+    }
+    
+    public void clear() {
+        positions.clear();
+    }
+    
+    static Integer getNodePosition(CGNode node) {
+        IR ir = node.getIR();
+        Integer pos = null;
+        // TODO: check this assumption: the same source instruction maps to several SSAInstructions,
+        //  therefore it is sufficient to return the position of the first statement.
+        for (SSAInstruction inst : ir.getInstructions()) {
+            try {
+                pos = ir.getMethod().getSourcePosition(inst.iIndex()).getLastLine();
+                return pos;
+            } catch (InvalidClassFileException e) {
+                throw new RuntimeException(e);
+            } catch (NullPointerException npe) {
+                return -1;
+            }
+        }
+        return pos;
+    }
+    
+    private final class NodePositions {
+        
+        private final CGNode node;
+        private final Integer nodePosition;
+        private int[] instructionPositions;
+        
+        NodePositions(CGNode node) {
+            this.node = node;
+            this.nodePosition = getNodePosition(node);
+        }
+        
+        Integer getInstructionPosition(int index) {
+            if (index < 0) {
+                return nodePosition;
+            }
+            if (instructionPositions == null) {
+                synchronized (irLock) {
+                    instructionPositions = new int[node.getIR().getInstructions().length];
+                }
+                Arrays.fill(instructionPositions, UNKNOWN);
+            }
+            if (index >= instructionPositions.length) {
+                return nodePosition;
+            }
+            int pos = instructionPositions[index];
+            if (pos == UNKNOWN) {
+                synchronized (irLock) {
+                    pos = computeInstructionPosition(index);
+                }
+                instructionPositions[index] = pos;
+            }
+            return pos;
+        }
+        
+        private int computeInstructionPosition(int index) {
+            final IMethod method = node.getMethod();
+            try {
+                final int bcIndex = (method instanceof IBytecodeMethod) ? 
+                        ((IBytecodeMethod<?>) method).getBytecodeIndex(index) : index;
+                final SourcePosition sourcePosition = method.getSourcePosition(bcIndex);
+                return (sourcePosition != null) ? sourcePosition.getLastLine() : -1;
+            } 
+            catch (InvalidClassFileException e) {
+                throw new RuntimeException(e);
+            }
+            catch (ArrayIndexOutOfBoundsException e) {
+                return -1;
+            }
+        }
+    }
+}
@@ -0,0 +1,192 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+
+package com.ibm.minerva.dgi.utils.graph;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * Writes a directed graph with at most one weighted edge between two nodes to a JSON
+ * file while the graph is being built, using the same document layout as the JGraphT 
+ * JSONExporter (i.e. a "nodes" and an "edges" array).
+ * <p>
+ * Nodes are written as soon as they are added and are only remembered by their id. 
+ * Edges are kept in a compact side table until {@link #finish()} is called: nodes are
+ * assigned dense int ids and edges are indexed by their (source, target) id pair packed
+ * in a long, so that aggregating edge weights does not allocate.
+ *
+ * @param <N> the type of the nodes
+ * @param <E> the type of the (optional) values attached to the edges
+ */
+public final class StreamingGraphWriter<N,E> implements Closeable {
+
+    @FunctionalInterface
+    public interface NodeWriter<N> {
+        public void write(JsonWriter writer, N node) throws IOException;
+    }
+
+    @FunctionalInterface
+    public interface EdgeWriter<E> {
+        public void write(JsonWriter writer, E value, int weight) throws IOException;
+    }
+
+    private final JsonWriter writer;
+    private final Function<N,String> nodeIdProvider;
+    private final NodeWriter<N> nodeWriter;
+    private final EdgeWriter<E> edgeWriter;
+
+    private final Map<String,Integer> nodeIds = new HashMap<>();
+    private final List<String> nodes = new ArrayList<>();
+    private final LongIntHashMap edgeIndex = new LongIntHashMap();
+
+    private int[] sources = new int[64];
+    private int[] targets = new int[64];
+    private int[] weights = new int[64];
+    private Object[] values = new Object[64];
+    private int edgeCount;
+
+    public StreamingGraphWriter(File file, Function<N,String> nodeIdProvider, 
+            NodeWriter<N> nodeWriter, EdgeWriter<E> edgeWriter) throws IOException {
+        this.writer = new JsonWriter(new BufferedWriter(
+                new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)));
+        this.nodeIdProvider = nodeIdProvider;
+        this.nodeWriter = nodeWriter;
+        this.edgeWriter = edgeWriter;
+        writer.beginObject();
+        writer.name("creator").value("JGraphT JSON Exporter");
+        writer.name("version").value("1");
+        writer.name("nodes").beginArray();
+    }
+
+    /**
+     * Adds the node to the graph (writing it out) if a node with the 
+     * same id has not already been added and returns its int id.
+     */
+    public int addNode(N node) {
+        final String id = nodeIdProvider.apply(node);
+        Integer i = nodeIds.get(id);
+        if (i == null) {
+            i = nodes.size();
+            nodeIds.put(id, i);
+            nodes.add(id);
+            try {
+                writer.beginObject();
+                writer.name("id").value(id);
+                nodeWriter.write(writer, node);
+                writer.endObject();
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return i;
+    }
+
+    public int getNodeCount() {
+        return nodes.size();
+    }
+
+    /**
+     * Returns the id of the edge from source to target, or -1 if there is no such edge.
+     */
+    public int getEdge(int source, int target) {
+        return edgeIndex.get(key(source, target));
+    }
+
+    /**
+     * Adds an edge with a weight of 1 from source to target and returns its id. 
+     */
+    public int addEdge(int source, int target, E value) {
+        if (edgeCount == sources.length) {
+            final int capacity = edgeCount << 1;
+            sources = Arrays.copyOf(sources, capacity);
+            targets = Arrays.copyOf(targets, capacity);
+            weights = Arrays.copyOf(weights, capacity);
+            values = Arrays.copyOf(values, capacity);
+        }
+        final int edge = edgeCount++;
+        sources[edge] = source;
+        targets[edge] = target;
+        weights[edge] = 1;
+        values[edge] = value;
+        edgeIndex.put(key(source, target), edge);
+        return edge;
+    }
+
+    public void incrementWeight(int edge) {
+        ++weights[edge];
+    }
+
+    public void incrementWeight(int edge, int amount) {
+        weights[edge] += amount;
+    }
+
+    public int getEdgeCount() {
+        return edgeCount;
+    }
+
+    public int getEdgeWeight(int edge) {
+        return weights[edge];
+    }
+
+    @SuppressWarnings("unchecked")
+    public E getEdgeValue(int edge) {
+        return (E) values[edge];
+    }
+
+    /**
+     * Writes the edges and completes the JSON document.
+     */
+    public void finish() throws IOException {
+        writer.endArray();
+        writer.name("edges").beginArray();
+        for (int edge = 0; edge < edgeCount; ++edge) {
+            writer.beginObject();
+            writer.name("source").value(nodes.get(sources[edge]));
+            writer.name("target").value(nodes.get(targets[edge]));
+            edgeWriter.write(writer, getEdgeValue(edge), weights[edge]);
+            writer.endObject();
+        }
+        writer.endArray();
+        writer.endObject();
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+
+    private static long key(int source, int target) {
+        return ((long) source << 32) | (target & 0xffffffffL);
+    }
+}
@@ -18,13 +18,11 @@
 
 package com.ibm.minerva.dgi.utils.graph;
 
+import com.google.gson.stream.JsonWriter;
 import com.ibm.wala.ipa.slicer.Statement;
-import org.apache.commons.lang3.builder.HashCodeBuilder;
-import org.jgrapht.nio.Attribute;
-import org.jgrapht.nio.DefaultAttribute;
 
-import java.util.LinkedHashMap;
-import java.util.Map;
+import java.io.IOException;
+import java.util.Objects;
 
 public class SystemDepEdge extends AbstractGraphEdge {
     public final Integer sourcePos;
@@ -44,14 +42,38 @@ public class SystemDepEdge extends AbstractGraphEdge {
         this.sourcePos = getStatementPosition(sourceStatement);
         this.destinationPos = getStatementPosition(destinationStatement);
     }
+    public SystemDepEdge(Integer sourcePos, Integer destinationPos, String type) {
+        super();
+        this.type = type;
+        this.sourcePos = sourcePos;
+        this.destinationPos = destinationPos;
+    }
     @Override
     public int hashCode() {
-        return new HashCodeBuilder(17, 37).append(sourcePos).append(destinationPos).append(context).append(type).build();
+        // Computed as HashCodeBuilder(17, 37) would, so that edge ids remain stable.
+        int hash = 17;
+        hash = hash * 37 + Objects.hashCode(sourcePos);
+        hash = hash * 37 + Objects.hashCode(destinationPos);
+        hash = hash * 37 + Objects.hashCode(context);
+        hash = hash * 37 + Objects.hashCode(type);
+        return hash;
     }
 
     @Override
     public boolean equals(Object o) {
-        return (o instanceof SystemDepEdge) && (this.toString().equals(o.toString())) && Integer.valueOf(this.hashCode()).equals(o.hashCode()) && this.type.equals(((SystemDepEdge) o).getType());
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof SystemDepEdge)) {
+            return false;
+        }
+        final SystemDepEdge other = (SystemDepEdge) o;
+        return matches(other.sourcePos, other.destinationPos, other.type, other.context);
+    }
+    // Allows an edge to be compared with a dependency without creating an edge for it.
+    public boolean matches(Integer sourcePos, Integer destinationPos, String type, String context) {
+        return Objects.equals(this.type, type) && Objects.equals(this.context, context)
+                && Objects.equals(this.sourcePos, sourcePos) && Objects.equals(this.destinationPos, destinationPos);
     }
     public String getType() { return type; }
     public Integer getSourcePos() {
@@ -62,14 +84,12 @@ public class SystemDepEdge extends AbstractGraphEdge {
         return destinationPos;
     }
 
-    public Map<String, Attribute> getAttributes() {
-        Map<String, Attribute> map = new LinkedHashMap<>();
-        map.put("id", DefaultAttribute.createAttribute(getId()));
-        map.put("type", DefaultAttribute.createAttribute(getType()));
-        map.put("weight", DefaultAttribute.createAttribute(getWeight()));
-        map.put("context", DefaultAttribute.createAttribute(getContext()));
-        map.put("sourcePos", DefaultAttribute.createAttribute(getSourcePos()));
-        map.put("destinationPos", DefaultAttribute.createAttribute(getDestinationPos()));
-        return map;
+    public void writeAttributes(JsonWriter writer, int weight) throws IOException {
+        writer.name("id").value(getId());
+        writer.name("type").value(getType());
+        writer.name("weight").value(weight);
+        writer.name("context").value(getContext());
+        writer.name("sourcePos").value(getSourcePos());
+        writer.name("destinationPos").value(getDestinationPos());
     }
 }
\ No newline at end of file
@@ -0,0 +1,174 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+
+package com.ibm.minerva.analyzer;
+
+import static com.ibm.minerva.analyzer.TestArchives.archive;
+import static com.ibm.minerva.analyzer.TestArchives.classes;
+import static com.ibm.minerva.analyzer.TestArchives.interfaceFile;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class AnalysisCacheTest {
+
+    @TempDir
+    File tempDir;
+
+    @Test
+    void writesTheSameTablesFromTheCachedRecords() throws IOException {
+        final Map<String,byte[]> war = classes("WEB-INF/classes/", "a.Service", "a.Helper", "a.Service$Inner");
+        war.put("WEB-INF/classes/a/Api.class", interfaceFile("a.Api"));
+        war.put("WEB-INF/lib/lib.jar", archive(classes("", "b.Helper", "a.Helper", "b.Util")));
+        final File[] archives = {
+                archive(new File(tempDir, "app.war"), war),
+                archive(new File(tempDir, "app.jar"), classes("", "c.Main", "a.Helper")),
+        };
+        final File cacheDir = new File(tempDir, "cache");
+
+        final File expected = new File(tempDir, "expected");
+        AnalysisCheckpointTest.scan(expected, archives).writeTables();
+
+        // The cold run parses every class and writes its records. The copies of a.Helper 
+        // in the other archives have the same class file, so they are read from the cache.
+        final AnalysisMetrics cold = scan(new File(tempDir, "cold"), cacheDir, archives);
+        assertEquals(7, cold.getCounter(AnalysisMetrics.CLASSES_PARSED));
+        assertEquals(2, cold.getCounter(AnalysisMetrics.CLASSES_CACHED));
+        assertSameTables(expected, new File(tempDir, "cold"));
+
+        // The archives are unchanged, so their records are used without reading them.
+        final AnalysisMetrics warmArchives = scan(new File(tempDir, "warmArchives"), cacheDir, archives);
+        assertEquals(0, warmArchives.getCounter(AnalysisMetrics.CLASSES_PARSED));
+        assertEquals(9, warmArchives.getCounter(AnalysisMetrics.CLASSES_CACHED));
+        assertSameTables(expected, new File(tempDir, "warmArchives"));
+
+        // Without the records of the two archives and the nested JAR, 
+        // the classes are read again but not parsed.
+        assertEquals(3, deleteArchiveRecords(cacheDir));
+        final AnalysisMetrics warmClasses = scan(new File(tempDir, "warmClasses"), cacheDir, archives);
+        assertEquals(0, warmClasses.getCounter(AnalysisMetrics.CLASSES_PARSED));
+        assertEquals(9, warmClasses.getCounter(AnalysisMetrics.CLASSES_CACHED));
+        assertSameTables(expected, new File(tempDir, "warmClasses"));
+    }
+
+    @Test
+    void evictsTheLeastRecentlyUsedRecords() throws IOException {
+        final File cacheDir = new File(tempDir, "cache");
+        final AnalysisCache writer = new AnalysisCache(cacheDir, 0);
+        final List<String> classHashes = Arrays.asList(writer.hash(new byte[] {1}), writer.hash(new byte[] {2}));
+        final String[] archives = {"a", "b", "c"};
+        final long now = System.currentTimeMillis();
+        long recordSize = 0;
+        for (int i = 0; i < archives.length; ++i) {
+            writer.putArchive(archives[i], classHashes);
+            final File record = findRecord(cacheDir, archives[i]);
+            assertNotNull(record);
+            assertTrue(record.setLastModified(now - (archives.length - i) * 60_000L));
+            recordSize = record.length();
+        }
+        // The records of other versions are always deleted.
+        final File oldVersion = new File(new File(cacheDir, "v0"), "old.json");
+        oldVersion.getParentFile().mkdirs();
+        Files.write(oldVersion.toPath(), new byte[1000]);
+
+        // Reading a record makes it the most recently used.
+        final AnalysisCache cache = new AnalysisCache(cacheDir, 2 * recordSize + recordSize / 2);
+        assertEquals(classHashes, cache.getArchive("a"));
+        assertEquals(-1L, cache.getSize());
+        cache.evict();
+        assertFalse(oldVersion.exists());
+        assertNull(findRecord(cacheDir, "b"));
+        assertNotNull(findRecord(cacheDir, "a"));
+        assertNotNull(findRecord(cacheDir, "c"));
+        assertEquals(2 * recordSize, cache.getSize());
+
+        // A cache within its limit is left as it is.
+        cache.evict();
+        assertEquals(2 * recordSize, cache.getSize());
+        assertEquals(classHashes, cache.getArchive("c"));
+
+        final AnalysisCache smaller = new AnalysisCache(cacheDir, recordSize / 2);
+        smaller.evict();
+        assertEquals(0L, smaller.getSize());
+        assertNull(smaller.getArchive("a"));
+        assertNull(smaller.getArchive("c"));
+    }
+
+    private static AnalysisMetrics scan(File dir, File cacheDir, File... archives) throws IOException {
+        final AnalysisCache cache = new AnalysisCache(cacheDir, 0);
+        final AnalysisMetrics metrics = new AnalysisMetrics();
+        final TableBuilder tb = new TableBuilder(dir, TableBuilderConfiguration.SYM_REF_TABLES);
+        tb.setAnalysisCache(cache);
+        final ArchiveProcessor processor = new ArchiveProcessor(tb, new AnalysisProgress(), metrics, cache);
+        for (File archive : archives) {
+            processor.processBinaryFile(archive);
+        }
+        tb.writeTables();
+        return metrics;
+    }
+
+    private static void assertSameTables(File expected, File actual) throws IOException {
+        for (String name : new String[] {"symTable.json", "refTable.json"}) {
+            assertArrayEquals(Files.readAllBytes(new File(expected, name).toPath()), 
+                    Files.readAllBytes(new File(actual, name).toPath()), name);
+        }
+    }
+
+    private static int deleteArchiveRecords(File dir) {
+        int count = 0;
+        final File[] files = dir.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                if (f.isDirectory()) {
+                    count += deleteArchiveRecords(f);
+                }
+                else if (dir.getName().equals("archives")) {
+                    assertTrue(f.delete());
+                    ++count;
+                }
+            }
+        }
+        return count;
+    }
+
+    private static File findRecord(File dir, String hash) {
+        final File[] files = dir.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                final File record = f.isDirectory() ? findRecord(f, hash) : f;
+                if (record != null && record.getName().equals(hash + ".json")) {
+                    return record;
+                }
+            }
+        }
+        return null;
+    }
+}
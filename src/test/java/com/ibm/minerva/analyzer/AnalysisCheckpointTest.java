@@ -0,0 +1,128 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+
+package com.ibm.minerva.analyzer;
+
+import static com.ibm.minerva.analyzer.TestArchives.archive;
+import static com.ibm.minerva.analyzer.TestArchives.classes;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class AnalysisCheckpointTest {
+
+    @TempDir
+    File tempDir;
+
+    @Test
+    void replayRebuildsTheTablesOfTheScan() throws IOException {
+        final File jar = archive(new File(tempDir, "app.jar"), classes("", "a.Foo", "b.Foo", "b.Bar", "c.Foo"));
+        final File scanned = new File(tempDir, "scanned");
+        scan(scanned, jar).writeTables();
+
+        final AnalysisCheckpoint checkpoint = writeCheckpoint(new File(tempDir, "checkpoint"), jar);
+        assertTrue(checkpoint.exists());
+        assertTrue(checkpoint.matches(new File[] {jar}));
+        assertArrayEquals(new Object[] {jar.getAbsoluteFile()}, checkpoint.getArchives());
+
+        final File replayed = new File(tempDir, "replayed");
+        final TableBuilder tb = new TableBuilder(replayed, TableBuilderConfiguration.SYM_REF_TABLES);
+        assertEquals(4, checkpoint.replay(tb, new AnalysisProgress()));
+        tb.writeTables();
+        assertSameTables(scanned, replayed);
+    }
+
+    @Test
+    void addClassesAppendsTheClassesOfAnotherCheckpoint() throws IOException {
+        final File jar1 = archive(new File(tempDir, "app1.jar"), classes("", "a.Foo", "a.Bar"));
+        final File jar2 = archive(new File(tempDir, "app2.jar"), classes("", "b.Foo", "a.Bar", "b.Baz"));
+        final File scanned = new File(tempDir, "scanned");
+        scan(scanned, jar1, jar2).writeTables();
+
+        final AnalysisCheckpoint merged = new AnalysisCheckpoint(new File(tempDir, "merged"));
+        assertTrue(merged.begin());
+        merged.addClasses(writeCheckpoint(new File(tempDir, "checkpoint1"), jar1));
+        merged.addClasses(writeCheckpoint(new File(tempDir, "checkpoint2"), jar2));
+        assertTrue(merged.complete(new File[] {jar1, jar2}, Collections.emptyList()));
+
+        final File replayed = new File(tempDir, "replayed");
+        final TableBuilder tb = new TableBuilder(replayed, TableBuilderConfiguration.SYM_REF_TABLES);
+        assertEquals(5, merged.replay(tb, new AnalysisProgress()));
+        tb.writeTables();
+        assertSameTables(scanned, replayed);
+    }
+
+    @Test
+    void doesNotMatchChangedArchives() throws IOException {
+        final File jar = archive(new File(tempDir, "app.jar"), classes("", "a.Foo"));
+        final AnalysisCheckpoint checkpoint = writeCheckpoint(new File(tempDir, "checkpoint"), jar);
+        assertFalse(checkpoint.matches(new File[] {jar, jar}));
+        archive(jar, classes("", "a.Foo", "a.Bar"));
+        assertFalse(checkpoint.matches(new File[] {jar}));
+    }
+
+    @Test
+    void addClassesRequiresACheckpointBeingWritten() throws IOException {
+        final File jar = archive(new File(tempDir, "app.jar"), classes("", "a.Foo"));
+        final AnalysisCheckpoint checkpoint = writeCheckpoint(new File(tempDir, "checkpoint"), jar);
+        assertThrows(IOException.class, () -> new AnalysisCheckpoint(new File(tempDir, "merged")).addClasses(checkpoint));
+    }
+
+    static AnalysisCheckpoint writeCheckpoint(File dir, File... archives) throws IOException {
+        final AnalysisCheckpoint checkpoint = new AnalysisCheckpoint(dir);
+        assertTrue(checkpoint.begin());
+        final TableBuilder tb = new TableBuilder(dir, TableBuilderConfiguration.NONE);
+        tb.setAnalysisCheckpoint(checkpoint);
+        final ArchiveProcessor processor = new ArchiveProcessor(tb);
+        for (File archive : archives) {
+            processor.processBinaryFile(archive);
+        }
+        assertTrue(checkpoint.complete(archives, Collections.emptyList()));
+        return checkpoint;
+    }
+
+    static TableBuilder scan(File dir, File... archives) throws IOException {
+        final TableBuilder tb = new TableBuilder(dir, TableBuilderConfiguration.SYM_REF_TABLES);
+        final ArchiveProcessor processor = new ArchiveProcessor(tb);
+        for (File archive : archives) {
+            processor.processBinaryFile(archive);
+        }
+        return tb;
+    }
+
+    static void assertSameTables(File expected, File actual) throws IOException {
+        for (String name : new String[] {"symTable.json", "refTable.json"}) {
+            assertEquals(read(new File(expected, name)), read(new File(actual, name)), name);
+        }
+    }
+
+    static String read(File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+}
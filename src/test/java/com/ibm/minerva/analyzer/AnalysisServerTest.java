@@ -0,0 +1,189 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+
+package com.ibm.minerva.analyzer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermissions;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+class AnalysisServerTest {
+
+    @TempDir
+    File tempDir;
+
+    private AnalysisServer server;
+    private String host;
+    private String authorization;
+
+    @BeforeEach
+    void start() throws IOException {
+        server = new AnalysisServer(0, 1, 10).setTokenFile(new File(tempDir, "server.token"))
+                .setJobRoot(new File(tempDir, "root"));
+        server.start();
+        host = "localhost:" + server.getPort();
+        authorization = "Bearer " + server.getToken();
+    }
+
+    @AfterEach
+    void stop() {
+        server.stop();
+    }
+
+    @Test
+    void writesTheTokenToAFileOnlyTheOwnerCanRead() throws IOException {
+        final File tokenFile = new File(tempDir, "server.token");
+        assertEquals(server.getToken(), new String(Files.readAllBytes(tokenFile.toPath()), StandardCharsets.UTF_8));
+        if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+            assertEquals("rw-------", PosixFilePermissions.toString(Files.getPosixFilePermissions(tokenFile.toPath())));
+        }
+    }
+
+    @Test
+    void acceptsRequestsOfLocalClientsWithTheToken() throws IOException {
+        assertEquals(200, send("GET", "/analyses", host, authorization, null, null));
+        assertEquals(200, send("GET", "/analyses", "127.0.0.1:" + server.getPort(), authorization, null, null));
+        assertEquals(200, send("DELETE", "/caches", host, authorization, "application/json", null));
+    }
+
+    @Test
+    void rejectsRequestsToOtherHosts() throws IOException {
+        assertEquals(403, send("GET", "/analyses", "attacker.example:" + server.getPort(), authorization, null, null));
+        assertEquals(403, send("GET", "/analyses", "localhost", authorization, null, null));
+        assertEquals(403, send("GET", "/analyses", null, authorization, null, null));
+    }
+
+    @Test
+    void rejectsRequestsOfWebPages() throws IOException {
+        assertEquals(403, send("GET", "/analyses", host, authorization, null, "Origin: http://localhost:" + server.getPort()));
+        assertEquals(403, send("GET", "/analyses", host, authorization, null, "Origin: null"));
+    }
+
+    @Test
+    void rejectsRequestsWithoutTheToken() throws IOException {
+        assertEquals(401, send("GET", "/analyses", host, null, null, null));
+        assertEquals(401, send("GET", "/analyses", host, "Bearer " + server.getToken().substring(1), null, null));
+        assertEquals(401, send("DELETE", "/caches", host, null, "application/json", null));
+    }
+
+    @Test
+    void rejectsChangesWhichAreNotJson() throws IOException {
+        assertEquals(415, send("DELETE", "/caches", host, authorization, null, null));
+        assertEquals(415, send("DELETE", "/caches", host, authorization, "text/plain", null));
+        assertEquals(415, send("POST", "/analyses", host, authorization, "application/x-www-form-urlencoded", null));
+        assertEquals(200, send("DELETE", "/caches", host, authorization, "Application/JSON; charset=utf-8", null));
+    }
+
+    @Test
+    void rejectsAnalysesWritingOutsideTheJobRoot() throws IOException {
+        final String root = new File(tempDir, "root").getPath().replace("\\", "\\\\");
+        assertEquals(400, post("{\"archives\": [], \"output\": \"" + root + "/../out\"}"));
+        assertEquals(202, post("{\"archives\": [], \"output\": \"" + root + "/out\"}"));
+        assertEquals(400, post("{\"archives\": [], \"output\": \"" + root + "/out\", \"cache\": \"" + root + "/../cache\"}"));
+        assertEquals(400, post("{\"archives\": [], \"output\": \"" + root + "/out\", \"checkpoint\": \"/checkpoint\"}"));
+    }
+
+    @Test
+    void acceptsAnalysesWritingInsideTheJobRoot() throws IOException {
+        final File root = new File(tempDir, "root");
+        final JsonObject spec = JsonParser.parseString("{\"archives\": [], \"output\": \"out\", "
+                + "\"cache\": \"a/../cache\", \"checkpoint\": \"a/b/checkpoint\"}").getAsJsonObject();
+        new AnalysisJob(1, spec, root, AnalysisJob.DEFAULT_MEMORY_FACTOR).checkWrittenDirectories(root);
+        new AnalysisJob(1, spec, new File(root, "out"), AnalysisJob.DEFAULT_MEMORY_FACTOR).checkWrittenDirectories(root);
+        assertThrows(IOException.class, () -> new AnalysisJob(1, spec, tempDir, AnalysisJob.DEFAULT_MEMORY_FACTOR).checkWrittenDirectories(root));
+    }
+
+    @Test
+    void rejectsAnalysesWithUnknownOptionValues() throws IOException {
+        final File root = new File(tempDir, "root");
+        for (String option : new String[] {"\"callGraphBuilder\": \"RTA\"", "\"callGraphBuilder\": true", 
+                "\"callGraphBuilder\": false", "\"methodGraphTier\": \"call_graph\""}) {
+            new AnalysisJob(1, spec("{\"archives\": [], \"output\": \"out\", " + option + "}"), root, AnalysisJob.DEFAULT_MEMORY_FACTOR);
+        }
+        for (String name : new String[] {"callGraphBuilder", "methodGraphTier"}) {
+            final JsonObject spec = spec("{\"archives\": [], \"output\": \"out\", \"" + name + "\": \"unknown\"}");
+            final IOException e = assertThrows(IOException.class, () -> new AnalysisJob(1, spec, root, AnalysisJob.DEFAULT_MEMORY_FACTOR));
+            assertTrue(e.getMessage().contains(name), e.getMessage());
+        }
+        final String path = root.getPath().replace("\\", "\\\\");
+        assertEquals(400, post("{\"archives\": [], \"output\": \"" + path + "/out\", \"callGraphBuilder\": \"CHA\"}"));
+    }
+
+    private static JsonObject spec(String json) {
+        return JsonParser.parseString(json).getAsJsonObject();
+    }
+
+    private int post(String body) throws IOException {
+        return send("POST", "/analyses", host, authorization, "application/json", null, body);
+    }
+
+    private int send(String method, String path, String host, String authorization, String contentType, String header) throws IOException {
+        return send(method, path, host, authorization, contentType, header, "");
+    }
+
+    /**
+     * Sends a request on a new connection and returns the status code of the response. 
+     * A socket is used because HttpURLConnection does not allow setting the Host header.
+     */
+    private int send(String method, String path, String host, String authorization, 
+            String contentType, String header, String body) throws IOException {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort())) {
+            final byte[] content = body.getBytes(StandardCharsets.UTF_8);
+            final StringBuilder request = new StringBuilder(method).append(' ').append(path).append(" HTTP/1.1\r\n");
+            if (host != null) {
+                request.append("Host: ").append(host).append("\r\n");
+            }
+            if (authorization != null) {
+                request.append("Authorization: ").append(authorization).append("\r\n");
+            }
+            if (contentType != null) {
+                request.append("Content-Type: ").append(contentType).append("\r\n");
+            }
+            if (header != null) {
+                request.append(header).append("\r\n");
+            }
+            request.append("Content-Length: ").append(content.length).append("\r\nConnection: close\r\n\r\n");
+            final OutputStream os = socket.getOutputStream();
+            os.write(request.toString().getBytes(StandardCharsets.UTF_8));
+            os.write(content);
+            os.flush();
+            final String status = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8)).readLine();
+            return Integer.parseInt(status.split(" ")[1]);
+        }
+    }
+}
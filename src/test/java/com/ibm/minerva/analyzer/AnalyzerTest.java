@@ -0,0 +1,64 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+
+package com.ibm.minerva.analyzer;
+
+import static com.ibm.minerva.analyzer.TestArchives.archive;
+import static com.ibm.minerva.analyzer.TestArchives.classes;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.CancellationException;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class AnalyzerTest {
+
+    @TempDir
+    File tempDir;
+
+    @Test
+    void cannotBeRunTwice() throws IOException {
+        final File jar = archive(new File(tempDir, "app.jar"), classes("", "a.Foo", "a.Bar", "b.Foo"));
+        final Analyzer analyzer = new Analyzer(jar, new File(tempDir, "out"), TableBuilderConfiguration.SYM_REF_TABLES);
+        analyzer.run();
+        assertEquals(AnalysisProgress.Phase.DONE, analyzer.getProgress().getPhase());
+        assertEquals(3, analyzer.getProgress().getClassesScanned());
+        assertThrows(IllegalStateException.class, analyzer::run);
+        assertThrows(IllegalStateException.class, analyzer::scan);
+        assertEquals(3, analyzer.getProgress().getClassesScanned());
+    }
+
+    @Test
+    void cannotBeRunOnceCanceled() throws IOException {
+        final File jar = archive(new File(tempDir, "app.jar"), classes("", "a.Foo"));
+        final File outputDir = new File(tempDir, "out");
+        final Analyzer analyzer = new Analyzer(jar, outputDir, TableBuilderConfiguration.SYM_REF_TABLES);
+        analyzer.cancel();
+        assertThrows(CancellationException.class, analyzer::run);
+        assertTrue(analyzer.getProgress().isCanceled());
+        assertEquals(0, analyzer.getProgress().getClassesScanned());
+        assertFalse(new File(outputDir, "symTable.json").exists());
+        assertThrows(IllegalStateException.class, analyzer::scan);
+    }
+}
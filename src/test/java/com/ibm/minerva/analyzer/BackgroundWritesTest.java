@@ -0,0 +1,118 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+
+package com.ibm.minerva.analyzer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+class BackgroundWritesTest {
+
+    @Test
+    void waitsForAllTheWrites() throws IOException {
+        final BackgroundWrites writes = new BackgroundWrites("test-writer", 2);
+        final AtomicInteger written = new AtomicInteger();
+        for (int i = 0; i < 10; ++i) {
+            writes.submit(() -> {
+                sleep(10);
+                written.incrementAndGet();
+            });
+        }
+        writes.await();
+        assertEquals(10, written.get());
+    }
+
+    @Test
+    void rethrowsTheFailureOfTheFirstWriteSubmitted() {
+        final BackgroundWrites writes = new BackgroundWrites("test-writer", 2);
+        final IOException first = new IOException("first");
+        final CountDownLatch secondFailed = new CountDownLatch(1);
+        writes.submit(() -> {
+            // Fails after the second write.
+            await(secondFailed);
+            throw first;
+        });
+        writes.submit(() -> {
+            secondFailed.countDown();
+            throw new IOException("second");
+        });
+        assertSame(first, assertThrows(IOException.class, writes::await));
+    }
+
+    @Test
+    void rethrowsUncheckedFailuresUnwrapped() {
+        final RuntimeException runtimeException = new IllegalStateException("runtime");
+        final BackgroundWrites runtimeWrites = new BackgroundWrites("test-writer", 1);
+        runtimeWrites.submit(() -> {
+            throw runtimeException;
+        });
+        assertSame(runtimeException, assertThrows(IllegalStateException.class, runtimeWrites::await));
+
+        final Error error = new OutOfMemoryError("error");
+        final BackgroundWrites errorWrites = new BackgroundWrites("test-writer", 1);
+        errorWrites.submit(() -> {
+            throw error;
+        });
+        assertSame(error, assertThrows(OutOfMemoryError.class, errorWrites::await));
+    }
+
+    @Test
+    void waitsForTheOtherWritesAfterAFailure() {
+        final BackgroundWrites writes = new BackgroundWrites("test-writer", 2);
+        final AtomicBoolean written = new AtomicBoolean();
+        writes.submit(() -> {
+            throw new IOException("failed");
+        });
+        writes.submit(() -> {
+            sleep(100);
+            written.set(true);
+        });
+        assertThrows(IOException.class, writes::await);
+        assertTrue(written.get());
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void await(CountDownLatch latch) throws IOException {
+        try {
+            if (!latch.await(10, TimeUnit.SECONDS)) {
+                throw new IOException("timeout");
+            }
+        }
+        catch (InterruptedException e) {
+            throw new IOException(e);
+        }
+    }
+}
@@ -0,0 +1,271 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+
+package com.ibm.minerva.analyzer;
+
+import static com.ibm.minerva.analyzer.AnalysisCheckpointTest.read;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+class IncrementalCallGraphTest {
+
+    @TempDir
+    File tempDir;
+
+    @Test
+    void findsChangedAddedAndRemovedClasses() throws IOException {
+        final File stateDir = new File(tempDir, "state");
+        final IncrementalCallGraph first = new IncrementalCallGraph(stateDir);
+        first.addClass("a.A", bytes("A"));
+        first.addClass("a.B", bytes("B"));
+        first.addClass("a.C", bytes("C"));
+        assertNull(first.computeChangedClasses("options"));
+        save(first, graph(), graph(), false);
+
+        final IncrementalCallGraph second = new IncrementalCallGraph(stateDir);
+        second.addClass("a.A", bytes("A"));
+        second.addClass("a.B", bytes("B2"));
+        second.addClass("a.D", bytes("D"));
+        assertEquals(set("a.B", "a.C", "a.D"), second.computeChangedClasses("options"));
+
+        // Classes with the same name in several modules are changed if any of them is.
+        final IncrementalCallGraph third = new IncrementalCallGraph(stateDir);
+        third.addClass("a.A", bytes("A"));
+        third.addClass("a.A", bytes("A"));
+        third.addClass("a.B", bytes("B"));
+        third.addClass("a.C", bytes("C"));
+        assertEquals(set("a.A"), third.computeChangedClasses("options"));
+    }
+
+    @Test
+    void rebuildsWhenTheFingerprintChanges() throws IOException {
+        final File stateDir = new File(tempDir, "state");
+        final IncrementalCallGraph full = state(stateDir);
+        assertNull(full.computeChangedClasses("options"));
+        save(full, graph(), graph(), false);
+        assertTrue(state(stateDir).computeChangedClasses("options").isEmpty());
+        assertNull(state(stateDir).computeChangedClasses("other options"));
+    }
+
+    @Test
+    void rebuildsWhenThereAreNoGraphs() throws IOException {
+        final File stateDir = new File(tempDir, "state");
+        final IncrementalCallGraph full = state(stateDir);
+        assertNull(full.computeChangedClasses("options"));
+        full.save(null, null, false);
+        assertNull(state(stateDir).computeChangedClasses("options"));
+    }
+
+    @Test
+    void rebuildsAfterTheMaximumNumberOfIncrementalRuns() throws IOException {
+        final File stateDir = new File(tempDir, "state");
+        final IncrementalCallGraph full = state(stateDir);
+        assertNull(full.computeChangedClasses("options"));
+        save(full, graph(), graph(), false);
+        for (int i = 0; i < IncrementalCallGraph.MAX_INCREMENTAL_RUNS; ++i) {
+            final IncrementalCallGraph incremental = state(stateDir);
+            assertNotNull(incremental.computeChangedClasses("options"));
+            save(incremental, graph(), graph(), true);
+        }
+        final IncrementalCallGraph limit = state(stateDir);
+        assertNull(limit.computeChangedClasses("options"));
+        save(limit, graph(), graph(), false);
+        assertNotNull(state(stateDir).computeChangedClasses("options"));
+    }
+
+    @Test
+    void findsTheAffectedClasses() throws IOException {
+        final File stateDir = new File(tempDir, "state");
+        final IncrementalCallGraph previous = state(stateDir);
+        assertNull(previous.computeChangedClasses("options"));
+        save(previous, graph(new String[] {"a.B", "a.S", "a.C", "a.D", "a.G", "a.E", "a.F"}, 
+                "a.B", "a.A", "a.C", "a.D", "a.G", "a.S", "a.E", "a.F"), graph(), false);
+
+        // A is changed, so is its subclass D. B calls A, C calls D and G calls 
+        // the super type S of A, so these are affected. E calls F, which is not.
+        final Map<String,Set<String>> appClasses = new LinkedHashMap<>();
+        appClasses.put("a.S", Collections.emptySet());
+        appClasses.put("a.A", set("a.S"));
+        appClasses.put("a.D", set("a.A", "a.S"));
+        for (String name : new String[] {"a.B", "a.C", "a.E", "a.F", "a.G"}) {
+            appClasses.put(name, Collections.emptySet());
+        }
+        for (int i = appClasses.size(); i < 20; ++i) {
+            appClasses.put("b.C" + i, Collections.emptySet());
+        }
+        final IncrementalCallGraph incremental = state(stateDir);
+        final IncrementalCallGraph.Region region = incremental.getAffectedClasses(set("a.A"), appClasses);
+        assertNotNull(region);
+        assertEquals(set("a.A", "a.D"), region.changed);
+        assertEquals(set("a.A", "a.D", "a.B", "a.C", "a.G"), region.affected);
+
+        // 5 of 16 classes is more than the maximum affected fraction.
+        final Map<String,Set<String>> fewerClasses = new LinkedHashMap<>(appClasses);
+        for (int i = 16; i < 20; ++i) {
+            fewerClasses.remove("b.C" + i);
+        }
+        assertTrue(5 > IncrementalCallGraph.MAX_AFFECTED_FRACTION * fewerClasses.size());
+        assertNull(incremental.getAffectedClasses(set("a.A"), fewerClasses));
+    }
+
+    @Test
+    void splicesTheOwnedEdgesAndDropsOrphanNodes() throws IOException {
+        final File stateDir = new File(tempDir, "state");
+        final IncrementalCallGraph previous = state(stateDir);
+        assertNull(previous.computeChangedClasses("options"));
+        save(previous, graph(new String[] {"a.A", "a.B", "a.C", "a.O", "a.X"}, 
+                "a.A", "a.B", "a.A", "a.O", "a.B", "a.C", "a.X", "a.A"), graph(), false);
+
+        final File partial = new File(tempDir, "partial.json");
+        final JsonObject partialGraph = graph(new String[] {"a.A", "a.C"}, "a.A", "a.C");
+        partialGraph.getAsJsonArray("nodes").get(0).getAsJsonObject().addProperty("label", "new");
+        write(partialGraph, partial);
+
+        final IncrementalCallGraph incremental = state(stateDir);
+        final IncrementalCallGraph.Region region = new IncrementalCallGraph.Region(set("a.A"), set("a.A"));
+        final File output = new File(tempDir, "classGraph.json");
+        final IncrementalCallGraph.GraphSize size = incremental.spliceClassGraph(partial, output, region::ownsClassEdge);
+        final JsonObject spliced = JsonParser.parseString(read(output)).getAsJsonObject();
+
+        // The edges from A are replaced and O, which only A called, is dropped.
+        assertEquals(Arrays.asList("a.B>a.C", "a.X>a.A", "a.A>a.C"), edges(spliced));
+        assertEquals(Arrays.asList("a.A", "a.B", "a.C", "a.X"), nodes(spliced));
+        assertEquals("new", spliced.getAsJsonArray("nodes").get(0).getAsJsonObject().get("label").getAsString());
+        assertEquals(4, size.nodeCount);
+        assertEquals(3, size.edgeCount);
+
+        // Without a partial graph the owned edges are only removed.
+        incremental.spliceClassGraph(null, output, region::ownsClassEdge);
+        final JsonObject removed = JsonParser.parseString(read(output)).getAsJsonObject();
+        assertEquals(Arrays.asList("a.B>a.C", "a.X>a.A"), edges(removed));
+        assertEquals(Arrays.asList("a.A", "a.B", "a.C", "a.X"), nodes(removed));
+    }
+
+    @Test
+    void ownsTheMethodEdgesOfTheAffectedAndChangedClasses() {
+        final IncrementalCallGraph.Region region = new IncrementalCallGraph.Region(set("a.C"), set("a.C", "a.D"));
+        assertTrue(region.ownsMethodEdge("a.D.m()V", "x.Y.n()V", false));
+        assertFalse(region.ownsMethodEdge("a.C$I.<init>(La/C;)V", "x.Y.n()V", false));
+        assertFalse(region.ownsMethodEdge("x.Y.n()V", "a.C.m(Ljava/lang/String;)V", false));
+        assertTrue(region.ownsMethodEdge("x.Y.n()V", "a.C.m(Ljava/lang/String;)V", true));
+        assertFalse(region.ownsMethodEdge("x.Y.n()V", "a.D.m()V", true));
+    }
+
+    @Test
+    void getsTheClassOfMethodIds() {
+        assertEquals("a.b.C", IncrementalCallGraph.getMethodClassName("a.b.C.m()V"));
+        assertEquals("a.b.C$D", IncrementalCallGraph.getMethodClassName("a.b.C$D.<init>(La/b/C;)V"));
+        assertEquals("a.b.C", IncrementalCallGraph.getMethodClassName("a.b.C.m(La.b.D;[Ljava/util/List;)La/b/E;"));
+        assertEquals("a.b.C", IncrementalCallGraph.getMethodClassName("a.b.C.m(Ljava.lang.String;)Ljava.lang.Object;"));
+        assertEquals("C", IncrementalCallGraph.getMethodClassName("C.m(LC;)V"));
+        assertEquals("C", IncrementalCallGraph.getMethodClassName("C"));
+    }
+
+    private static IncrementalCallGraph state(File stateDir) {
+        final IncrementalCallGraph state = new IncrementalCallGraph(stateDir);
+        state.addClass("a.A", bytes("A"));
+        state.addClass("a.B", bytes("B"));
+        return state;
+    }
+
+    private void save(IncrementalCallGraph state, JsonObject classGraph, JsonObject methodGraph, boolean isIncremental) 
+            throws IOException {
+        final File classGraphFile = new File(tempDir, "saved-classGraph.json");
+        final File methodGraphFile = new File(tempDir, "saved-methodGraph.json");
+        write(classGraph, classGraphFile);
+        write(methodGraph, methodGraphFile);
+        state.save(classGraphFile, methodGraphFile, isIncremental);
+    }
+
+    /**
+     * Returns a graph with the given nodes and edges, given as pairs of source and target.
+     */
+    private static JsonObject graph(String[] nodes, String... edges) {
+        final JsonObject graph = new JsonObject();
+        final JsonArray nodeArray = new JsonArray();
+        for (String id : nodes) {
+            final JsonObject node = new JsonObject();
+            node.addProperty("id", id);
+            node.addProperty("label", "old");
+            nodeArray.add(node);
+        }
+        graph.add("nodes", nodeArray);
+        final JsonArray edgeArray = new JsonArray();
+        for (int i = 0; i < edges.length; i += 2) {
+            final JsonObject edge = new JsonObject();
+            edge.addProperty("source", edges[i]);
+            edge.addProperty("target", edges[i + 1]);
+            edgeArray.add(edge);
+        }
+        graph.add("edges", edgeArray);
+        return graph;
+    }
+
+    private static JsonObject graph() {
+        return graph(new String[0]);
+    }
+
+    private static void write(JsonObject graph, File f) throws IOException {
+        Files.write(f.toPath(), graph.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static List<String> nodes(JsonObject graph) {
+        final List<String> nodes = new ArrayList<>();
+        graph.getAsJsonArray("nodes").forEach(e -> nodes.add(e.getAsJsonObject().get("id").getAsString()));
+        return nodes;
+    }
+
+    private static List<String> edges(JsonObject graph) {
+        final List<String> edges = new ArrayList<>();
+        graph.getAsJsonArray("edges").forEach(e -> edges.add(e.getAsJsonObject().get("source").getAsString() 
+                + ">" + e.getAsJsonObject().get("target").getAsString()));
+        return edges;
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @SafeVarargs
+    private static <T> Set<T> set(T... values) {
+        return new HashSet<>(Arrays.asList(values));
+    }
+}
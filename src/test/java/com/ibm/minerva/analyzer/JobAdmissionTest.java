@@ -0,0 +1,104 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+
+package com.ibm.minerva.analyzer;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+class JobAdmissionTest {
+
+    @TempDir
+    File tempDir;
+
+    @Test
+    void admitsJobsWhileTheirMemoryFitsInTheLimit() throws Exception {
+        final JobAdmission admission = new JobAdmission(1000);
+        final AnalysisJob first = job("out1", 600);
+        admission.admit(first);
+        admission.admit(job("out2", 400));
+        final CountDownLatch admitted = admitLater(admission, job("out3", 100));
+        assertFalse(admitted.await(200, TimeUnit.MILLISECONDS));
+        admission.release(first);
+        assertTrue(admitted.await(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void alwaysAdmitsAJobIfNoOtherJobIsRunning() throws Exception {
+        final JobAdmission admission = new JobAdmission(1000);
+        final AnalysisJob large = job("out1", 5000);
+        admission.admit(large);
+        admission.release(large);
+        admission.admit(large);
+    }
+
+    @Test
+    void doesNotAdmitJobsSharingADirectory() throws Exception {
+        final JobAdmission admission = new JobAdmission(1000);
+        final AnalysisJob first = job("out1", "cache", 100);
+        admission.admit(first);
+        final CountDownLatch sameOutput = admitLater(admission, job("out1", null, 100));
+        final CountDownLatch sameCache = admitLater(admission, job("out2", "cache", 100));
+        admission.admit(job("out3", "cache3", 100));
+        assertFalse(sameOutput.await(200, TimeUnit.MILLISECONDS));
+        assertFalse(sameCache.await(0, TimeUnit.MILLISECONDS));
+        admission.release(first);
+        assertTrue(sameOutput.await(10, TimeUnit.SECONDS));
+        assertTrue(sameCache.await(10, TimeUnit.SECONDS));
+    }
+
+    private static CountDownLatch admitLater(JobAdmission admission, AnalysisJob job) {
+        final CountDownLatch admitted = new CountDownLatch(1);
+        final Thread thread = new Thread(() -> {
+            try {
+                admission.admit(job);
+                admitted.countDown();
+            }
+            catch (InterruptedException e) {}
+        });
+        thread.setDaemon(true);
+        thread.start();
+        return admitted;
+    }
+
+    private AnalysisJob job(String output, long memory) throws IOException {
+        return job(output, null, memory);
+    }
+
+    private AnalysisJob job(String output, String cache, long memory) throws IOException {
+        final JsonObject spec = new JsonObject();
+        spec.add("archives", new JsonArray());
+        spec.addProperty("output", output);
+        if (cache != null) {
+            spec.addProperty("cache", cache);
+        }
+        spec.addProperty("memory", memory);
+        return new AnalysisJob(1, spec, tempDir, AnalysisJob.DEFAULT_MEMORY_FACTOR);
+    }
+}
@@ -0,0 +1,88 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+
+package com.ibm.minerva.analyzer;
+
+import static com.ibm.minerva.analyzer.TestArchives.archive;
+import static com.ibm.minerva.analyzer.TestArchives.classes;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.jar.JarFile;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.ibm.wala.classLoader.JarFileModule;
+import com.ibm.wala.classLoader.Module;
+
+class LibraryModulesTest {
+
+    @TempDir
+    File tempDir;
+
+    @AfterEach
+    void clear() {
+        LibraryModules.clear();
+    }
+
+    @Test
+    void closesClearedModulesOnceReleased() throws IOException {
+        final File jar = archive(new File(tempDir, "lib.jar"), classes("", "a.Foo"));
+        final Module first = LibraryModules.acquire(jar);
+        final Module second = LibraryModules.acquire(jar);
+        assertSame(first, second);
+        LibraryModules.release(first);
+        LibraryModules.clear();
+        assertEquals(1, getJarFile(first).size());
+
+        LibraryModules.release(second);
+        assertThrows(IllegalStateException.class, () -> getJarFile(first).size());
+        final Module reopened = LibraryModules.acquire(jar);
+        assertNotSame(first, reopened);
+        LibraryModules.release(reopened);
+        assertEquals(1, getJarFile(reopened).size());
+    }
+
+    @Test
+    void closesReplacedModulesOnceReleased() throws IOException {
+        final File jar = archive(new File(tempDir, "lib.jar"), classes("", "a.Foo"));
+        final Module old = LibraryModules.acquire(jar);
+        archive(jar, classes("", "a.Foo", "a.Bar"));
+        jar.setLastModified(jar.lastModified() - 60_000L);
+        final Module replaced = LibraryModules.acquire(jar);
+        assertNotSame(old, replaced);
+        assertEquals(1, getJarFile(old).size());
+        assertEquals(2, getJarFile(replaced).size());
+
+        LibraryModules.release(old);
+        assertThrows(IllegalStateException.class, () -> getJarFile(old).size());
+        LibraryModules.release(replaced);
+        assertSame(replaced, LibraryModules.acquire(jar));
+        LibraryModules.release(replaced);
+    }
+
+    private static JarFile getJarFile(Module module) {
+        return ((JarFileModule) module).getJarFile();
+    }
+}
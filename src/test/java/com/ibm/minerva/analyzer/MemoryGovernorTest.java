@@ -0,0 +1,60 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+
+package com.ibm.minerva.analyzer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+
+import org.junit.jupiter.api.Test;
+
+class MemoryGovernorTest {
+
+    @Test
+    void usesTheLowestThresholdOfTheAnalysesRunning() {
+        final MemoryGovernor first = MemoryGovernor.acquire(0.9);
+        final MemoryGovernor second = MemoryGovernor.acquire(0.5);
+        assertThresholds(0.5);
+        second.release(0.5);
+        assertThresholds(0.9);
+        first.release(0.9);
+        assertThresholds(0);
+    }
+
+    @Test
+    void keepsTheThresholdOfEachAnalysis() {
+        final MemoryGovernor first = MemoryGovernor.acquire(0.6);
+        final MemoryGovernor second = MemoryGovernor.acquire(0.6);
+        first.release(0.6);
+        assertThresholds(0.6);
+        second.release(0.6);
+        assertThresholds(0);
+    }
+
+    private static void assertThresholds(double threshold) {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            final long max = pool.getUsage().getMax();
+            if (pool.getType() == MemoryType.HEAP && pool.isCollectionUsageThresholdSupported() && max > 0) {
+                assertEquals((long) (max * threshold), pool.getCollectionUsageThreshold(), pool.getName());
+            }
+        }
+    }
+}
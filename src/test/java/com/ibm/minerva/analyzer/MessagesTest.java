@@ -0,0 +1,63 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+
+package com.ibm.minerva.analyzer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.text.MessageFormat;
+import java.util.Properties;
+import java.util.TreeSet;
+
+import org.junit.jupiter.api.Test;
+
+class MessagesTest {
+
+    private static final String[] LOCALES = {"de", "es", "fr", "it", "ja", "ko", "pt", "zh_CN", "zh_TW"};
+
+    @Test
+    void everyBundleHasTheKeysOfTheEnglishBundle() throws IOException {
+        final Properties english = load("messages.properties");
+        for (String locale : LOCALES) {
+            final Properties messages = load("messages_" + locale + ".properties");
+            assertEquals(new TreeSet<>(english.stringPropertyNames()), new TreeSet<>(messages.stringPropertyNames()), locale);
+        }
+    }
+
+    @Test
+    void everyMessageIsAValidPattern() throws IOException {
+        final Properties english = load("messages.properties");
+        english.stringPropertyNames().forEach(key -> new MessageFormat(english.getProperty(key)));
+        for (String locale : LOCALES) {
+            final Properties messages = load("messages_" + locale + ".properties");
+            messages.stringPropertyNames().forEach(key -> new MessageFormat(messages.getProperty(key)));
+        }
+    }
+
+    private static Properties load(String name) throws IOException {
+        final Properties properties = new Properties();
+        try (InputStream is = MessagesTest.class.getResourceAsStream(name)) {
+            assertNotNull(is, name);
+            properties.load(is);
+        }
+        return properties;
+    }
+}
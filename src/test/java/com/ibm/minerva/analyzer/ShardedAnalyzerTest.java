@@ -0,0 +1,173 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+
+package com.ibm.minerva.analyzer;
+
+import static com.ibm.minerva.analyzer.AnalysisCheckpointTest.assertSameTables;
+import static com.ibm.minerva.analyzer.AnalysisCheckpointTest.read;
+import static com.ibm.minerva.analyzer.AnalysisCheckpointTest.scan;
+import static com.ibm.minerva.analyzer.TestArchives.archive;
+import static com.ibm.minerva.analyzer.TestArchives.classes;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.ibm.minerva.analyzer.ShardedAnalyzer.Segment;
+
+class ShardedAnalyzerTest {
+
+    @TempDir
+    File tempDir;
+
+    @Test
+    void splitsEntriesOfTheSameSizeEvenly() throws IOException {
+        final File jar = archive(new File(tempDir, "app.jar"), resources(6));
+        assertEquals("[app.jar:0-2] [app.jar:2-4] [app.jar:4-6]", plan(3, jar));
+        assertEquals("[app.jar:0-3] [app.jar:3-6]", plan(2, jar));
+        assertEquals("[app.jar:0-6]", plan(1, jar));
+    }
+
+    @Test
+    void usesAtMostOneShardForEachEntry() throws IOException {
+        final File jar = archive(new File(tempDir, "app.jar"), resources(2));
+        assertEquals("[app.jar:0-1] [app.jar:1-2]", plan(8, jar));
+    }
+
+    @Test
+    void doesNotSplitOtherFiles() throws IOException {
+        final File jar = archive(new File(tempDir, "app.jar"), resources(2));
+        final File classFile = new File(tempDir, "Foo.class");
+        Files.write(classFile.toPath(), TestArchives.classFile("Foo"));
+        final File missing = new File(tempDir, "missing.jar");
+        assertEquals("[Foo.class:0-" + Integer.MAX_VALUE + ", app.jar:0-2, missing.jar:0-" + Integer.MAX_VALUE + "]", 
+                plan(1, classFile, jar, missing));
+        assertEquals("[Foo.class:0-" + Integer.MAX_VALUE + "] [app.jar:0-1] [app.jar:1-2] [missing.jar:0-" + Integer.MAX_VALUE + "]", 
+                plan(4, classFile, jar, missing));
+    }
+
+    @Test
+    void coversEveryEntryOnceAndInOrder() throws IOException {
+        final Map<String,byte[]> entries = new LinkedHashMap<>();
+        for (int i = 0; i < 37; ++i) {
+            // Entries of very different sizes.
+            entries.put("r" + i + ".bin", random(i, (i % 5 == 0) ? 20000 : 100 + 10 * i));
+        }
+        final File jar1 = archive(new File(tempDir, "app1.jar"), entries);
+        final File jar2 = archive(new File(tempDir, "app2.jar"), resources(5));
+        for (int shardCount = 1; shardCount <= 50; ++shardCount) {
+            final List<List<Segment>> shards = new ShardedAnalyzer(new File[] {jar1, jar2}, tempDir).setShardCount(shardCount).planShards();
+            assertEquals(Math.min(shardCount, 42), shards.size());
+            final List<String> covered = new ArrayList<>();
+            for (List<Segment> shard : shards) {
+                assertFalse(shard.isEmpty());
+                for (Segment s : shard) {
+                    assertTrue(s.fromEntry < s.toEntry);
+                    for (int i = s.fromEntry; i < s.toEntry; ++i) {
+                        covered.add(s.archive.getName() + ":" + i);
+                    }
+                }
+            }
+            final List<String> expected = new ArrayList<>();
+            for (int i = 0; i < 37; ++i) {
+                expected.add("app1.jar:" + i);
+            }
+            for (int i = 0; i < 5; ++i) {
+                expected.add("app2.jar:" + i);
+            }
+            assertEquals(expected, covered);
+        }
+    }
+
+    @Test
+    void mergedCheckpointNumbersDuplicatesLikeASingleScan() throws IOException {
+        // Each module has a class named Service, which the symbol table numbers 
+        // in the order found, and a class found in every module (common.Util).
+        final Map<String,byte[]> modules = new LinkedHashMap<>();
+        for (String module : new String[] {"a", "b", "c"}) {
+            modules.put(module + ".war", archive(classes("WEB-INF/classes/", module + ".Service", "common.Util", module + ".Helper")));
+        }
+        final File ear = archive(new File(tempDir, "app.ear"), modules);
+        final File scanned = new File(tempDir, "scanned");
+        scan(scanned, ear).writeTables();
+        final String symTable = read(new File(scanned, "symTable.json"));
+        assertTrue(symTable.contains("\"Service [Duplicate_#002]\""));
+        assertTrue(read(new File(scanned, "refTable.json")).contains("\"Dup_Class\":{\"Service\":{"));
+
+        final ShardedAnalyzer sharded = new ShardedAnalyzer(new File[] {ear}, new File(tempDir, "work")).setShardCount(3);
+        final List<List<Segment>> shards = sharded.planShards();
+        assertEquals(3, shards.size());
+        // The workers complete in the reverse order of the shards.
+        final File[] checkpoints = new File[shards.size()];
+        for (int i = shards.size() - 1; i >= 0; --i) {
+            checkpoints[i] = new File(tempDir, "shard-" + (i + 1) + "/checkpoint");
+            ShardedAnalyzer.Worker.scan(shards.get(i), checkpoints[i]);
+        }
+        assertSameTables(scanned, replay(sharded.merge(Arrays.asList(checkpoints)), new File(tempDir, "replayed")));
+
+        // Merging the checkpoints in the order the workers completed would number the duplicates differently.
+        final List<File> completionOrder = new ArrayList<>(Arrays.asList(checkpoints));
+        Collections.reverse(completionOrder);
+        final File misordered = replay(sharded.merge(completionOrder), new File(tempDir, "misordered"));
+        assertNotEquals(symTable, read(new File(misordered, "symTable.json")));
+    }
+
+    private static File replay(File checkpointDir, File tableDir) throws IOException {
+        final TableBuilder tb = new TableBuilder(tableDir, TableBuilderConfiguration.SYM_REF_TABLES);
+        new AnalysisCheckpoint(checkpointDir).replay(tb, new AnalysisProgress());
+        tb.writeTables();
+        return tableDir;
+    }
+
+    private String plan(int shardCount, File... archives) {
+        return new ShardedAnalyzer(archives, tempDir).setShardCount(shardCount).planShards().stream()
+                .map(shard -> shard.stream().map(s -> s.archive.getName() + ":" + s.fromEntry + "-" + s.toEntry)
+                        .collect(Collectors.joining(", ", "[", "]")))
+                .collect(Collectors.joining(" "));
+    }
+
+    private static Map<String,byte[]> resources(int count) {
+        final Map<String,byte[]> entries = new LinkedHashMap<>();
+        for (int i = 0; i < count; ++i) {
+            // The same content compresses to the same size.
+            entries.put("r" + i + ".bin", random(0, 1000));
+        }
+        return entries;
+    }
+
+    private static byte[] random(long seed, int length) {
+        final byte[] bytes = new byte[length];
+        new Random(seed).nextBytes(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,88 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+
+package com.ibm.minerva.analyzer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+
+class SpillFileTest {
+
+    @Test
+    void readsTheCommittedEntriesInTheOrderTheyWereWritten() throws IOException {
+        final JsonObject o = new JsonObject();
+        o.addProperty("file", "project/src/main/java/a/Foo.java");
+        o.addProperty("text", "line 1\nline 2\r\n\u00e9\u4e2d \"quoted\"");
+        o.add("missing", JsonNull.INSTANCE);
+        try (SpillFile spill = new SpillFile()) {
+            spill.write("Foo", o);
+            spill.write("Foo [Duplicate_#001]", new JsonPrimitive(1));
+            spill.commit();
+            spill.write("Bar\nBaz", JsonNull.INSTANCE);
+            spill.commit();
+            assertEquals(3, spill.size());
+            final List<String> keys = new ArrayList<>();
+            final List<JsonElement> values = new ArrayList<>();
+            spill.forEach((key, value) -> {
+                keys.add(key);
+                values.add(value);
+            });
+            assertEquals(3, keys.size());
+            assertEquals("Foo", keys.get(0));
+            assertEquals(o, values.get(0));
+            assertEquals("Foo [Duplicate_#001]", keys.get(1));
+            assertEquals(new JsonPrimitive(1), values.get(1));
+            assertEquals("Bar\nBaz", keys.get(2));
+            assertEquals(JsonNull.INSTANCE, values.get(2));
+        }
+    }
+
+    @Test
+    void ignoresEntriesWhichAreNotCommitted() throws IOException {
+        try (SpillFile spill = new SpillFile()) {
+            spill.write("Foo", new JsonPrimitive("foo"));
+            spill.commit();
+            spill.write("Bar", new JsonPrimitive("bar"));
+            assertEquals(1, spill.size());
+            final List<String> keys = new ArrayList<>();
+            spill.forEach((key, value) -> keys.add(key));
+            assertEquals(1, keys.size());
+            assertEquals("Foo", keys.get(0));
+        }
+    }
+
+    @Test
+    void deletesItsFileWhenClosed() throws IOException {
+        final SpillFile spill = new SpillFile();
+        assertTrue(spill.getFile().isFile());
+        spill.close();
+        assertFalse(spill.getFile().exists());
+    }
+}
@@ -0,0 +1,99 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+
+package com.ibm.minerva.analyzer;
+
+import static com.ibm.minerva.analyzer.AnalysisCheckpointTest.assertSameTables;
+import static com.ibm.minerva.analyzer.AnalysisCheckpointTest.read;
+import static com.ibm.minerva.analyzer.TestArchives.archive;
+import static com.ibm.minerva.analyzer.TestArchives.classes;
+import static com.ibm.minerva.analyzer.TestArchives.interfaceFile;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class TableBuilderTest {
+
+    @TempDir
+    File tempDir;
+
+    @Test
+    void writesTheSameTablesWhenTheSymbolTableIsSpilled() throws IOException {
+        final File[] jars = {
+                archive(new File(tempDir, "app1.jar"), api("a")),
+                archive(new File(tempDir, "app2.jar"), classes("", "b.Service", "a.Helper", "b.Helper")),
+                archive(new File(tempDir, "app3.jar"), api("c")),
+        };
+        final File expected = new File(tempDir, "expected");
+        final TableBuilder tb = new TableBuilder(expected, TableBuilderConfiguration.SYM_REF_TABLES);
+        final ArchiveProcessor processor = new ArchiveProcessor(tb);
+        for (File jar : jars) {
+            processor.processBinaryFile(jar);
+        }
+        tb.writeTables();
+        assertTrue(read(new File(expected, "symTable.json")).contains("\"Service [Duplicate_#002]\""));
+
+        // Spills after each archive, so that duplicates are found among spilled entries and 
+        // inner classes of interfaces are removed from the spilled entries.
+        final File spilled = new File(tempDir, "spilled");
+        final TableBuilder spilling = new TableBuilder(spilled, TableBuilderConfiguration.SYM_REF_TABLES);
+        final ArchiveProcessor spillingProcessor = new ArchiveProcessor(spilling);
+        for (File jar : jars) {
+            spillingProcessor.processBinaryFile(jar);
+            spilling.spillSymTable();
+        }
+        spilling.writeTables();
+        spilling.clean();
+        assertSameTables(expected, spilled);
+    }
+
+    @Test
+    void writesTheSameTablesWhenSomeEntriesAreNotSpilled() throws IOException {
+        final File jar1 = archive(new File(tempDir, "app1.jar"), api("a"));
+        final File jar2 = archive(new File(tempDir, "app2.jar"), api("b"));
+        final File expected = new File(tempDir, "expected");
+        final TableBuilder tb = new TableBuilder(expected, TableBuilderConfiguration.SYM_REF_TABLES);
+        new ArchiveProcessor(tb).processBinaryFile(jar1);
+        new ArchiveProcessor(tb).processBinaryFile(jar2);
+        tb.writeTables();
+
+        final File spilled = new File(tempDir, "spilled");
+        final TableBuilder spilling = new TableBuilder(spilled, TableBuilderConfiguration.SYM_REF_TABLES);
+        new ArchiveProcessor(spilling).processBinaryFile(jar1);
+        spilling.spillSymTable();
+        new ArchiveProcessor(spilling).processBinaryFile(jar2);
+        spilling.writeTables();
+        spilling.clean();
+        assertSameTables(expected, spilled);
+    }
+
+    /**
+     * Returns the entries of an archive holding a service, its interface 
+     * with an inner class, and a helper class, in the given package.
+     */
+    private static Map<String,byte[]> api(String pkg) {
+        final Map<String,byte[]> entries = classes("", pkg + ".Service", pkg + ".Api$Impl", pkg + ".Helper");
+        entries.put(pkg + "/Api.class", interfaceFile(pkg + ".Api"));
+        return entries;
+    }
+}
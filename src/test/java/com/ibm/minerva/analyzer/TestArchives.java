@@ -0,0 +1,113 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+
+package com.ibm.minerva.analyzer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import javassist.CannotCompileException;
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.CtField;
+import javassist.CtMethod;
+
+/**
+ * Creates the archives scanned by the tests.
+ */
+final class TestArchives {
+
+    private TestArchives() {}
+
+    /**
+     * Returns the class file of a class with a field and a method.
+     */
+    static byte[] classFile(String name) {
+        try {
+            final CtClass c = new ClassPool(true).makeClass(name);
+            c.addField(CtField.make("private int count;", c));
+            c.addMethod(CtMethod.make("public int getCount() { return count; }", c));
+            return c.toBytecode();
+        }
+        catch (CannotCompileException | IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Returns the class file of an interface with a method.
+     */
+    static byte[] interfaceFile(String name) {
+        try {
+            final CtClass c = new ClassPool(true).makeInterface(name);
+            c.addMethod(CtMethod.make("public abstract int getCount();", c));
+            return c.toBytecode();
+        }
+        catch (CannotCompileException | IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Returns the entries of an archive holding the class files of the 
+     * given classes, stored under the given prefix (e.g. "WEB-INF/classes/").
+     */
+    static Map<String,byte[]> classes(String prefix, String... names) {
+        final Map<String,byte[]> entries = new LinkedHashMap<>();
+        for (String name : names) {
+            entries.put(prefix + name.replace('.', '/') + ".class", classFile(name));
+        }
+        return entries;
+    }
+
+    /**
+     * Returns an archive holding the given entries in the given order.
+     */
+    static byte[] archive(Map<String,byte[]> entries) throws IOException {
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        write(baos, entries);
+        return baos.toByteArray();
+    }
+
+    /**
+     * Writes an archive holding the given entries in the given order.
+     */
+    static File archive(File file, Map<String,byte[]> entries) throws IOException {
+        try (OutputStream os = new FileOutputStream(file)) {
+            write(os, entries);
+        }
+        return file;
+    }
+
+    private static void write(OutputStream os, Map<String,byte[]> entries) throws IOException {
+        try (ZipOutputStream zos = new ZipOutputStream(os)) {
+            for (Map.Entry<String,byte[]> e : entries.entrySet()) {
+                zos.putNextEntry(new ZipEntry(e.getKey()));
+                zos.write(e.getValue());
+                zos.closeEntry();
+            }
+        }
+    }
+}
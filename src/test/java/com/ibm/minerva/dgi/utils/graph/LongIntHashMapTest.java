@@ -0,0 +1,87 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+
+package com.ibm.minerva.dgi.utils.graph;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class LongIntHashMapTest {
+
+    @Test
+    void returnsMinusOneForMissingKeys() {
+        final LongIntHashMap map = new LongIntHashMap();
+        assertEquals(-1, map.get(0L));
+        assertEquals(-1, map.get(Long.MIN_VALUE));
+        assertEquals(0, map.size());
+    }
+
+    @Test
+    void replacesTheValueOfAnExistingKey() {
+        final LongIntHashMap map = new LongIntHashMap();
+        map.put(42L, 1);
+        map.put(42L, 7);
+        assertEquals(7, map.get(42L));
+        assertEquals(1, map.size());
+    }
+
+    @Test
+    void distinguishesKeysWhichDifferOnlyInOneHalf() {
+        // Edge keys pack a (source, target) pair of node ids in a long.
+        final LongIntHashMap map = new LongIntHashMap();
+        map.put(key(1, 2), 0);
+        map.put(key(2, 1), 1);
+        map.put(key(1, 0), 2);
+        map.put(key(0, 1), 3);
+        assertEquals(0, map.get(key(1, 2)));
+        assertEquals(1, map.get(key(2, 1)));
+        assertEquals(2, map.get(key(1, 0)));
+        assertEquals(3, map.get(key(0, 1)));
+        assertEquals(-1, map.get(key(2, 2)));
+    }
+
+    @Test
+    void keepsAllMappingsAcrossRehashes() {
+        final LongIntHashMap map = new LongIntHashMap(4);
+        final Map<Long,Integer> expected = new HashMap<>();
+        final Random random = new Random(17);
+        for (int i = 0; i < 50000; ++i) {
+            final long key = random.nextLong();
+            map.put(key, i);
+            expected.put(key, i);
+        }
+        assertEquals(expected.size(), map.size());
+        expected.forEach((key, value) -> assertEquals(value.intValue(), map.get(key)));
+    }
+
+    @Test
+    void rejectsNegativeValues() {
+        final LongIntHashMap map = new LongIntHashMap();
+        assertThrows(IllegalArgumentException.class, () -> map.put(1L, -1));
+    }
+
+    private static long key(int source, int target) {
+        return ((long) source << 32) | (target & 0xffffffffL);
+    }
+}
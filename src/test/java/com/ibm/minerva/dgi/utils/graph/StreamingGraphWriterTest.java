@@ -0,0 +1,93 @@
+/******************************************************************************* 
+ * Copyright (c) contributors to the Minerva for Modernization project.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     IBM Corporation - initial implementation
+ *******************************************************************************/
+
+package com.ibm.minerva.dgi.utils.graph;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class StreamingGraphWriterTest {
+
+    @TempDir
+    File tempDir;
+
+    @Test
+    void writesTheLayoutOfTheJGraphTExporter() throws IOException {
+        final File file = new File(tempDir, "graph.json");
+        try (StreamingGraphWriter<String, String> graph = new StreamingGraphWriter<>(file, v -> v, 
+                (w, v) -> {
+                    w.name("label").value(v.toUpperCase());
+                    w.name("is_class_private").value(false);
+                    w.name("num_total_fields").value(v.length());
+                }, 
+                (w, e, weight) -> {
+                    w.name("weight").value(weight);
+                })) {
+            final int a = graph.addNode("a");
+            final int b = graph.addNode("bb");
+            graph.addEdge(a, b, null);
+            graph.finish();
+        }
+        // The document written by the JGraphT 1.4 JSONExporter for the same graph and 
+        // attribute providers: strings are quoted, numbers and booleans are not.
+        assertEquals("{\"creator\":\"JGraphT JSON Exporter\",\"version\":\"1\","
+                + "\"nodes\":[{\"id\":\"a\",\"label\":\"A\",\"is_class_private\":false,\"num_total_fields\":1},"
+                + "{\"id\":\"bb\",\"label\":\"BB\",\"is_class_private\":false,\"num_total_fields\":2}],"
+                + "\"edges\":[{\"source\":\"a\",\"target\":\"bb\",\"weight\":1}]}", read(file));
+    }
+
+    @Test
+    void writesEachNodeOnceAndAggregatesEdgeWeights() throws IOException {
+        final File file = new File(tempDir, "graph.json");
+        try (StreamingGraphWriter<String, Void> graph = new StreamingGraphWriter<>(file, v -> v, 
+                (w, v) -> {}, (w, e, weight) -> w.name("weight").value(weight))) {
+            for (String[] call : new String[][] {{"a", "b"}, {"b", "c"}, {"a", "b"}, {"c", "a"}, {"a", "b"}}) {
+                final int source = graph.addNode(call[0]);
+                final int target = graph.addNode(call[1]);
+                final int edge = graph.getEdge(source, target);
+                if (edge < 0) {
+                    graph.addEdge(source, target, null);
+                }
+                else {
+                    graph.incrementWeight(edge);
+                }
+            }
+            assertEquals(3, graph.getNodeCount());
+            assertEquals(3, graph.getEdgeCount());
+            assertEquals(3, graph.getEdgeWeight(graph.getEdge(0, 1)));
+            assertEquals(-1, graph.getEdge(1, 0));
+            graph.finish();
+        }
+        assertEquals("{\"creator\":\"JGraphT JSON Exporter\",\"version\":\"1\","
+                + "\"nodes\":[{\"id\":\"a\"},{\"id\":\"b\"},{\"id\":\"c\"}],"
+                + "\"edges\":[{\"source\":\"a\",\"target\":\"b\",\"weight\":3},"
+                + "{\"source\":\"b\",\"target\":\"c\",\"weight\":1},"
+                + "{\"source\":\"c\",\"target\":\"a\",\"weight\":1}]}", read(file));
+    }
+
+    private static String read(File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+}